@@ -42,6 +42,141 @@ public final class Constants {
      */
     public static final long UPDATE_DISTANCE = 2;
 
+    /**
+     * Desired interval for location updates in milliseconds while the device sits still. Fixes
+     * requested by other apps may still arrive as often as {@link #FASTEST_UPDATE_INTERVAL}.
+     */
+    public static final long STILL_UPDATE_INTERVAL = 300000; //5 minutes
+
+    /**
+     * Number of accelerometer samples whose variance decides whether the device is still.
+     */
+    public static final int STILL_WINDOW_SIZE = 32; //about 6 seconds at the normal sensor rate
+
+    /**
+     * Variance of the acceleration magnitude below which the device may be sitting still.
+     */
+    public static final double STILL_VARIANCE = 0.02; //(m/s^2)^2
+
+    /**
+     * Variance of the acceleration magnitude above which the device is moving.
+     */
+    public static final double MOVING_VARIANCE = 0.3; //(m/s^2)^2
+
+    /**
+     * Time in milliseconds the acceleration must stay quiet before the device counts as still.
+     */
+    public static final long STILL_DELAY = 60000; //1 minute
+
+    /**
+     * Longest time in milliseconds the dwell time of the current stay goes without being saved.
+     */
+    public static final long CHECKPOINT_INTERVAL = 60000; //1 minute
+
+    /**
+     * Number of location fixes that may wait for ingestion before new ones are dropped.
+     */
+    public static final int FIX_QUEUE_CAPACITY = 64;
+
+    /**
+     * Distance in meters from the centre of a place within which location fixes belong to it.
+     */
+    public static final double STAY_RADIUS = 50; //50 meters
+
+    /**
+     * Distance in meters from the centre of a stay beyond which location fixes count towards
+     * leaving it. The gap to {@link #STAY_RADIUS} keeps jitter at the edge from splitting stays.
+     */
+    public static final double STAY_EXIT_RADIUS = 80; //80 meters
+
+    /**
+     * Time in milliseconds spent at a place before it is recorded as a stay.
+     */
+    public static final long STAY_MIN_DWELL = 5 * 60 * 1000; //5 minutes
+
+    /**
+     * Number of location fixes in a row beyond {@link #STAY_EXIT_RADIUS} that end a stay.
+     */
+    public static final int STAY_EXIT_FIXES = 2;
+
+    /**
+     * Longest time in milliseconds a stay may go unseen and still be continued when the
+     * location service restarts.
+     */
+    public static final long STAY_RESUME_GAP = 15 * 60 * 1000; //15 minutes
+
+    /**
+     * Variance of the acceleration assumed between location fixes when smoothing them. Fixes
+     * are tens of seconds apart, so even a small value lets the estimate follow a turn.
+     */
+    public static final double FILTER_ACCELERATION_VARIANCE = 0.001; //(m/s^2)^2
+
+    /**
+     * Highest plausible speed in meters per second; fixes implying a faster jump are dropped.
+     */
+    public static final double FILTER_MAX_SPEED = 70; //about 250 km/h
+
+    /**
+     * Number of location fixes in a row that may be dropped before smoothing starts over.
+     */
+    public static final int FILTER_MAX_REJECTED_FIXES = 3;
+
+    /**
+     * Longest time in milliseconds between location fixes that smoothing carries across.
+     */
+    public static final long FILTER_MAX_GAP = 15 * 60 * 1000; //15 minutes
+
+    /**
+     * Number of buffered database writes that triggers an immediate flush.
+     */
+    public static final int JOURNAL_FLUSH_SIZE = 20;
+
+    /**
+     * Longest time in milliseconds a buffered database write waits before being flushed.
+     */
+    public static final long JOURNAL_FLUSH_INTERVAL = 300000; //5 minutes
+
+    /**
+     * Number of background threads serving database range queries.
+     */
+    public static final int DATABASE_READER_THREADS = 2;
+
+    /**
+     * Approximate number of bytes of decoded pins kept in the per-day cache.
+     */
+    public static final int PIN_CACHE_SIZE = 4 * 1024 * 1024; //4 MB
+
+    /**
+     * Age in milliseconds after which a day's pins are sealed into a compressed segment.
+     */
+    public static final long ARCHIVE_AGE = 30L * 24 * 60 * 60 * 1000; //30 days
+
+    /**
+     * Interval in milliseconds between checks for days old enough to be sealed.
+     */
+    public static final long ARCHIVE_INTERVAL = 24 * 60 * 60 * 1000; //1 day
+
+    /* Storage engines pins can be recorded in (see PIN_STORE) */
+    public static final int PIN_STORE_SQLITE = 0;
+    public static final int PIN_STORE_MEMORY = 1;
+    public static final int PIN_STORE_MAPPED_FILE = 2;
+
+    /**
+     * Storage engine the location service records pins in and the visualizations read them
+     * from. Day summaries, rollups and the raw data screen always use the SQLite database.
+     */
+    public static final int PIN_STORE = PIN_STORE_SQLITE;
+
+    /**
+     * Name of the file pins are kept in by the mapped file storage engine.
+     */
+    public static final String PIN_STORE_FILE_NAME = "GeospatialPins.vips";
+
+    /**
+     * Age in milliseconds after which a whole sealed month is moved into its own database file.
+     */
+    public static final long PARTITION_AGE = 90L * 24 * 60 * 60 * 1000; //90 days
+
     /**
      * String code based on:
      * https://docs.oracle.com/javase/7/docs/api/java/text/SimpleDateFormat.html
@@ -5,9 +5,15 @@ import android.app.ActivityManager.RunningServiceInfo;
 import android.app.Application;
 import android.content.Context;
 import android.content.Intent;
+import android.util.Log;
 
 import com.clidwin.android.visualimprints.services.GpsLocationService;
 import com.clidwin.android.visualimprints.storage.DatabaseAdapter;
+import com.clidwin.android.visualimprints.storage.MappedFilePinStore;
+import com.clidwin.android.visualimprints.storage.MemoryPinStore;
+import com.clidwin.android.visualimprints.storage.PinStore;
+
+import java.io.IOException;
 
 /**
  * Controlling class for the entire application.
@@ -16,12 +22,16 @@ import com.clidwin.android.visualimprints.storage.DatabaseAdapter;
  * @version April 27, 2015
  */
 public class VisualImprintsApplication extends Application {
+    private static final String TAG = "vi-application";
+
     private DatabaseAdapter dbAdapter;
+    private PinStore pinStore;
 
     @Override
     public void onCreate() {
         dbAdapter = new DatabaseAdapter(getApplicationContext());
         dbAdapter.open();
+        pinStore = createPinStore();
 
         if (!gpsServiceIsRunning()) {
             Intent gpsIntent = new Intent(getApplicationContext(), GpsLocationService.class);
@@ -42,6 +52,36 @@ public class VisualImprintsApplication extends Application {
         return dbAdapter;
     }
 
+    /**
+     * Retrieves the storage engine that pins are recorded in and read from, which is the
+     * database unless {@link Constants#PIN_STORE} selects another one.
+     *
+     * @return the application's {@link PinStore}
+     */
+    public PinStore getPinStore() {
+        return pinStore;
+    }
+
+    /**
+     * Creates the storage engine selected by {@link Constants#PIN_STORE}, falling back to the
+     * database if it cannot be opened.
+     */
+    private PinStore createPinStore() {
+        switch (Constants.PIN_STORE) {
+            case Constants.PIN_STORE_MEMORY:
+                return new MemoryPinStore();
+            case Constants.PIN_STORE_MAPPED_FILE:
+                try {
+                    return new MappedFilePinStore(getFileStreamPath(Constants.PIN_STORE_FILE_NAME));
+                } catch (IOException e) {
+                    Log.e(TAG, "Unable to open the pin store file, using the database.", e);
+                    return dbAdapter;
+                }
+            default:
+                return dbAdapter;
+        }
+    }
+
     /**
      * Checks whether the {@link com.clidwin.android.visualimprints.services.GpsLocationService}
      * is running.
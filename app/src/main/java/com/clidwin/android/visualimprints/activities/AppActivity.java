@@ -8,6 +8,7 @@ import android.support.v7.app.AppCompatActivity;
 import com.clidwin.android.visualimprints.VisualImprintsApplication;
 import com.clidwin.android.visualimprints.services.GpsLocationService;
 import com.clidwin.android.visualimprints.storage.DatabaseAdapter;
+import com.clidwin.android.visualimprints.storage.PinStore;
 
 /**
  * Parent activity class for all activities in the Visual Imprints application.
@@ -18,6 +19,7 @@ import com.clidwin.android.visualimprints.storage.DatabaseAdapter;
 public abstract class AppActivity extends AppCompatActivity {
 
     protected DatabaseAdapter dbAdapter;
+    protected PinStore pinStore;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -32,6 +34,7 @@ public abstract class AppActivity extends AppCompatActivity {
     private void connectToDatabase() {
         VisualImprintsApplication vI = (VisualImprintsApplication) this.getApplication();
         dbAdapter = vI.getDatabaseAdapter();
+        pinStore = vI.getPinStore();
     }
 
     /**
@@ -39,6 +42,11 @@ public abstract class AppActivity extends AppCompatActivity {
      */
     public DatabaseAdapter getDatabaseAdapter() { return dbAdapter; }
 
+    /**
+     * @return the {@link PinStore} pins are read from by this activity
+     */
+    public PinStore getPinStore() { return pinStore; }
+
     private boolean isConnected() {
         String gpsServiceName = GpsLocationService.class.getName();
 
@@ -24,6 +24,9 @@ import android.widget.Toast;
 import com.clidwin.android.visualimprints.Constants;
 import com.clidwin.android.visualimprints.R;
 import com.clidwin.android.visualimprints.location.GeospatialPin;
+import com.clidwin.android.visualimprints.storage.DaySummary;
+import com.clidwin.android.visualimprints.storage.DaySummaryLoadCallback;
+import com.clidwin.android.visualimprints.storage.EntryLoadCallback;
 
 import java.text.DateFormat;
 import java.text.ParseException;
@@ -137,21 +140,38 @@ public class RawDataActivity extends AppActivity {
     }
 
     /**
-     * Adds the contents of the database to the Location History Table.
+     * Adds the contents of the database to the Location History Table once they are read.
      */
     private void loadDatabaseContents() {
+        dbAdapter.loadDaySummariesAsync(new DaySummaryLoadCallback() {
+            @Override
+            public void onDaySummariesLoaded(ArrayList<DaySummary> daySummaries) {
+                if (!isFinishing()) {
+                    showDaySummaries(daySummaries);
+                }
+            }
+        });
+        updateMostRecentLocation();
+    }
+
+    /**
+     * Adds a row for every recorded day to the Location History Table.
+     *
+     * @param daySummaries A summary of every day with recorded pins, newest first.
+     */
+    private void showDaySummaries(ArrayList<DaySummary> daySummaries) {
         // Date formats used in the application.
         final DateFormat dbDateFormat = new SimpleDateFormat(Constants.DATABASE_DATE_FORMAT);
         final DateFormat displayDateFormat = new SimpleDateFormat("EEEE, MMMM dd, yyyy");
 
         // Profess all entry dates.
-        ArrayList<String> allEntryDates = dbAdapter.getAllEntryDates();
-        Log.d(TAG, "Database size: " + allEntryDates.size());
-        for (int index = 0; index < allEntryDates.size(); index++) {
+        Log.d(TAG, "Database size: " + daySummaries.size());
+        for (int index = 0; index < daySummaries.size(); index++) {
 
             //TODO(clidwin): if date matches today, get all entries for date and if one entry, don't show since it's the current location
             // Construct row object.
-            String dateText = allEntryDates.get(index);
+            DaySummary summary = daySummaries.get(index);
+            final String dateText = summary.getDay();
             final LinearLayout row = new LinearLayout(this);
             row.setOrientation(LinearLayout.VERTICAL);
             row.setPadding(
@@ -175,7 +195,8 @@ public class RawDataActivity extends AppActivity {
                     TypedValue.COMPLEX_UNIT_PX,
                     getResources().getDimension(R.dimen.default_text_size)
             );
-            dateTextView.setText(displayDateFormat.format(date));
+            dateTextView.setText(displayDateFormat.format(date) +
+                    " (" + summary.getPinCount() + ")");
             row.addView(dateTextView);
 
             // Establish interactivity.
@@ -193,41 +214,36 @@ public class RawDataActivity extends AppActivity {
 
                     //TODO(clidwin): Figure out why toast isn't showing up
                     showToast("Loading data...");
-                    String dateText = ((TextView) row.getChildAt(0)).getText().toString();
-                    Date date;
-                    try {
-                        date = displayDateFormat.parse(dateText);
-
-                        TableLayout locationsTable = new TableLayout(v.getContext());
-                        TableLayout.LayoutParams lp = new TableLayout.LayoutParams();
-                        lp.width = TableLayout.LayoutParams.MATCH_PARENT;
-                        locationsTable.setStretchAllColumns(true);
-                        locationsTable.setLayoutParams(lp);
-                        locationsTable.setPadding(
-                                0, (int) getResources().getDimension(R.dimen.layout_padding), 0, 0
-                        );
-                        locationsTable.addView(makeLocationHeader(), 0);
-                        ArrayList<GeospatialPin> datePins = dbAdapter.getAllEntriesFromDates(
-                                new String [] {dbDateFormat.format(date)});
-                        for (int i = datePins.size() - 1; i > 0; i--) {
-                            GeospatialPin pin = datePins.get(i);
-                            addLocationToHistoryTable(locationsTable, pin, 1);
+                    final TableLayout locationsTable = new TableLayout(v.getContext());
+                    TableLayout.LayoutParams lp = new TableLayout.LayoutParams();
+                    lp.width = TableLayout.LayoutParams.MATCH_PARENT;
+                    locationsTable.setStretchAllColumns(true);
+                    locationsTable.setLayoutParams(lp);
+                    locationsTable.setPadding(
+                            0, (int) getResources().getDimension(R.dimen.layout_padding), 0, 0
+                    );
+                    locationsTable.addView(makeLocationHeader(), 0);
+
+                    // The table is shown right away, so a second click closes it while the
+                    // day's entries are still being read.
+                    ((LinearLayout) v).addView(locationsTable);
+                    dbAdapter.loadEntriesFromDatesAsync(new String [] {dateText},
+                            new EntryLoadCallback() {
+                        @Override
+                        public void onEntriesLoaded(ArrayList<GeospatialPin> datePins) {
+                            for (int i = datePins.size() - 1; i > 0; i--) {
+                                GeospatialPin pin = datePins.get(i);
+                                addLocationToHistoryTable(locationsTable, pin, 1);
+                            }
                         }
-                        ((LinearLayout) v).addView(locationsTable);
-
-
-                    } catch (ParseException e) {
-                        e.printStackTrace();
-                    }
-
-
+                    });
                 }
             });
 
             mAllLocationsListLayout.addView(row);
 
             // Add horizontal rule to separate list entries.
-            if (index+1 != allEntryDates.size()) {
+            if (index+1 != daySummaries.size()) {
                 View ruler = new View(this);
                 ruler.setBackgroundColor(getResources().getColor(R.color.Divider));
                 ruler.setPadding(0, 0, 0, (int)getResources().getDimension(R.dimen.layout_padding));
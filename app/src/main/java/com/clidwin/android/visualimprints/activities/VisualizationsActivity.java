@@ -1,12 +1,16 @@
 package com.clidwin.android.visualimprints.activities;
 
+import android.content.BroadcastReceiver;
+import android.content.Context;
 import android.content.DialogInterface;
 import android.content.Intent;
+import android.content.IntentFilter;
 import android.content.SharedPreferences;
 import android.os.Bundle;
 import android.support.design.widget.FloatingActionButton;
 import android.support.v4.app.FragmentManager;
 import android.support.v4.app.FragmentTransaction;
+import android.support.v4.content.LocalBroadcastManager;
 import android.support.v4.view.ViewPager;
 import android.support.v7.app.AlertDialog;
 import android.util.Log;
@@ -15,6 +19,7 @@ import android.view.MenuItem;
 import android.view.View;
 import android.widget.LinearLayout;
 
+import com.clidwin.android.visualimprints.Constants;
 import com.clidwin.android.visualimprints.R;
 import com.clidwin.android.visualimprints.fragments.DateTimeDialogFragment;
 import com.clidwin.android.visualimprints.layout.SlidingTabLayout;
@@ -38,6 +43,13 @@ public class VisualizationsActivity extends AppActivity {
     private static final String SAVED_STATE_TIME_RANGE = "timeRange";
     private static final String SAVED_STATE_LIVE_UPDATE = "liveUpdate";
 
+    private static final int[] VISUALIZATION_IDS = {
+            R.id.tileVisualization,
+            R.id.networkVisualization,
+            R.id.barVisualization,
+            R.id.voronoiVisualization
+    };
+
     // Declaring Your View and Variables
     ViewPager pager;
     ViewPagerAdapter viewPageAdapter;
@@ -53,6 +65,7 @@ public class VisualizationsActivity extends AppActivity {
     private boolean mShouldLiveUpdate;
 
     private OnModifyListener mOnModifyListener;
+    private LiveUpdateReceiver mLiveUpdateReceiver;
     private SlidingTabLayout tabs;
 
     @Override
@@ -64,6 +77,7 @@ public class VisualizationsActivity extends AppActivity {
         mIsLargeLayout = getResources().getBoolean(R.bool.large_layout);
 
         mOnModifyListener = new OnModifyListener();
+        mLiveUpdateReceiver = new LiveUpdateReceiver();
 
         // Assigning ViewPager View and setting the viewPageAdapter to show multiple visualizations
         pager = (ViewPager) findViewById(R.id.pager);
@@ -144,9 +158,17 @@ public class VisualizationsActivity extends AppActivity {
         oldestTimestamp = tempDateTime;
     }
 
+    @Override
+    public void onResume() {
+        super.onResume();
+        LocalBroadcastManager.getInstance(this).registerReceiver(
+                mLiveUpdateReceiver, new IntentFilter(Constants.BROADCAST_ACTION));
+    }
+
     @Override
     public void onPause() {
         super.onPause();
+        LocalBroadcastManager.getInstance(this).unregisterReceiver(mLiveUpdateReceiver);
 
         SharedPreferences.Editor editor = getPreferences(MODE_PRIVATE).edit();
         editor.putLong(SAVED_STATE_OLDEST_TIMESTAMP, oldestTimestamp.getTime().getTime());
@@ -393,4 +415,39 @@ public class VisualizationsActivity extends AppActivity {
         ParentVisualization barVis = (ParentVisualization) findViewById(R.id.barVisualization);
         //barVis.refreshLocations();
     }
+
+    /**
+     * Passes only the pins that arrived or changed since the last refresh to every
+     * visualization currently on screen.
+     */
+    private void refreshVisualizationsLive() {
+        newestTimestamp = Calendar.getInstance();
+        for (int id : VISUALIZATION_IDS) {
+            ParentVisualization visualization = (ParentVisualization) findViewById(id);
+            if (visualization != null) {
+                visualization.refreshNewLocations();
+            }
+        }
+    }
+
+    /**
+     * Handles location broadcasts while the visualizations follow the current time.
+     */
+    private class LiveUpdateReceiver extends BroadcastReceiver {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            String broadcastUpdate = intent.getStringExtra(Constants.BROADCAST_UPDATE);
+            if (!mShouldLiveUpdate || broadcastUpdate == null) {
+                return;
+            }
+            switch (broadcastUpdate) {
+                case Constants.BROADCAST_NEW_LOCATION:
+                case Constants.BROADCAST_UPDATED_LOCATION:
+                    refreshVisualizationsLive();
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
 }
\ No newline at end of file
@@ -14,6 +14,7 @@ import android.widget.RadioGroup;
 
 import com.clidwin.android.visualimprints.R;
 import com.clidwin.android.visualimprints.activities.VisualizationsActivity;
+import com.clidwin.android.visualimprints.storage.CoveredRangeLoadCallback;
 import com.clidwin.android.visualimprints.ui.DateSelector;
 import com.clidwin.android.visualimprints.ui.TimeSelector;
 
@@ -38,6 +39,7 @@ public class DateTimeDialogFragment extends DialogFragment {
     private TimeSelector newTime;
     private TimeSelector oldTime;
     private DateSelector oldDate;
+    private long[] coveredRange;
 
     @Override
     public void onCreate(Bundle savedInstanceState) {
@@ -50,6 +52,14 @@ public class DateTimeDialogFragment extends DialogFragment {
         newestTimestamp = visualizationsActivity.getNewestTimestamp();
         timeInterval = visualizationsActivity.getTimeInterval();
         shouldLiveUpdate = visualizationsActivity.shouldLiveUpdate();
+        visualizationsActivity.getDatabaseAdapter().loadCoveredRangeAsync(
+                new CoveredRangeLoadCallback() {
+                    @Override
+                    public void onCoveredRangeLoaded(long[] range) {
+                        coveredRange = range;
+                        limitSelectableDates();
+                    }
+                });
     }
 
     @Override
@@ -86,6 +96,8 @@ public class DateTimeDialogFragment extends DialogFragment {
         newDate.setDate(newestTimestamp.getTime());
         newDate.setOnSetListener(mListener);
 
+        limitSelectableDates();
+
         newTime = (TimeSelector) view.findViewById(R.id.toTime);
         newTime.setTime(newestTimestamp.getTime());
         newTime.setOnSetListener(mListener);
@@ -152,6 +164,19 @@ public class DateTimeDialogFragment extends DialogFragment {
         return view;
     }
 
+    /**
+     * Only offers days that can have data: from the first recorded pin up to now. The range is
+     * read in the background, so this runs both when it arrives and when the views are made.
+     */
+    private void limitSelectableDates() {
+        if (coveredRange == null || oldDate == null || newDate == null) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        oldDate.setSelectableRange(Math.min(coveredRange[0], now), now);
+        newDate.setSelectableRange(Math.min(coveredRange[0], now), now);
+    }
+
     /**
      * Toggles en(dis)abling customization for the most recent point in the time interval.
      * @param parentView The parent view for elements allowing for a customized time and date.
@@ -10,7 +10,8 @@ import android.view.ViewGroup;
 
 import com.clidwin.android.visualimprints.R;
 import com.clidwin.android.visualimprints.activities.VisualizationsActivity;
-import com.clidwin.android.visualimprints.location.GeospatialPin;
+import com.clidwin.android.visualimprints.location.PinColumns;
+import com.clidwin.android.visualimprints.storage.PinLoadCallback;
 import com.google.android.gms.maps.CameraUpdateFactory;
 import com.google.android.gms.maps.GoogleMap;
 import com.google.android.gms.maps.MapView;
@@ -18,7 +19,7 @@ import com.google.android.gms.maps.SupportMapFragment;
 import com.google.android.gms.maps.model.LatLng;
 import com.google.android.gms.maps.model.MarkerOptions;
 
-import java.util.ArrayList;
+import java.util.Date;
 
 /**
  * View to display a Google map with location information.
@@ -93,25 +94,35 @@ public class MapViewFragment extends Fragment {
 
         VisualizationsActivity activity = (VisualizationsActivity) getActivity();
         if (activity != null) {
-            ArrayList<GeospatialPin> locations;
-            locations = activity.getDatabaseAdapter().getEntriesInDateRange(
-                    activity.getOldestTimestamp(), activity.getNewestTimestamp());
-
-            for(GeospatialPin pin: locations) {
-                mMap.addMarker(new MarkerOptions()
-                        .position(
-                                new LatLng(pin.getLocation().getLatitude(), pin.getLocation().getLongitude()))
-                        .title(pin.getArrivalTime().toString()));
-            }
-            if (locations.size() != 0) {
-                mMap.animateCamera(CameraUpdateFactory.newLatLngZoom(
-                        new LatLng(
-                                locations.get(0).getLocation().getLatitude(),
-                                locations.get(0).getLocation().getLongitude()),
-                        12.0f));
-            }
+            activity.getPinStore().loadPinColumnsAsync(
+                    activity.getOldestTimestamp().getTimeInMillis(),
+                    activity.getNewestTimestamp().getTimeInMillis(), PinColumns.ALL_FIELDS,
+                    new PinLoadCallback() {
+                        @Override
+                        public void onPinsLoaded(PinColumns pins) {
+                            addMarkers(pins);
+                        }
+                    });
         } else {
             Log.e(TAG, "Database disconnected");
         }
     }
+
+    /**
+     * Adds a marker for every pin and centers the camera on the most recent one.
+     *
+     * @param pins The pins in the selected time range, newest first.
+     */
+    private void addMarkers(PinColumns pins) {
+        for (int i = 0; i < pins.size(); i++) {
+            mMap.addMarker(new MarkerOptions()
+                    .position(new LatLng(pins.getLatitude(i), pins.getLongitude(i)))
+                    .title(new Date(pins.getArrivalMillis(i)).toString()));
+        }
+        if (pins.size() != 0) {
+            mMap.animateCamera(CameraUpdateFactory.newLatLngZoom(
+                    new LatLng(pins.getLatitude(0), pins.getLongitude(0)),
+                    12.0f));
+        }
+    }
 }
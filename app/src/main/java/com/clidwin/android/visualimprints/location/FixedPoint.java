@@ -0,0 +1,60 @@
+package com.clidwin.android.visualimprints.location;
+
+/**
+ * Conversions between coordinates in degrees and the fixed-point form they are stored in:
+ * whole degrees multiplied by 10^7 ("E7"). Seven decimal places resolve roughly a centimetre,
+ * which is well below the noise of location fixes, and every valid coordinate fits in an int.
+ *
+ * @author Christina Lidwin (clidwin)
+ * @version October 15, 2026
+ */
+public final class FixedPoint {
+    /**
+     * The number of fixed-point units in one degree.
+     */
+    public static final int SCALE = 10000000;
+
+    /**
+     * The number of decimal places kept by the fixed-point form.
+     */
+    public static final int DECIMAL_PLACES = 7;
+
+    private static final int[] POWERS_OF_TEN = {
+            1, 10, 100, 1000, 10000, 100000, 1000000, 10000000
+    };
+
+    private FixedPoint() {
+    }
+
+    /**
+     * @param degrees A latitude or longitude in degrees.
+     * @return the coordinate in fixed-point units, rounded to the nearest unit.
+     */
+    public static int toE7(double degrees) {
+        return (int) Math.round(degrees * SCALE);
+    }
+
+    /**
+     * @param e7 A latitude or longitude in fixed-point units.
+     * @return the coordinate in degrees.
+     */
+    public static double toDegrees(int e7) {
+        return e7 / (double) SCALE;
+    }
+
+    /**
+     * Rounds a fixed-point coordinate to fewer decimal places, e.g. to compare two locations at
+     * a coarser precision or to place them in a grid. Halves are rounded up, as
+     * {@link Math#round(double)} does.
+     *
+     * @param e7 A latitude or longitude in fixed-point units.
+     * @param decimalPlaces The number of decimal places to keep, from 0 to 7.
+     * @return the coordinate as a whole number of units of the requested precision.
+     */
+    public static int round(int e7, int decimalPlaces) {
+        int step = POWERS_OF_TEN[DECIMAL_PLACES - decimalPlaces];
+        long shifted = (long) e7 + step / 2;
+        long quotient = shifted / step;
+        return (int) ((shifted % step < 0) ? quotient - 1 : quotient);
+    }
+}
@@ -0,0 +1,220 @@
+package com.clidwin.android.visualimprints.location;
+
+import java.util.Arrays;
+
+/**
+ * Integer geohashes of fixed-point coordinates. A geohash interleaves the bits of a location's
+ * longitude and latitude, so that locations sharing a prefix of the hash lie within the same
+ * cell, and all the hashes within a cell form one contiguous range. Hashes are kept as 60-bit
+ * integers (12 geohash characters) so that cells can be queried as ranges of an indexed column.
+ *
+ * @author Christina Lidwin (clidwin)
+ * @version October 15, 2026
+ */
+public final class Geohash {
+    /**
+     * The number of bits in a full hash.
+     */
+    public static final int MAX_BITS = 60;
+
+    /**
+     * The number of bits represented by one geohash character.
+     */
+    public static final int BITS_PER_CHARACTER = 5;
+
+    private static final int BITS_PER_AXIS = MAX_BITS / 2;
+    private static final long LATITUDE_RANGE_E7 = 180L * FixedPoint.SCALE;
+    private static final long LONGITUDE_RANGE_E7 = 360L * FixedPoint.SCALE;
+    private static final String BASE32 = "0123456789bcdefghjkmnpqrstuvwxyz";
+
+    private Geohash() {
+    }
+
+    /**
+     * @param latitudeE7 A latitude in fixed-point units.
+     * @param longitudeE7 A longitude in fixed-point units.
+     * @return the full-precision hash of the location.
+     */
+    public static long encode(int latitudeE7, int longitudeE7) {
+        long maxIndex = (1L << BITS_PER_AXIS) - 1;
+        long latitudeIndex = Math.min(maxIndex,
+                (((long) latitudeE7 + LATITUDE_RANGE_E7 / 2) << BITS_PER_AXIS) / LATITUDE_RANGE_E7);
+        long longitudeIndex = Math.min(maxIndex,
+                (((long) longitudeE7 + LONGITUDE_RANGE_E7 / 2) << BITS_PER_AXIS) /
+                        LONGITUDE_RANGE_E7);
+
+        // Geohashes start with a longitude bit, so longitude takes the higher bit of each pair.
+        return (spread(longitudeIndex) << 1) | spread(latitudeIndex);
+    }
+
+    /**
+     * @param hash A full-precision hash.
+     * @param bits The precision of the cell, from 1 to {@link #MAX_BITS}.
+     * @return the cell containing the hash, as the leading bits of the hash.
+     */
+    public static long getCell(long hash, int bits) {
+        return hash >>> (MAX_BITS - bits);
+    }
+
+    /**
+     * @return the smallest full-precision hash within a cell.
+     */
+    public static long getMinHash(long cell, int bits) {
+        return cell << (MAX_BITS - bits);
+    }
+
+    /**
+     * @return the largest full-precision hash within a cell.
+     */
+    public static long getMaxHash(long cell, int bits) {
+        return ((cell + 1) << (MAX_BITS - bits)) - 1;
+    }
+
+    /**
+     * @return the southern edge of a cell, in fixed-point units.
+     */
+    public static int getMinLatitudeE7(long cell, int bits) {
+        return toLatitudeE7(compact(getMinHash(cell, bits)));
+    }
+
+    /**
+     * @return the northern edge of a cell, in fixed-point units.
+     */
+    public static int getMaxLatitudeE7(long cell, int bits) {
+        return toLatitudeE7(compact(getMaxHash(cell, bits)) + 1);
+    }
+
+    /**
+     * @return the western edge of a cell, in fixed-point units.
+     */
+    public static int getMinLongitudeE7(long cell, int bits) {
+        return toLongitudeE7(compact(getMinHash(cell, bits) >>> 1));
+    }
+
+    /**
+     * @return the eastern edge of a cell, in fixed-point units.
+     */
+    public static int getMaxLongitudeE7(long cell, int bits) {
+        return toLongitudeE7(compact(getMaxHash(cell, bits) >>> 1) + 1);
+    }
+
+    /**
+     * Finds a cell and the cells surrounding it, e.g. to look for anything within a cell's size
+     * of a location. Cells at the poles have fewer neighbours; longitude wraps around.
+     *
+     * @param cell The centre cell.
+     * @param bits The precision of the cell.
+     * @return the distinct cells touching the centre cell, including the centre cell itself.
+     */
+    public static long[] getNeighbourhood(long cell, int bits) {
+        // With an odd number of bits, the last bit of the cell is a longitude bit.
+        boolean endsWithLongitude = bits % 2 == 1;
+        long latitudeIndex = compact(endsWithLongitude ? cell >>> 1 : cell);
+        long longitudeIndex = compact(endsWithLongitude ? cell : cell >>> 1);
+        long latitudeCells = 1L << (bits / 2);
+        long longitudeCells = 1L << ((bits + 1) / 2);
+
+        long[] neighbourhood = new long[9];
+        int count = 0;
+        for (int dLatitude = -1; dLatitude <= 1; dLatitude++) {
+            long latitude = latitudeIndex + dLatitude;
+            if (latitude < 0 || latitude >= latitudeCells) {
+                continue;
+            }
+            for (int dLongitude = -1; dLongitude <= 1; dLongitude++) {
+                long longitude = (longitudeIndex + dLongitude + longitudeCells) % longitudeCells;
+                long neighbour = endsWithLongitude ?
+                        (spread(latitude) << 1) | spread(longitude) :
+                        (spread(longitude) << 1) | spread(latitude);
+
+                boolean seen = false;
+                for (int i = 0; i < count && !seen; i++) {
+                    seen = neighbourhood[i] == neighbour;
+                }
+                if (!seen) {
+                    neighbourhood[count++] = neighbour;
+                }
+            }
+        }
+        return Arrays.copyOf(neighbourhood, count);
+    }
+
+    /**
+     * @param hash A full-precision hash.
+     * @param characters The number of characters to keep, from 1 to 12.
+     * @return the hash as a conventional base 32 geohash string.
+     */
+    public static String toString(long hash, int characters) {
+        char[] text = new char[characters];
+        for (int i = 0; i < characters; i++) {
+            int shift = MAX_BITS - (i + 1) * BITS_PER_CHARACTER;
+            text[i] = BASE32.charAt((int) ((hash >>> shift) & 0x1f));
+        }
+        return new String(text);
+    }
+
+    /**
+     * Parses a base 32 geohash string into the cell it names. The cell's precision is
+     * {@link #BITS_PER_CHARACTER} times the length of the string.
+     *
+     * @param geohash A geohash of 1 to 12 characters.
+     * @return the cell named by the geohash.
+     * @throws IllegalArgumentException if the string is not a valid geohash.
+     */
+    public static long parseCell(String geohash) {
+        if (geohash.isEmpty() || geohash.length() * BITS_PER_CHARACTER > MAX_BITS) {
+            throw new IllegalArgumentException("Invalid geohash length: " + geohash);
+        }
+
+        long cell = 0;
+        for (int i = 0; i < geohash.length(); i++) {
+            int value = BASE32.indexOf(Character.toLowerCase(geohash.charAt(i)));
+            if (value < 0) {
+                throw new IllegalArgumentException("Invalid geohash character: " + geohash);
+            }
+            cell = (cell << BITS_PER_CHARACTER) | value;
+        }
+        return cell;
+    }
+
+    /**
+     * @return the latitude at the southern edge of a row of full-precision cells, rounded down.
+     */
+    private static int toLatitudeE7(long latitudeIndex) {
+        return (int) (((latitudeIndex * LATITUDE_RANGE_E7) >> BITS_PER_AXIS) -
+                LATITUDE_RANGE_E7 / 2);
+    }
+
+    /**
+     * @return the longitude at the western edge of a column of full-precision cells, rounded
+     *      down.
+     */
+    private static int toLongitudeE7(long longitudeIndex) {
+        return (int) (((longitudeIndex * LONGITUDE_RANGE_E7) >> BITS_PER_AXIS) -
+                LONGITUDE_RANGE_E7 / 2);
+    }
+
+    /**
+     * Spreads the low 32 bits of a value out to the even bits of a long.
+     */
+    private static long spread(long value) {
+        value &= 0x00000000FFFFFFFFL;
+        value = (value | (value << 16)) & 0x0000FFFF0000FFFFL;
+        value = (value | (value << 8)) & 0x00FF00FF00FF00FFL;
+        value = (value | (value << 4)) & 0x0F0F0F0F0F0F0F0FL;
+        value = (value | (value << 2)) & 0x3333333333333333L;
+        return (value | (value << 1)) & 0x5555555555555555L;
+    }
+
+    /**
+     * Gathers the even bits of a long back into its low 32 bits; the inverse of spread.
+     */
+    private static long compact(long value) {
+        value &= 0x5555555555555555L;
+        value = (value | (value >>> 1)) & 0x3333333333333333L;
+        value = (value | (value >>> 2)) & 0x0F0F0F0F0F0F0F0FL;
+        value = (value | (value >>> 4)) & 0x00FF00FF00FF00FFL;
+        value = (value | (value >>> 8)) & 0x0000FFFF0000FFFFL;
+        return (value | (value >>> 16)) & 0x00000000FFFFFFFFL;
+    }
+}
@@ -18,6 +18,7 @@ public class GeospatialPin {
     private Location location;
     private Date arrivalTime;
     private long duration;
+    private long id = -1;
 
 
     public GeospatialPin(Location location) {
@@ -37,6 +38,20 @@ public class GeospatialPin {
         return location;
     }
 
+    /**
+     * @return the latitude of the pin in fixed-point units (see {@link FixedPoint})
+     */
+    public int getLatitudeE7() {
+        return FixedPoint.toE7(location.getLatitude());
+    }
+
+    /**
+     * @return the longitude of the pin in fixed-point units (see {@link FixedPoint})
+     */
+    public int getLongitudeE7() {
+        return FixedPoint.toE7(location.getLongitude());
+    }
+
     /**
      * @return the {Address} of the pin
      */
@@ -71,6 +86,22 @@ public class GeospatialPin {
         this.duration = duration;
     }
 
+    /**
+     * @return the database row id of the pin, or -1 if it has not been written yet
+     */
+    public long getId() {
+        return id;
+    }
+
+    /**
+     * Sets the database row id for the pin, once it has been written or read back.
+     *
+     * @param id the row id assigned by the database.
+     */
+    public void setId(long id) {
+        this.id = id;
+    }
+
     /**
      * @return the full {@link android.location.Address} in String format.
      */
@@ -0,0 +1,206 @@
+package com.clidwin.android.visualimprints.location;
+
+/**
+ * Smooths a stream of location fixes with a constant-velocity Kalman filter, and rejects fixes
+ * that could only be reached at an implausible speed, such as multipath spikes.
+ * <p/>
+ * Positions are filtered in meters east and north of the first fix, where each axis is an
+ * independent filter over position and velocity. Fixes are weighted by their reported
+ * accuracy, so a precise fix moves the estimate much further than a vague one. The filter
+ * starts over after a long gap between fixes, or when so many fixes in a row are rejected that
+ * the estimate itself must be wrong, e.g. after a flight.
+ * <p/>
+ * The filter keeps only a few numbers and allocates nothing per fix. It is not thread-safe.
+ *
+ * @author Christina Lidwin (clidwin)
+ * @version October 15, 2026
+ */
+public class LocationFilter {
+    private static final double METERS_PER_DEGREE = 6371 * 1000 * Math.PI / 180;
+
+    // Used for fixes without an accuracy, and to keep a perfect fix from freezing the filter
+    private static final float DEFAULT_ACCURACY = 50; // m
+    private static final float MIN_ACCURACY = 1; // m
+
+    // Velocity is unknown when the filter starts; about 10 m/s either way
+    private static final double INITIAL_VELOCITY_VARIANCE = 100; // (m/s)^2
+
+    private final double accelerationVariance;
+    private final double maxSpeed;
+    private final int maxRejectedFixes;
+    private final long maxGapMillis;
+
+    private final Axis east = new Axis();
+    private final Axis north = new Axis();
+    private boolean started;
+    private long lastMillis;
+    private double originLatitude;
+    private double originLongitude;
+    private double metersPerDegreeLongitude;
+    private int rejectedFixes;
+
+    /**
+     * @param accelerationVariance How much the velocity may change between fixes, as the
+     *      variance of the acceleration in (m/s^2)^2.
+     * @param maxSpeed The highest plausible speed in m/s.
+     * @param maxRejectedFixes The number of fixes in a row that may be rejected before the
+     *      filter starts over from the next one.
+     * @param maxGapMillis The longest time between fixes that the filter bridges.
+     */
+    public LocationFilter(double accelerationVariance, double maxSpeed, int maxRejectedFixes,
+                          long maxGapMillis) {
+        this.accelerationVariance = accelerationVariance;
+        this.maxSpeed = maxSpeed;
+        this.maxRejectedFixes = maxRejectedFixes;
+        this.maxGapMillis = maxGapMillis;
+    }
+
+    /**
+     * Adds the next fix of the stream.
+     *
+     * @param timeMillis The time of the fix.
+     * @param latitude The latitude of the fix.
+     * @param longitude The longitude of the fix.
+     * @param accuracy The accuracy of the fix in meters, or 0 if it is not known (as in
+     *      {@link android.location.Location#getAccuracy()}).
+     * @return true if the fix was accepted and the estimate updated, or false if it was
+     *      rejected as an outlier.
+     */
+    public boolean addFix(long timeMillis, double latitude, double longitude, float accuracy) {
+        if (accuracy <= 0) {
+            accuracy = DEFAULT_ACCURACY;
+        }
+        accuracy = Math.max(MIN_ACCURACY, accuracy);
+        double variance = accuracy * accuracy;
+
+        long elapsedMillis = timeMillis - lastMillis;
+        if (!started || elapsedMillis > maxGapMillis || rejectedFixes >= maxRejectedFixes) {
+            start(timeMillis, latitude, longitude, variance);
+            return true;
+        }
+
+        double x = toEast(longitude);
+        double y = toNorth(latitude);
+        double seconds = Math.max(0, elapsedMillis) / 1000.0;
+        if (seconds > 0) {
+            // Only the part of the jump not explained by the fix's own error needs explaining.
+            double distance = Math.sqrt(
+                    (x - east.position) * (x - east.position) +
+                    (y - north.position) * (y - north.position));
+            if ((distance - accuracy) / seconds > maxSpeed) {
+                rejectedFixes++;
+                return false;
+            }
+        }
+
+        east.predict(seconds, accelerationVariance);
+        north.predict(seconds, accelerationVariance);
+        east.update(x, variance);
+        north.update(y, variance);
+        lastMillis = Math.max(lastMillis, timeMillis);
+        rejectedFixes = 0;
+        return true;
+    }
+
+    /**
+     * @return the filtered latitude, in fixed-point units.
+     */
+    public int getLatitudeE7() {
+        return FixedPoint.toE7(originLatitude + north.position / METERS_PER_DEGREE);
+    }
+
+    /**
+     * @return the filtered longitude, in fixed-point units.
+     */
+    public int getLongitudeE7() {
+        return FixedPoint.toE7(originLongitude + east.position / metersPerDegreeLongitude);
+    }
+
+    /**
+     * @return the accuracy of the filtered position in meters, i.e. the standard deviation of
+     *      its error along the less certain axis.
+     */
+    public float getAccuracy() {
+        return (float) Math.sqrt(Math.max(east.positionVariance, north.positionVariance));
+    }
+
+    /**
+     * Starts the filter over at a fix, which also becomes the origin of the local axes.
+     */
+    private void start(long timeMillis, double latitude, double longitude, double variance) {
+        originLatitude = latitude;
+        originLongitude = longitude;
+        metersPerDegreeLongitude =
+                Math.max(1, METERS_PER_DEGREE * Math.cos(Math.toRadians(latitude)));
+        east.start(variance);
+        north.start(variance);
+        lastMillis = timeMillis;
+        rejectedFixes = 0;
+        started = true;
+    }
+
+    private double toEast(double longitude) {
+        double degrees = longitude - originLongitude;
+        // Take the short way around the antimeridian.
+        if (degrees > 180) {
+            degrees -= 360;
+        } else if (degrees < -180) {
+            degrees += 360;
+        }
+        return degrees * metersPerDegreeLongitude;
+    }
+
+    private double toNorth(double latitude) {
+        return (latitude - originLatitude) * METERS_PER_DEGREE;
+    }
+
+    /**
+     * The position and velocity along one axis, in meters from the origin and meters per
+     * second, with their covariance.
+     */
+    private static class Axis {
+        double position;
+        double velocity;
+        double positionVariance;
+        double covariance;
+        double velocityVariance;
+
+        void start(double variance) {
+            position = 0;
+            velocity = 0;
+            positionVariance = variance;
+            covariance = 0;
+            velocityVariance = INITIAL_VELOCITY_VARIANCE;
+        }
+
+        /**
+         * Moves the estimate forward in time at constant velocity, letting an unknown
+         * acceleration add to its uncertainty.
+         */
+        void predict(double seconds, double accelerationVariance) {
+            double seconds2 = seconds * seconds;
+            position += velocity * seconds;
+            positionVariance += seconds * (2 * covariance + seconds * velocityVariance) +
+                    accelerationVariance * seconds2 * seconds2 / 4;
+            covariance += seconds * velocityVariance +
+                    accelerationVariance * seconds2 * seconds / 2;
+            velocityVariance += accelerationVariance * seconds2;
+        }
+
+        /**
+         * Corrects the estimate with a measured position.
+         */
+        void update(double measurement, double measurementVariance) {
+            double innovationVariance = positionVariance + measurementVariance;
+            double positionGain = positionVariance / innovationVariance;
+            double velocityGain = covariance / innovationVariance;
+            double innovation = measurement - position;
+
+            position += positionGain * innovation;
+            velocity += velocityGain * innovation;
+            velocityVariance -= velocityGain * covariance;
+            positionVariance *= 1 - positionGain;
+            covariance *= 1 - positionGain;
+        }
+    }
+}
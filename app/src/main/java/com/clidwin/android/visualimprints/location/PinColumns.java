@@ -0,0 +1,190 @@
+package com.clidwin.android.visualimprints.location;
+
+import java.util.Arrays;
+
+/**
+ * Compact column-oriented storage for a range of pins. Each pin is a position in a set of
+ * parallel primitive arrays, so a pin costs 28 bytes instead of a {@link GeospatialPin} with
+ * its own Location and Date objects. Coordinates are held in fixed-point form
+ * (see {@link FixedPoint}), as they are stored in the database. Accuracies are only filled in
+ * by readers that need them, such as the segment archiver, and are 0 when not known.
+ *
+ * @author Christina Lidwin (clidwin)
+ * @version October 15, 2026
+ */
+public class PinColumns {
+    /* Fields a reader may ask for; fields that were not loaded read as zero */
+    public static final int FIELD_ARRIVAL = 1;
+    public static final int FIELD_DURATION = 2;
+    public static final int FIELD_LOCATION = 4;
+    public static final int ALL_FIELDS = FIELD_ARRIVAL | FIELD_DURATION | FIELD_LOCATION;
+
+    private static final int DEFAULT_CAPACITY = 64;
+
+    private long[] arrivalMillis;
+    private long[] durations;
+    private int[] latitudesE7;
+    private int[] longitudesE7;
+    private float[] accuracies;
+    private int size;
+
+    public PinColumns() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public PinColumns(int capacity) {
+        arrivalMillis = new long[capacity];
+        durations = new long[capacity];
+        latitudesE7 = new int[capacity];
+        longitudesE7 = new int[capacity];
+        accuracies = new float[capacity];
+    }
+
+    /**
+     * Appends a pin to the end of the columns.
+     *
+     * @param arrival The arrival time of the pin in milliseconds since the epoch.
+     * @param duration The amount of time in milliseconds spent at the pin.
+     * @param latitude The latitude of the pin.
+     * @param longitude The longitude of the pin.
+     */
+    public void add(long arrival, long duration, double latitude, double longitude) {
+        addE7(arrival, duration, FixedPoint.toE7(latitude), FixedPoint.toE7(longitude));
+    }
+
+    /**
+     * Appends a pin with fixed-point coordinates to the end of the columns.
+     *
+     * @param arrival The arrival time of the pin in milliseconds since the epoch.
+     * @param duration The amount of time in milliseconds spent at the pin.
+     * @param latitudeE7 The latitude of the pin in fixed-point units.
+     * @param longitudeE7 The longitude of the pin in fixed-point units.
+     */
+    public void addE7(long arrival, long duration, int latitudeE7, int longitudeE7) {
+        addE7(arrival, duration, latitudeE7, longitudeE7, 0);
+    }
+
+    /**
+     * Appends a pin with fixed-point coordinates and an accuracy to the end of the columns.
+     *
+     * @param arrival The arrival time of the pin in milliseconds since the epoch.
+     * @param duration The amount of time in milliseconds spent at the pin.
+     * @param latitudeE7 The latitude of the pin in fixed-point units.
+     * @param longitudeE7 The longitude of the pin in fixed-point units.
+     * @param accuracy The accuracy of the pin's location in meters, or 0 if it is not known.
+     */
+    public void addE7(long arrival, long duration, int latitudeE7, int longitudeE7,
+                      float accuracy) {
+        ensureCapacity(size + 1);
+        arrivalMillis[size] = arrival;
+        durations[size] = duration;
+        latitudesE7[size] = latitudeE7;
+        longitudesE7[size] = longitudeE7;
+        accuracies[size] = accuracy;
+        size++;
+    }
+
+    /**
+     * Grows the columns so that they can hold at least the given number of pins without
+     * being reallocated.
+     *
+     * @param capacity The number of pins the columns should be able to hold.
+     */
+    public void ensureCapacity(int capacity) {
+        if (capacity <= arrivalMillis.length) {
+            return;
+        }
+
+        int newCapacity = Math.max(capacity, arrivalMillis.length * 2);
+        arrivalMillis = Arrays.copyOf(arrivalMillis, newCapacity);
+        durations = Arrays.copyOf(durations, newCapacity);
+        latitudesE7 = Arrays.copyOf(latitudesE7, newCapacity);
+        longitudesE7 = Arrays.copyOf(longitudesE7, newCapacity);
+        accuracies = Arrays.copyOf(accuracies, newCapacity);
+    }
+
+    /**
+     * Removes all pins while keeping the allocated arrays for reuse.
+     */
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * @return the number of pins held.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the arrival time of the pin at an index, in milliseconds since the epoch.
+     */
+    public long getArrivalMillis(int index) {
+        return arrivalMillis[index];
+    }
+
+    /**
+     * @return the amount of time in milliseconds spent at the pin at an index.
+     */
+    public long getDuration(int index) {
+        return durations[index];
+    }
+
+    /**
+     * Changes the amount of time in milliseconds spent at the pin at an index.
+     */
+    public void setDuration(int index, long duration) {
+        durations[index] = duration;
+    }
+
+    /**
+     * Moves the pin at an index to fixed-point coordinates.
+     */
+    public void setLocationE7(int index, int latitudeE7, int longitudeE7) {
+        latitudesE7[index] = latitudeE7;
+        longitudesE7[index] = longitudeE7;
+    }
+
+    /**
+     * @return the latitude of the pin at an index.
+     */
+    public double getLatitude(int index) {
+        return FixedPoint.toDegrees(latitudesE7[index]);
+    }
+
+    /**
+     * @return the longitude of the pin at an index.
+     */
+    public double getLongitude(int index) {
+        return FixedPoint.toDegrees(longitudesE7[index]);
+    }
+
+    /**
+     * @return the latitude of the pin at an index, in fixed-point units.
+     */
+    public int getLatitudeE7(int index) {
+        return latitudesE7[index];
+    }
+
+    /**
+     * @return the longitude of the pin at an index, in fixed-point units.
+     */
+    public int getLongitudeE7(int index) {
+        return longitudesE7[index];
+    }
+
+    /**
+     * @return the accuracy of the pin at an index in meters, or 0 if it is not known.
+     */
+    public float getAccuracy(int index) {
+        return accuracies[index];
+    }
+
+    /**
+     * Changes the accuracy in meters of the pin at an index.
+     */
+    public void setAccuracy(int index, float accuracy) {
+        accuracies[index] = accuracy;
+    }
+}
@@ -0,0 +1,304 @@
+package com.clidwin.android.visualimprints.location;
+
+/**
+ * Groups a stream of location fixes into stay points: places where the device stayed within a
+ * radius for at least a minimum dwell time. Fixes are clustered around a running centroid, so
+ * jitter around a place moves its centre a little instead of starting a new place.
+ * <p/>
+ * Leaving is decided with hysteresis. Fixes between the stay radius and the wider exit radius
+ * keep the stay alive without moving its centroid, and a stay only ends after several fixes in
+ * a row land beyond the exit radius, so a single multipath spike cannot split it. Fixes made
+ * while travelling never form a stay and produce no pins.
+ * <p/>
+ * The detector keeps only a few numbers and allocates nothing per fix. It is not thread-safe.
+ *
+ * @author Christina Lidwin (clidwin)
+ * @version October 15, 2026
+ */
+public class StayPointDetector {
+    /**
+     * The fix was taken into a place that has not been stayed at long enough yet, or is a
+     * possible departure from the current stay.
+     */
+    public static final int FIX_PENDING = 0;
+
+    /**
+     * A stay has just begun; its values are available from the getters.
+     */
+    public static final int STAY_STARTED = 1;
+
+    /**
+     * The fix belongs to the current stay, whose values have been updated.
+     */
+    public static final int STAY_EXTENDED = 2;
+
+    /**
+     * The current stay has ended, as of the last fix that belonged to it. Its values stay
+     * available from the getters until the next stay begins.
+     */
+    public static final int STAY_ENDED = 3;
+
+    private static final int EARTH_RADIUS = 6371 * 1000; // m
+
+    private final double stayRadius;
+    private final double exitRadius;
+    private final long minDwellMillis;
+    private final int exitFixes;
+
+    private final Cluster stay = new Cluster();
+    private final Cluster candidate = new Cluster();
+    private boolean staying;
+    private int departureFixes;
+
+    /**
+     * @param stayRadius The distance in meters from the centre of a place within which fixes
+     *      belong to it.
+     * @param exitRadius The distance in meters from the centre of a stay beyond which fixes
+     *      count towards leaving it, at least the stay radius.
+     * @param minDwellMillis The time in milliseconds spent at a place before it is a stay.
+     * @param exitFixes The number of fixes in a row beyond the exit radius that end a stay.
+     */
+    public StayPointDetector(double stayRadius, double exitRadius, long minDwellMillis,
+                             int exitFixes) {
+        this.stayRadius = stayRadius;
+        this.exitRadius = Math.max(stayRadius, exitRadius);
+        this.minDwellMillis = minDwellMillis;
+        this.exitFixes = Math.max(1, exitFixes);
+    }
+
+    /**
+     * Continues a stay recorded earlier, e.g. by a service that was restarted. Its extent is
+     * not known, so it starts again from the centre.
+     *
+     * @param arrivalMillis The time the stay began.
+     * @param lastSeenMillis The last time the stay was seen.
+     * @param latitudeE7 The latitude of the centre of the stay, in fixed-point units.
+     * @param longitudeE7 The longitude of the centre of the stay, in fixed-point units.
+     */
+    public void resume(long arrivalMillis, long lastSeenMillis, int latitudeE7,
+                       int longitudeE7) {
+        stay.start(arrivalMillis, latitudeE7, longitudeE7);
+        stay.lastSeenMillis = Math.max(arrivalMillis, lastSeenMillis);
+        candidate.clear();
+        staying = true;
+        departureFixes = 0;
+    }
+
+    /**
+     * Adds the next fix of the stream. Fixes are expected in time order.
+     *
+     * @param timeMillis The time of the fix.
+     * @param latitudeE7 The latitude of the fix, in fixed-point units.
+     * @param longitudeE7 The longitude of the fix, in fixed-point units.
+     * @return what the fix did: {@link #FIX_PENDING}, {@link #STAY_STARTED},
+     *      {@link #STAY_EXTENDED} or {@link #STAY_ENDED}.
+     */
+    public int addFix(long timeMillis, int latitudeE7, int longitudeE7) {
+        if (staying) {
+            double distance = stay.distanceTo(latitudeE7, longitudeE7);
+            if (distance <= exitRadius) {
+                if (distance <= stayRadius) {
+                    stay.add(timeMillis, latitudeE7, longitudeE7);
+                } else {
+                    stay.lastSeenMillis = Math.max(stay.lastSeenMillis, timeMillis);
+                }
+                candidate.clear();
+                departureFixes = 0;
+                return STAY_EXTENDED;
+            }
+
+            // Fixes beyond the stay may already be gathering into the next place.
+            addToCandidate(timeMillis, latitudeE7, longitudeE7);
+            if (++departureFixes < exitFixes) {
+                return FIX_PENDING;
+            }
+            staying = false;
+            departureFixes = 0;
+            return STAY_ENDED;
+        }
+
+        addToCandidate(timeMillis, latitudeE7, longitudeE7);
+        if (candidate.lastSeenMillis - candidate.arrivalMillis < minDwellMillis) {
+            return FIX_PENDING;
+        }
+        stay.copyFrom(candidate);
+        candidate.clear();
+        staying = true;
+        return STAY_STARTED;
+    }
+
+    /**
+     * @return true if a stay is in progress, else false.
+     */
+    public boolean isStaying() {
+        return staying;
+    }
+
+    /**
+     * @return the time the current or last stay began.
+     */
+    public long getArrivalMillis() {
+        return stay.arrivalMillis;
+    }
+
+    /**
+     * @return the last time the current or last stay was seen.
+     */
+    public long getLastSeenMillis() {
+        return stay.lastSeenMillis;
+    }
+
+    /**
+     * @return the time in milliseconds spent at the current or last stay.
+     */
+    public long getDuration() {
+        return stay.lastSeenMillis - stay.arrivalMillis;
+    }
+
+    /**
+     * @return the latitude of the centroid of the stay, in fixed-point units.
+     */
+    public int getLatitudeE7() {
+        return stay.getLatitudeE7();
+    }
+
+    /**
+     * @return the longitude of the centroid of the stay, in fixed-point units.
+     */
+    public int getLongitudeE7() {
+        return stay.getLongitudeE7();
+    }
+
+    /**
+     * @return the southern edge of the fixes making up the stay, in fixed-point units.
+     */
+    public int getMinLatitudeE7() {
+        return stay.minLatitudeE7;
+    }
+
+    /**
+     * @return the northern edge of the fixes making up the stay, in fixed-point units.
+     */
+    public int getMaxLatitudeE7() {
+        return stay.maxLatitudeE7;
+    }
+
+    /**
+     * @return the western edge of the fixes making up the stay, in fixed-point units.
+     */
+    public int getMinLongitudeE7() {
+        return stay.minLongitudeE7;
+    }
+
+    /**
+     * @return the eastern edge of the fixes making up the stay, in fixed-point units.
+     */
+    public int getMaxLongitudeE7() {
+        return stay.maxLongitudeE7;
+    }
+
+    /**
+     * @return the length in meters of the diagonal of the stay's extent.
+     */
+    public double getExtent() {
+        return distanceBetween(stay.minLatitudeE7, stay.minLongitudeE7,
+                stay.maxLatitudeE7, stay.maxLongitudeE7);
+    }
+
+    /**
+     * Adds a fix to the place being considered for the next stay, or starts a new place at the
+     * fix if it is too far from the current one.
+     */
+    private void addToCandidate(long timeMillis, int latitudeE7, int longitudeE7) {
+        if (candidate.count == 0 ||
+                candidate.distanceTo(latitudeE7, longitudeE7) > stayRadius) {
+            candidate.start(timeMillis, latitudeE7, longitudeE7);
+        } else {
+            candidate.add(timeMillis, latitudeE7, longitudeE7);
+        }
+    }
+
+    /**
+     * Calculates the distance in meters between two geo coordinates.
+     * http://www.movable-type.co.uk/scripts/latlong.html
+     *
+     * @return the distance between the coordinates (in meters)
+     */
+    static double distanceBetween(int fromLatitudeE7, int fromLongitudeE7, int toLatitudeE7,
+                                  int toLongitudeE7) {
+        double lat1 = Math.toRadians(FixedPoint.toDegrees(fromLatitudeE7));
+        double lat2 = Math.toRadians(FixedPoint.toDegrees(toLatitudeE7));
+        double dLat = lat2 - lat1;
+        double dLon = Math.toRadians(
+                FixedPoint.toDegrees(toLongitudeE7) - FixedPoint.toDegrees(fromLongitudeE7));
+        double a = Math.sin(dLat / 2) * Math.sin(dLat / 2) +
+                Math.cos(lat1) * Math.cos(lat2) * Math.sin(dLon / 2) * Math.sin(dLon / 2);
+        double c = 2 * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
+        return EARTH_RADIUS * c;
+    }
+
+    /**
+     * The fixes gathered at one place: their time span, the sums behind their centroid and
+     * their bounding box.
+     */
+    private static class Cluster {
+        int count;
+        long arrivalMillis;
+        long lastSeenMillis;
+        long latitudeSumE7;
+        long longitudeSumE7;
+        int minLatitudeE7;
+        int maxLatitudeE7;
+        int minLongitudeE7;
+        int maxLongitudeE7;
+
+        void clear() {
+            count = 0;
+        }
+
+        void start(long timeMillis, int latitudeE7, int longitudeE7) {
+            count = 1;
+            arrivalMillis = timeMillis;
+            lastSeenMillis = timeMillis;
+            latitudeSumE7 = latitudeE7;
+            longitudeSumE7 = longitudeE7;
+            minLatitudeE7 = maxLatitudeE7 = latitudeE7;
+            minLongitudeE7 = maxLongitudeE7 = longitudeE7;
+        }
+
+        void add(long timeMillis, int latitudeE7, int longitudeE7) {
+            count++;
+            lastSeenMillis = Math.max(lastSeenMillis, timeMillis);
+            latitudeSumE7 += latitudeE7;
+            longitudeSumE7 += longitudeE7;
+            minLatitudeE7 = Math.min(minLatitudeE7, latitudeE7);
+            maxLatitudeE7 = Math.max(maxLatitudeE7, latitudeE7);
+            minLongitudeE7 = Math.min(minLongitudeE7, longitudeE7);
+            maxLongitudeE7 = Math.max(maxLongitudeE7, longitudeE7);
+        }
+
+        void copyFrom(Cluster other) {
+            count = other.count;
+            arrivalMillis = other.arrivalMillis;
+            lastSeenMillis = other.lastSeenMillis;
+            latitudeSumE7 = other.latitudeSumE7;
+            longitudeSumE7 = other.longitudeSumE7;
+            minLatitudeE7 = other.minLatitudeE7;
+            maxLatitudeE7 = other.maxLatitudeE7;
+            minLongitudeE7 = other.minLongitudeE7;
+            maxLongitudeE7 = other.maxLongitudeE7;
+        }
+
+        int getLatitudeE7() {
+            return (int) Math.round(latitudeSumE7 / (double) count);
+        }
+
+        int getLongitudeE7() {
+            return (int) Math.round(longitudeSumE7 / (double) count);
+        }
+
+        double distanceTo(int latitudeE7, int longitudeE7) {
+            return distanceBetween(getLatitudeE7(), getLongitudeE7(), latitudeE7, longitudeE7);
+        }
+    }
+}
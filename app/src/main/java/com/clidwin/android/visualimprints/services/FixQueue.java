@@ -0,0 +1,104 @@
+package com.clidwin.android.visualimprints.services;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded single-producer, single-consumer ring buffer of location fixes, handing them from
+ * the thread that receives them to the thread that ingests them without locks. Fixes are kept
+ * as primitives in parallel arrays, so nothing is allocated per fix.
+ * <p/>
+ * When the buffer is full, the newest fix is dropped and counted. The fixes already waiting
+ * will be ingested in order and the next fixes will describe the same moment better, so
+ * dropping never reorders the stream; a full buffer only means ingestion has fallen far
+ * behind.
+ * <p/>
+ * Only one thread may call {@link #offer}, and only one other thread may call {@link #poll}.
+ *
+ * @author Christina Lidwin (clidwin)
+ * @version October 15, 2026
+ */
+class FixQueue {
+    private final int mask;
+    private final long[] timesMillis;
+    private final double[] latitudes;
+    private final double[] longitudes;
+    private final float[] accuracies;
+
+    // The next position to write and to read; each is only ever advanced by its own side
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+
+    /**
+     * A reusable holder for the fix taken by {@link #poll}.
+     */
+    static class Fix {
+        long timeMillis;
+        double latitude;
+        double longitude;
+        float accuracy;
+    }
+
+    /**
+     * @param capacity The number of fixes the buffer holds, rounded up to a power of two.
+     */
+    FixQueue(int capacity) {
+        int size = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+        mask = size - 1;
+        timesMillis = new long[size];
+        latitudes = new double[size];
+        longitudes = new double[size];
+        accuracies = new float[size];
+    }
+
+    /**
+     * Adds a fix, from the producing thread.
+     *
+     * @return true if the fix was added, or false if the buffer was full and it was dropped.
+     */
+    boolean offer(long timeMillis, double latitude, double longitude, float accuracy) {
+        long position = tail.get();
+        if (position - head.get() > mask) {
+            dropped.incrementAndGet();
+            return false;
+        }
+
+        int index = (int) position & mask;
+        timesMillis[index] = timeMillis;
+        latitudes[index] = latitude;
+        longitudes[index] = longitude;
+        accuracies[index] = accuracy;
+        // Publishes the slot to the consumer only once it is filled in.
+        tail.lazySet(position + 1);
+        return true;
+    }
+
+    /**
+     * Takes the oldest fix, from the consuming thread.
+     *
+     * @param fix The holder to copy the fix into.
+     * @return true if a fix was taken, or false if the buffer was empty.
+     */
+    boolean poll(Fix fix) {
+        long position = head.get();
+        if (position == tail.get()) {
+            return false;
+        }
+
+        int index = (int) position & mask;
+        fix.timeMillis = timesMillis[index];
+        fix.latitude = latitudes[index];
+        fix.longitude = longitudes[index];
+        fix.accuracy = accuracies[index];
+        // Hands the slot back to the producer only once it has been read.
+        head.lazySet(position + 1);
+        return true;
+    }
+
+    /**
+     * @return the number of fixes dropped because the buffer was full.
+     */
+    long getDroppedCount() {
+        return dropped.get();
+    }
+}
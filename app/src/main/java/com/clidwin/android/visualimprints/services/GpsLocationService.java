@@ -8,15 +8,24 @@ import android.hardware.Sensor;
 import android.hardware.SensorManager;
 import android.location.Location;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.HandlerThread;
 import android.os.IBinder;
+import android.os.Looper;
+import android.os.Process;
 import android.support.v4.content.LocalBroadcastManager;
 import android.util.Log;
 
 import com.clidwin.android.visualimprints.Constants;
 import com.clidwin.android.visualimprints.R;
+import com.clidwin.android.visualimprints.VisualImprintsApplication;
 import com.clidwin.android.visualimprints.activities.VisualizationsActivity;
+import com.clidwin.android.visualimprints.location.FixedPoint;
 import com.clidwin.android.visualimprints.location.GeospatialPin;
-import com.clidwin.android.visualimprints.storage.DatabaseAdapter;
+import com.clidwin.android.visualimprints.location.LocationFilter;
+import com.clidwin.android.visualimprints.location.PinColumns;
+import com.clidwin.android.visualimprints.location.StayPointDetector;
+import com.clidwin.android.visualimprints.storage.PinStore;
 import com.google.android.gms.common.ConnectionResult;
 import com.google.android.gms.common.GooglePlayServicesUtil;
 import com.google.android.gms.common.api.GoogleApiClient;
@@ -25,26 +34,45 @@ import com.google.android.gms.location.LocationRequest;
 import com.google.android.gms.location.LocationServices;
 
 import java.util.Date;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
- * Retrieves location information
+ * Retrieves location information. Fixes are handed from the main thread to a dedicated
+ * ingestion thread through a {@link FixQueue}; filtering, stay detection and every database
+ * write happen on that thread, which alone touches the recording state below.
  *
  * @author Christina Lidwin (clidwin)
  * @version June 01, 2015
  */
 public class GpsLocationService extends Service
         implements GoogleApiClient.ConnectionCallbacks,
-        GoogleApiClient.OnConnectionFailedListener {
+        GoogleApiClient.OnConnectionFailedListener, StillnessClassifier.MotionListener {
 
     private static final String TAG = "gps-location-service";
 
-    DatabaseAdapter dbAdapter;
+    PinStore pinStore;
     GeospatialPin mostRecentPin;
+    StayCheckpoint stayCheckpoint;
+    StayPointDetector stayDetector;
+    LocationFilter locationFilter;
     SensorManager mSensorManager;
     Sensor mAccelerometer;
+    StillnessClassifier mStillnessClassifier;
     GoogleApiClient mGoogleApiClient;
     LocationRequest mLocationRequest;
     ViLocationListener mLocationListener;
+    FixQueue mFixQueue;
+    Handler mIngestionHandler;
+
+    private final FixQueue.Fix ingestedFix = new FixQueue.Fix();
+    private final AtomicBoolean ingestionScheduled = new AtomicBoolean();
+    private final Runnable ingestionRunnable = new Runnable() {
+        @Override
+        public void run() {
+            ingestQueuedFixes();
+        }
+    };
+    private long reportedDrops;
 
     public GpsLocationService() {
         super();
@@ -75,9 +103,34 @@ public class GpsLocationService extends Service
             Log.e(TAG, "Unable to connect to Google Play Services.");
         }
         mLocationListener = new ViLocationListener();
+        mFixQueue = new FixQueue(Constants.FIX_QUEUE_CAPACITY);
+
+        locationFilter = new LocationFilter(Constants.FILTER_ACCELERATION_VARIANCE,
+                Constants.FILTER_MAX_SPEED, Constants.FILTER_MAX_REJECTED_FIXES,
+                Constants.FILTER_MAX_GAP);
+
+        // Pick up the stay being recorded when the service last ran.
+        stayDetector = new StayPointDetector(Constants.STAY_RADIUS, Constants.STAY_EXIT_RADIUS,
+                Constants.STAY_MIN_DWELL, Constants.STAY_EXIT_FIXES);
+        stayCheckpoint = new StayCheckpoint(this);
+        mostRecentPin = stayCheckpoint.restore();
+        if (mostRecentPin != null && stayCheckpoint.isOpen()) {
+            resumeStay(mostRecentPin);
+        }
+
+        // Started after the state above is set up, so the thread sees all of it.
+        HandlerThread ingestionThread =
+                new HandlerThread("vi-location-ingestion", Process.THREAD_PRIORITY_BACKGROUND);
+        ingestionThread.start();
+        mIngestionHandler = new Handler(ingestionThread.getLooper());
 
         mSensorManager = (SensorManager) getSystemService(SENSOR_SERVICE);
         mAccelerometer = mSensorManager.getDefaultSensor(Sensor.TYPE_ACCELEROMETER);
+        mStillnessClassifier = new StillnessClassifier(this);
+        if (mAccelerometer != null) {
+            mSensorManager.registerListener(
+                    mStillnessClassifier, mAccelerometer, SensorManager.SENSOR_DELAY_NORMAL);
+        }
 
         //subscribeToLocationUpdates();
         createNotification("Location service is running.");
@@ -106,36 +159,37 @@ public class GpsLocationService extends Service
     @Override
     public void onDestroy() {
         Log.d(TAG, "GpsLocationService destroyed.");
-        super.onDestroy();
-    }
+        mSensorManager.unregisterListener(mStillnessClassifier);
 
-    /**
-     * Calculates the distance in meters between two geo coordinates.
-     * http://www.movable-type.co.uk/scripts/latlong.html
-     *
-     * @param fromLocation The first location of reference
-     * @param toLocation   The second location of reference
-     * @return the distance between the locations (in meters)
-     */
-    private double distanceBetweenLocations(Location fromLocation, Location toLocation) {
-        int locationAccuracy = 8; // Anything beyond this is noise in location data
-        double lat1 = roundValue(fromLocation.getLatitude(), locationAccuracy);
-        double lat2 = roundValue(toLocation.getLatitude(), locationAccuracy);
-        double long1 = roundValue(fromLocation.getLongitude(), locationAccuracy);
-        double long2 = roundValue(toLocation.getLongitude(), locationAccuracy);
-
-        Log.d(TAG, "Finding distance between (" + lat1 + ", " + long1 +
-                ") and (" + lat2 + ", " + long2 + ")");
-
-        int earthRadius = 6371 * 1000; // m
-        double dLat = Math.toRadians(lat2 - lat1);
-        double dLon = Math.toRadians(long2 - long1);
-        double a = Math.sin(dLat / 2) * Math.sin(dLat / 2) +
-                Math.cos(Math.toRadians(lat1)) *
-                        Math.cos(Math.toRadians(lat2)) *
-                        Math.sin(dLon / 2) * Math.sin(dLon / 2);
-        double c = 2 * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
-        return earthRadius * c;
+        // Stops new fixes first; the listener runs on this thread, so none can follow.
+        if (mGoogleApiClient != null) {
+            if (mGoogleApiClient.isConnected()) {
+                LocationServices.FusedLocationApi.removeLocationUpdates(
+                        mGoogleApiClient, mLocationListener);
+            }
+            mGoogleApiClient.disconnect();
+        }
+
+        // Fixes still queued are ingested before the stay is written out and the thread ends.
+        mIngestionHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                ingestQueuedFixes();
+                if (pinStore != null) {
+                    if (mostRecentPin != null) {
+                        updatePin(mostRecentPin);
+                    }
+                    // An ended stay was checkpointed as it ended.
+                    if (stayDetector.isStaying()) {
+                        stayCheckpoint.save(mostRecentPin, stayDetector.getLastSeenMillis(),
+                                true);
+                    }
+                    pinStore.flush();
+                }
+                Looper.myLooper().quit();
+            }
+        });
+        super.onDestroy();
     }
 
     /**
@@ -149,18 +203,6 @@ public class GpsLocationService extends Service
         LocalBroadcastManager.getInstance(this).sendBroadcast(gpsIntent);
     }
 
-    /**
-     * Source:
-     * //stackoverflow.com/questions/153724/how-to-round-a-number-to-n-decimal-places-in-java
-     *
-     * @param value The number to round.
-     * @return The value rounded to eight decimal places of precision.
-     */
-    private double roundValue(double value, int accuracy) {
-        double precision = Math.pow(10, accuracy); // Eight decimal places
-        return Math.round(value * precision) / precision;
-    }
-
     @Override
     public IBinder onBind(Intent intent) {
         return null;
@@ -168,25 +210,81 @@ public class GpsLocationService extends Service
 
     @Override
     public void onConnected(Bundle bundle) {
-        //TODO(clidwin): Create a setting allowing people to change these
-        mLocationRequest = LocationRequest.create()
-                .setPriority(LocationRequest.PRIORITY_HIGH_ACCURACY)
-                .setInterval(Constants.UPDATE_INTERVAL)
-                .setFastestInterval(Constants.FASTEST_UPDATE_INTERVAL)
-                .setSmallestDisplacement(Constants.UPDATE_DISTANCE);
+        // Queued ahead of any fix, so the store is ready before the first one is ingested.
+        final PinStore applicationPinStore =
+                ((VisualImprintsApplication) getApplication()).getPinStore();
+        mIngestionHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                // Share the application's pin store so that buffered writes are visible to the
+                // visualizations before they are flushed.
+                if (pinStore != null) {
+                    return;
+                }
+                pinStore = applicationPinStore;
+
+                // The checkpoint may hold dwell time, or the whole pin, that the database never
+                // received. Without one, the store is asked once, rather than on every fix.
+                if (mostRecentPin != null) {
+                    pinStore.restore(mostRecentPin.getArrivalTime().getTime(),
+                            mostRecentPin.getDuration(), mostRecentPin.getLatitudeE7(),
+                            mostRecentPin.getLongitudeE7(),
+                            mostRecentPin.getLocation().getAccuracy());
+                } else {
+                    PinColumns recent = new PinColumns(1);
+                    if (pinStore.loadMostRecentPin(recent)) {
+                        mostRecentPin = createPin(recent.getArrivalMillis(0),
+                                recent.getDuration(0), recent.getLatitudeE7(0),
+                                recent.getLongitudeE7(0));
+                        mostRecentPin.getLocation().setAccuracy(recent.getAccuracy(0));
+                        resumeStay(mostRecentPin);
+                    }
+                }
+            }
+        });
 
         // Request last location to get an immediate update, then request continuous updates.
         LocationServices.FusedLocationApi.getLastLocation(mGoogleApiClient);
-        LocationServices.FusedLocationApi.requestLocationUpdates(
-                mGoogleApiClient, mLocationRequest, mLocationListener);
+        requestLocationUpdates(mStillnessClassifier.isStill());
+
+        Log.d(TAG, getClass().getSimpleName() + " started.");
+    }
 
-        // Create database connection if it does not already exist.
-        if (dbAdapter == null) {
-            dbAdapter = new DatabaseAdapter(this);
-            dbAdapter.open();
+    /**
+     * Trades fix frequency for power as the device stops and starts moving. The request is
+     * only renegotiated on these transitions.
+     */
+    @Override
+    public void onMotionChanged(boolean still) {
+        Log.d(TAG, still ? "Device is still." : "Device is moving.");
+        if (mGoogleApiClient != null && mGoogleApiClient.isConnected()) {
+            requestLocationUpdates(still);
         }
+    }
 
-        Log.d(TAG, getClass().getSimpleName() + " started.");
+    /**
+     * Requests continuous location updates, replacing any earlier request of the service.
+     *
+     * @param still Whether the device is sitting still, in which case rare low-power fixes
+     *      are enough.
+     */
+    private void requestLocationUpdates(boolean still) {
+        //TODO(clidwin): Create a setting allowing people to change these
+        if (still) {
+            mLocationRequest = LocationRequest.create()
+                    .setPriority(LocationRequest.PRIORITY_LOW_POWER)
+                    .setInterval(Constants.STILL_UPDATE_INTERVAL)
+                    .setFastestInterval(Constants.FASTEST_UPDATE_INTERVAL)
+                    .setSmallestDisplacement(Constants.UPDATE_DISTANCE);
+        } else {
+            mLocationRequest = LocationRequest.create()
+                    .setPriority(LocationRequest.PRIORITY_HIGH_ACCURACY)
+                    .setInterval(Constants.UPDATE_INTERVAL)
+                    .setFastestInterval(Constants.FASTEST_UPDATE_INTERVAL)
+                    .setSmallestDisplacement(Constants.UPDATE_DISTANCE);
+        }
+        LocationServices.FusedLocationApi.requestLocationUpdates(
+                mGoogleApiClient, mLocationRequest, mLocationListener);
     }
 
     @Override
@@ -200,74 +298,141 @@ public class GpsLocationService extends Service
     }
 
     /**
-     * Determines if two locations are the "same".
-     *
-     * @param one      the first location to test.
-     * @param two      the second location to test
-     * @param accuracy the level of accuracy (decimal places) to test.
-     * @return true if the locations are the same, false otherwise.
+     * Continues recording a stay saved earlier, so fixes at the same place extend its pin. A
+     * stay unseen for longer than {@link Constants#STAY_RESUME_GAP} is left ended, so that a
+     * return to the same place after a long absence becomes a new stay.
      */
-    public boolean areSameLocation(Location one, Location two, int accuracy) {
-        double lat1 = one.getLatitude();
-        double lat2 = two.getLatitude();
-        double long1 = one.getLongitude();
-        double long2 = two.getLongitude();
-
-        Log.d(TAG, "Checking sameness between (" + roundValue(lat1, accuracy) + ", " +
-                roundValue(long1, accuracy) + ") and (" + roundValue(lat2, accuracy) + ", " +
-                roundValue(long2, accuracy) + ")");
-
-        return roundValue(lat1, accuracy) == roundValue(lat2, accuracy) &&
-                roundValue(long1, accuracy) == roundValue(long2, accuracy);
+    private void resumeStay(GeospatialPin pin) {
+        long arrivalMillis = pin.getArrivalTime().getTime();
+        long lastSeenMillis = arrivalMillis + pin.getDuration();
+        if (System.currentTimeMillis() - lastSeenMillis > Constants.STAY_RESUME_GAP) {
+            return;
+        }
+        stayDetector.resume(arrivalMillis, lastSeenMillis,
+                pin.getLatitudeE7(), pin.getLongitudeE7());
     }
 
     /**
-     * Handles documenting a new location when the service finds one.
+     * @return a pin at the centroid of the stay being recorded.
      */
-    public class ViLocationListener implements LocationListener {
-        @Override
-        public void onLocationChanged(Location location) {
-            Log.d(TAG, location.toString());
+    private GeospatialPin createStayPin() {
+        GeospatialPin pin = createPin(stayDetector.getArrivalMillis(), stayDetector.getDuration(),
+                stayDetector.getLatitudeE7(), stayDetector.getLongitudeE7());
+        pin.getLocation().setAccuracy(locationFilter.getAccuracy());
+        return pin;
+    }
 
-            // Create pin from location and retrieve the most recent previously recorded pin.
-            GeospatialPin newPin = new GeospatialPin(location);
-            if (mostRecentPin == null) {
-                mostRecentPin = dbAdapter.getMostRecentEntry();
-            }
+    private static GeospatialPin createPin(long arrivalMillis, long duration, int latitudeE7,
+                                           int longitudeE7) {
+        Location location = new Location("");
+        location.setLatitude(FixedPoint.toDegrees(latitudeE7));
+        location.setLongitude(FixedPoint.toDegrees(longitudeE7));
+        return new GeospatialPin(location, new Date(arrivalMillis), duration);
+    }
 
-            if (mostRecentPin != null) {
-                Location newLocation = newPin.getLocation();
-                Location recentLocation = mostRecentPin.getLocation();
+    /**
+     * Records a new pin in the pin store.
+     */
+    private void appendPin(GeospatialPin pin) {
+        pinStore.append(pin.getArrivalTime().getTime(), pin.getDuration(),
+                pin.getLatitudeE7(), pin.getLongitudeE7(), pin.getLocation().getAccuracy());
+    }
 
-                // Compare latitudes and longitudes to see if they're approximately the same location
-                int accuracy = 5;
-                if (areSameLocation(newLocation, recentLocation, accuracy) ||
-                        distanceBetweenLocations(newLocation, recentLocation)
-                                < Constants.UPDATE_DISTANCE) {
-                    Log.d(TAG, "Locations are geographically similar");
+    /**
+     * Writes the current values of a recorded pin to the pin store.
+     */
+    private void updatePin(GeospatialPin pin) {
+        pinStore.update(pin.getArrivalTime().getTime(), pin.getDuration(),
+                pin.getLatitudeE7(), pin.getLongitudeE7(), pin.getLocation().getAccuracy());
+    }
 
-                    long duration = (new Date()).getTime()
-                            - mostRecentPin.getArrivalTime().getTime();
-                    mostRecentPin.setDuration(duration);
+    /**
+     * Ingests every queued fix, on the ingestion thread. A run is scheduled whenever a fix is
+     * queued while none is pending, so no fix is left waiting.
+     */
+    private void ingestQueuedFixes() {
+        ingestionScheduled.set(false);
+        while (mFixQueue.poll(ingestedFix)) {
+            ingestFix(ingestedFix);
+        }
+
+        long drops = mFixQueue.getDroppedCount();
+        if (drops != reportedDrops) {
+            Log.w(TAG, (drops - reportedDrops) + " locations dropped by a full queue");
+            reportedDrops = drops;
+        }
+    }
 
+    /**
+     * Documents a new location, on the ingestion thread. Fixes are smoothed and screened for
+     * outliers by a {@link LocationFilter}, then grouped into stays by a
+     * {@link StayPointDetector}, and each stay is recorded as a single pin at its centroid.
+     * The current stay is kept in memory; while it lasts, its pin is written and checkpointed
+     * once per {@link Constants#CHECKPOINT_INTERVAL} rather than on every fix.
+     */
+    private void ingestFix(FixQueue.Fix fix) {
+        Log.d(TAG, "Location (" + fix.latitude + ", " + fix.longitude + ") +/- " +
+                fix.accuracy + " m");
+
+        if (!locationFilter.addFix(fix.timeMillis, fix.latitude, fix.longitude, fix.accuracy)) {
+            Log.d(TAG, "Location rejected as implausible");
+            return;
+        }
+        int result = stayDetector.addFix(fix.timeMillis,
+                locationFilter.getLatitudeE7(), locationFilter.getLongitudeE7());
+
+        switch (result) {
+            case StayPointDetector.STAY_STARTED:
+                mostRecentPin = createStayPin();
+                appendPin(mostRecentPin);
+                stayCheckpoint.save(mostRecentPin, stayDetector.getLastSeenMillis(), true);
+
+                //Broadcast a change was made
+                Log.d(TAG, "New location recorded");
+                sendBroadcast(Constants.BROADCAST_NEW_LOCATION);
+                break;
+
+            case StayPointDetector.STAY_EXTENDED:
+                mostRecentPin.getLocation().setLatitude(
+                        FixedPoint.toDegrees(stayDetector.getLatitudeE7()));
+                mostRecentPin.getLocation().setLongitude(
+                        FixedPoint.toDegrees(stayDetector.getLongitudeE7()));
+                mostRecentPin.getLocation().setAccuracy(locationFilter.getAccuracy());
+                mostRecentPin.setDuration(stayDetector.getDuration());
+                if (stayCheckpoint.isDue(stayDetector.getLastSeenMillis())) {
+                    updatePin(mostRecentPin);
+                    stayCheckpoint.save(mostRecentPin, stayDetector.getLastSeenMillis(), true);
                     sendBroadcast(Constants.BROADCAST_UPDATED_LOCATION);
-                    return;
                 }
+                break;
+
+            case StayPointDetector.STAY_ENDED:
+                // The pin already holds the stay as it was last seen.
+                Log.d(TAG, "Left location after " + stayDetector.getDuration() +
+                        " ms, extent " + Math.round(stayDetector.getExtent()) + " m");
+                updatePin(mostRecentPin);
+                stayCheckpoint.save(mostRecentPin, stayDetector.getLastSeenMillis(), false);
+                sendBroadcast(Constants.BROADCAST_UPDATED_LOCATION);
+                break;
+
+            default:
+                break;
+        }
+    }
 
-                //TODO(clidwin): decrease database calls made by these actions.
-                // Even if the location doesn't match, we want to update the duration
-                // of the last known location.
-                long duration = (new Date()).getTime() - mostRecentPin.getArrivalTime().getTime();
-                mostRecentPin.setDuration(duration);
-                dbAdapter.updateEntry(mostRecentPin);
+    /**
+     * Handles a new location when the service finds one, on the main thread. The fix is only
+     * queued for the ingestion thread, so the main thread never waits on the database.
+     */
+    public class ViLocationListener implements LocationListener {
+        @Override
+        public void onLocationChanged(Location location) {
+            long fixMillis =
+                    location.getTime() > 0 ? location.getTime() : System.currentTimeMillis();
+            if (mFixQueue.offer(fixMillis, location.getLatitude(), location.getLongitude(),
+                    location.getAccuracy()) && ingestionScheduled.compareAndSet(false, true)) {
+                mIngestionHandler.post(ingestionRunnable);
             }
-
-            dbAdapter.addNewEntry(newPin);
-            mostRecentPin = newPin;
-
-            //Broadcast a change was made
-            Log.d(TAG, "New location recorded");
-            sendBroadcast(Constants.BROADCAST_NEW_LOCATION);
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,99 @@
+package com.clidwin.android.visualimprints.services;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.location.Location;
+
+import com.clidwin.android.visualimprints.Constants;
+import com.clidwin.android.visualimprints.location.FixedPoint;
+import com.clidwin.android.visualimprints.location.GeospatialPin;
+
+import java.util.Date;
+
+/**
+ * Checkpoints the stay the location service is recording, i.e. its most recent pin and when
+ * the pin was last seen, so that a restarted service picks the stay up without querying the
+ * database. A checkpoint is a handful of numbers written to private preferences in the
+ * background, made at most once per {@link Constants#CHECKPOINT_INTERVAL} while the stay lasts,
+ * so a killed service loses at most that much dwell time. A checkpoint also records whether
+ * the stay was still going on, so that a stay that already ended is not continued.
+ *
+ * @author Christina Lidwin (clidwin)
+ * @version October 15, 2026
+ */
+class StayCheckpoint {
+    private static final String PREFERENCES_NAME = "vi-stay-checkpoint";
+
+    private static final String KEY_ID = "id";
+    private static final String KEY_ARRIVAL_MILLIS = "arrivalMillis";
+    private static final String KEY_LAST_SEEN_MILLIS = "lastSeenMillis";
+    private static final String KEY_LATITUDE_E7 = "latitudeE7";
+    private static final String KEY_LONGITUDE_E7 = "longitudeE7";
+    private static final String KEY_OPEN = "open";
+
+    private final SharedPreferences preferences;
+    private long lastSavedMillis;
+    private boolean open;
+
+    StayCheckpoint(Context context) {
+        preferences = context.getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * @return the pin of the last checkpointed stay, with its duration up to when it was last
+     *      seen, or null if no stay was checkpointed.
+     */
+    GeospatialPin restore() {
+        if (!preferences.contains(KEY_ARRIVAL_MILLIS)) {
+            return null;
+        }
+
+        long arrivalMillis = preferences.getLong(KEY_ARRIVAL_MILLIS, 0);
+        long lastSeenMillis = preferences.getLong(KEY_LAST_SEEN_MILLIS, arrivalMillis);
+        Location location = new Location("");
+        location.setLatitude(FixedPoint.toDegrees(preferences.getInt(KEY_LATITUDE_E7, 0)));
+        location.setLongitude(FixedPoint.toDegrees(preferences.getInt(KEY_LONGITUDE_E7, 0)));
+
+        GeospatialPin pin = new GeospatialPin(location, new Date(arrivalMillis),
+                Math.max(0, lastSeenMillis - arrivalMillis));
+        pin.setId(preferences.getLong(KEY_ID, -1));
+        lastSavedMillis = lastSeenMillis;
+        open = preferences.getBoolean(KEY_OPEN, true);
+        return pin;
+    }
+
+    /**
+     * @return true if the last checkpointed stay was still going on when it was saved.
+     */
+    boolean isOpen() {
+        return open;
+    }
+
+    /**
+     * @param nowMillis The current time.
+     * @return true if the current stay has gone unsaved for a whole checkpoint interval.
+     */
+    boolean isDue(long nowMillis) {
+        return nowMillis - lastSavedMillis >= Constants.CHECKPOINT_INTERVAL;
+    }
+
+    /**
+     * Saves a stay in the background.
+     *
+     * @param pin The pin of the stay.
+     * @param lastSeenMillis The last time the stay's location was seen.
+     * @param open Whether the stay is still going on, rather than ended.
+     */
+    void save(GeospatialPin pin, long lastSeenMillis, boolean open) {
+        preferences.edit()
+                .putLong(KEY_ID, pin.getId())
+                .putLong(KEY_ARRIVAL_MILLIS, pin.getArrivalTime().getTime())
+                .putLong(KEY_LAST_SEEN_MILLIS, lastSeenMillis)
+                .putInt(KEY_LATITUDE_E7, pin.getLatitudeE7())
+                .putInt(KEY_LONGITUDE_E7, pin.getLongitudeE7())
+                .putBoolean(KEY_OPEN, open)
+                .apply();
+        lastSavedMillis = lastSeenMillis;
+        this.open = open;
+    }
+}
@@ -0,0 +1,111 @@
+package com.clidwin.android.visualimprints.services;
+
+import android.hardware.Sensor;
+import android.hardware.SensorEvent;
+import android.hardware.SensorEventListener;
+
+import com.clidwin.android.visualimprints.Constants;
+
+/**
+ * Decides from accelerometer events whether the device is sitting still, using the variance of
+ * the acceleration magnitude over a sliding window of samples. A still device reads gravity
+ * plus sensor noise, so the variance stays tiny; carrying it, let alone travelling with it,
+ * raises it by orders of magnitude.
+ * <p/>
+ * The classification has hysteresis: the device only counts as still once the variance has
+ * stayed below {@link Constants#STILL_VARIANCE} for {@link Constants#STILL_DELAY}, and as moving
+ * again once it rises above the higher {@link Constants#MOVING_VARIANCE}. The listener is only
+ * told about these transitions. The window is a fixed ring of samples with running sums, so
+ * events are handled without allocating.
+ *
+ * @author Christina Lidwin (clidwin)
+ * @version October 15, 2026
+ */
+class StillnessClassifier implements SensorEventListener {
+
+    /**
+     * Receives changes between moving and sitting still.
+     */
+    interface MotionListener {
+        void onMotionChanged(boolean still);
+    }
+
+    private static final long NANOS_PER_MILLI = 1000000;
+
+    private final MotionListener listener;
+    private final double[] window = new double[Constants.STILL_WINDOW_SIZE];
+    private int samples;
+    private int next;
+    private double sum;
+    private double sumOfSquares;
+
+    private boolean still;
+    private long quietSinceNanos = -1;
+
+    /**
+     * @param listener Receives changes between moving and sitting still.
+     */
+    StillnessClassifier(MotionListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * @return true if the device is sitting still, else false. Devices count as moving until
+     *      shown otherwise.
+     */
+    boolean isStill() {
+        return still;
+    }
+
+    @Override
+    public void onSensorChanged(SensorEvent event) {
+        float x = event.values[0];
+        float y = event.values[1];
+        float z = event.values[2];
+        double magnitude = Math.sqrt(x * x + y * y + z * z);
+
+        // Slide the window, keeping the sums needed for its variance.
+        if (samples == window.length) {
+            sum -= window[next];
+            sumOfSquares -= window[next] * window[next];
+        } else {
+            samples++;
+        }
+        window[next] = magnitude;
+        sum += magnitude;
+        sumOfSquares += magnitude * magnitude;
+        next = (next + 1) % window.length;
+        if (samples < window.length) {
+            return;
+        }
+
+        double mean = sum / samples;
+        double variance = Math.max(0, sumOfSquares / samples - mean * mean);
+
+        if (variance > Constants.MOVING_VARIANCE) {
+            quietSinceNanos = -1;
+            setStill(false);
+        } else if (variance < Constants.STILL_VARIANCE) {
+            if (quietSinceNanos == -1) {
+                quietSinceNanos = event.timestamp;
+            } else if (event.timestamp - quietSinceNanos >=
+                    Constants.STILL_DELAY * NANOS_PER_MILLI) {
+                setStill(true);
+            }
+        } else {
+            // Between the thresholds the current state holds, but stillness has to start over.
+            quietSinceNanos = -1;
+        }
+    }
+
+    @Override
+    public void onAccuracyChanged(Sensor sensor, int accuracy) {
+    }
+
+    private void setStill(boolean still) {
+        if (this.still != still) {
+            this.still = still;
+            listener.onMotionChanged(still);
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package com.clidwin.android.visualimprints.storage;
+
+/**
+ * Receives the time range covered by recorded pins, read on a background thread.
+ *
+ * @author Christina Lidwin (clidwin)
+ * @version October 15, 2026
+ */
+public interface CoveredRangeLoadCallback {
+    /**
+     * Called on the main thread once the range has been read.
+     *
+     * @param range The first and last arrival time in milliseconds, or null if there are no
+     *      pins.
+     */
+    void onCoveredRangeLoaded(long[] range);
+}
@@ -1,103 +1,315 @@
 package com.clidwin.android.visualimprints.storage;
 
-import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
 import android.database.SQLException;
 import android.database.sqlite.SQLiteDatabase;
-import android.location.Location;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Process;
 import android.util.Log;
 
 import com.clidwin.android.visualimprints.Constants;
+import com.clidwin.android.visualimprints.location.FixedPoint;
+import com.clidwin.android.visualimprints.location.Geohash;
 import com.clidwin.android.visualimprints.location.GeospatialPin;
+import com.clidwin.android.visualimprints.location.PinColumns;
 
+import java.io.File;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Locale;
-import java.util.concurrent.TimeUnit;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
- * Facilitates communication between the application and its database.
+ * Facilitates communication between the application and its database. Besides the core
+ * {@link PinStore} operations, it provides day summaries, rollups and spatial queries.
  *
  * @author Christina Lidwin (clidwin)
  * @version July 09, 2015
  */
-public class DatabaseAdapter {
+public class DatabaseAdapter implements PinStore {
     private static final String TAG = "vi-database-adapter";
 
+    private static final String ARRIVAL_DESCENDING =
+            DatabaseHelper.Keys.COLUMN_NAME_ARRIVAL_MILLIS + " DESC";
+    private static final String ARRIVAL_RANGE_SELECTION =
+            DatabaseHelper.Keys.COLUMN_NAME_ARRIVAL_MILLIS + " BETWEEN ? AND ?";
+    private static final String SEGMENT_RANGE_SELECTION =
+            DatabaseHelper.SegmentKeys.COLUMN_NAME_LAST_MILLIS + ">=? AND " +
+            DatabaseHelper.SegmentKeys.COLUMN_NAME_FIRST_MILLIS + "<=?";
+    private static final PinColumns NO_SEALED_PINS = new PinColumns(0);
+
     private SQLiteDatabase database;
     private DatabaseHelper dbHelper;
+    private boolean hasSpatialIndex;
+    private PinWriter writer;
+    private SegmentArchiver archiver;
+    private MonthPartitions partitions;
+
+    private final File databaseDirectory;
+    private final PinJournal journal;
+    private final PinDayCache dayCache;
+    private final Handler writeHandler;
+    private final Handler mainHandler;
+    private final ExecutorService readExecutor;
+    private final Runnable flushRunnable;
+    private final Runnable archiveRunnable;
+    private final Object writeLock = new Object();
+    private boolean flushScheduled;
 
+    // Shared by the reader threads, so it is only used through formatDay and parseDay.
     private final SimpleDateFormat DateFormatter =
             new SimpleDateFormat(Constants.DATABASE_DATE_FORMAT, Locale.getDefault());
 
     public DatabaseAdapter(Context context) {
         this.dbHelper = new DatabaseHelper(context);
+        this.databaseDirectory =
+                context.getDatabasePath(DatabaseHelper.DATABASE_NAME).getParentFile();
+        this.journal = new PinJournal();
+        this.dayCache = new PinDayCache(Constants.PIN_CACHE_SIZE);
+
+        // All database writes happen on this thread, so they never block the UI.
+        HandlerThread writerThread =
+                new HandlerThread("vi-database-writer", Process.THREAD_PRIORITY_BACKGROUND);
+        writerThread.start();
+        this.writeHandler = new Handler(writerThread.getLooper());
+        this.mainHandler = new Handler(Looper.getMainLooper());
+        this.readExecutor = Executors.newFixedThreadPool(Constants.DATABASE_READER_THREADS);
+
+        this.flushRunnable = new Runnable() {
+            @Override
+            public void run() {
+                synchronized (DatabaseAdapter.this) {
+                    flushScheduled = false;
+                }
+                flushPendingWrites();
+            }
+        };
+        this.archiveRunnable = new Runnable() {
+            @Override
+            public void run() {
+                archiveOldDays();
+                writeHandler.postDelayed(this, Constants.ARCHIVE_INTERVAL);
+            }
+        };
     }
 
     /**
-     * Opens the database for writing.
+     * Opens the database for writing. The database uses write-ahead logging, so reads run on
+     * their own connections and are not blocked by the writer thread.
      *
      * @throws SQLException
      */
     public void open() throws SQLException {
         database = dbHelper.getWritableDatabase();
+        hasSpatialIndex = DatabaseHelper.hasSpatialIndex(database);
+        writer = new PinWriter(database, hasSpatialIndex);
+        partitions = new MonthPartitions(database, databaseDirectory);
+        archiver = new SegmentArchiver(database, writer, partitions);
+
+        writeHandler.removeCallbacks(archiveRunnable);
+        writeHandler.post(archiveRunnable);
     }
 
     /**
-     * Closes the database for writing.
+     * Closes the database for writing, writing out any buffered changes first.
      */
+    @Override
     public void close() {
+        writeHandler.removeCallbacks(archiveRunnable);
+        flushPendingWrites();
+        if (writer != null) {
+            writer.close();
+            writer = null;
+            archiver = null;
+            partitions.close();
+            partitions = null;
+        }
         dbHelper.close();
     }
 
     /**
-     * Creates a new row in the database with information about a new pin.
+     * Creates a new row in the database with information about a new pin. The row is buffered
+     * and written together with other pending changes; reads see it immediately.
      *
      * @param pin {@link GeospatialPin} location-based data to be included in the new table row.
      */
     public void addNewEntry(GeospatialPin pin) {
-        ContentValues values = generateContentValues(pin);
-
-        // Write the entry into the database
-        database.insert(
-                DatabaseHelper.Keys.TABLE_NAME,
-                DatabaseHelper.Keys.COLUMN_NAME_NULLABLE,
-                values);
+        journal.addInsert(pin);
+        dayCache.invalidate(getStartOfDay(pin.getArrivalTime().getTime()));
+        scheduleFlush();
         Log.d(TAG, "New entry added.");
     }
 
     /**
-     * Constructs database-ready versions of the information to be added.
+     * Writes a batch of new pins in a single transaction, bypassing the write-behind journal.
+     * Any buffered writes are flushed first so rows keep their arrival order.
      *
-     * @param pin The location information to be encoded.
-     * @return A database-ready version of location information.
+     * @param pins The pins to insert.
      */
-    private ContentValues generateContentValues(GeospatialPin pin) {
-        SimpleDateFormat timeFormat =
-                new SimpleDateFormat(Constants.DATABASE_TIME_FORMAT, Locale.getDefault());
+    public void addNewEntries(final PinColumns pins) {
+        writeHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (writeLock) {
+                    flushPendingWrites();
 
-        ContentValues values = new ContentValues();
-        values.put(DatabaseHelper.Keys._ID, pin.getArrivalTime().hashCode());
-        values.put(DatabaseHelper.Keys.COLUMN_NAME_ADDRESS, "");
-        values.put(
-                DatabaseHelper.Keys.COLUMN_NAME_ARRIVAL_DATE,
-                DateFormatter.format(pin.getArrivalTime()));
-        values.put(
-                DatabaseHelper.Keys.COLUMN_NAME_ARRIVAL_TIME,
-                timeFormat.format(pin.getArrivalTime()));
-        values.put(DatabaseHelper.Keys.COLUMN_NAME_DURATION, pin.getDuration());
-        values.put(
-                DatabaseHelper.Keys.COLUMN_NAME_LOCATION_LAT,
-                String.valueOf(roundValue(pin.getLocation().getLatitude())));
-        values.put(
-                DatabaseHelper.Keys.COLUMN_NAME_LOCATION_LONG,
-                String.valueOf(roundValue(pin.getLocation().getLongitude())));
+                    int written;
+                    database.beginTransaction();
+                    try {
+                        if (pins.size() > 0) {
+                            // Imported pins may land on sealed days, and must not duplicate
+                            // the pins sealed there.
+                            long first = pins.getArrivalMillis(0);
+                            long last = first;
+                            for (int i = 1; i < pins.size(); i++) {
+                                first = Math.min(first, pins.getArrivalMillis(i));
+                                last = Math.max(last, pins.getArrivalMillis(i));
+                            }
+                            archiver.unsealOverlapping(first, last);
+                        }
+                        written = writer.insertAll(pins);
+                        database.setTransactionSuccessful();
+                    } finally {
+                        database.endTransaction();
+                    }
+                    dayCache.invalidateAll();
+                    Log.d(TAG, written + " new entries added.");
+                }
+            }
+        });
+    }
+
+    /**
+     * Writes all buffered inserts and updates to the database in a single transaction. Runs on
+     * the calling thread; regular flushes are done on the writer thread.
+     */
+    public void flushPendingWrites() {
+        // Draining and writing happen under one lock so that an update can never be written
+        // before the insert it belongs to.
+        synchronized (writeLock) {
+            if (database == null || journal.size() == 0) {
+                return;
+            }
+
+            ArrayList<GeospatialPin> inserts = journal.drainInserts();
+            ArrayList<GeospatialPin> updates = journal.drainUpdates();
+
+            database.beginTransaction();
+            try {
+                if (!inserts.isEmpty()) {
+                    long first = inserts.get(0).getArrivalTime().getTime();
+                    long last = first;
+                    for (GeospatialPin pin : inserts) {
+                        first = Math.min(first, pin.getArrivalTime().getTime());
+                        last = Math.max(last, pin.getArrivalTime().getTime());
+                    }
+                    archiver.unsealOverlapping(first, last);
+                }
+                for (GeospatialPin pin : inserts) {
+                    writer.insert(pin);
+                }
+                for (GeospatialPin pin : updates) {
+                    // A pin missing from the pins table may be sealed; bring its day back.
+                    if (!writer.update(pin) &&
+                            archiver.unsealDayOf(pin.getArrivalTime().getTime())) {
+                        writer.update(pin);
+                    }
+                }
+                database.setTransactionSuccessful();
+            } finally {
+                database.endTransaction();
+            }
+            Log.d(TAG, "Flushed " + inserts.size() + " new and " + updates.size() +
+                    " updated entries.");
+        }
+    }
+
+    /**
+     * Seals every day older than {@link Constants#ARCHIVE_AGE} into a compressed segment, and
+     * moves every month older than {@link Constants#PARTITION_AGE} into its own file. Runs on
+     * the calling thread; regular passes are made on the writer thread.
+     */
+    public void archiveOldDays() {
+        synchronized (writeLock) {
+            if (archiver == null) {
+                return;
+            }
+            long now = System.currentTimeMillis();
+            archiver.sealDaysBefore(now - Constants.ARCHIVE_AGE);
+            partitions.partitionMonthsBefore(now - Constants.PARTITION_AGE);
+        }
+    }
+
+    /**
+     * Moves the sealed days of a month into the month's own file, whatever its age. Runs on
+     * the calling thread.
+     *
+     * @param month Any time within the month.
+     * @return true if any days were moved, else false.
+     */
+    public boolean partitionMonth(Calendar month) {
+        synchronized (writeLock) {
+            if (partitions == null) {
+                return false;
+            }
+            return partitions.partitionMonth(partitions.getMonthOf(month.getTimeInMillis()));
+        }
+    }
+
+    /**
+     * Drops a partitioned month from the history and hands back its file, e.g. to be copied
+     * elsewhere or deleted. Only the days moved into the file are detached; days of the month
+     * still in the main database stay. Runs on the calling thread.
+     *
+     * @param month Any time within the month.
+     * @return the month's file, or null if the month is not partitioned.
+     */
+    public File detachMonth(Calendar month) {
+        synchronized (writeLock) {
+            if (partitions == null) {
+                return null;
+            }
+            // Buffered updates to the month's pins would unseal it, so they are written first.
+            flushPendingWrites();
+            File file = partitions.detachMonth(partitions.getMonthOf(month.getTimeInMillis()));
+            dayCache.invalidateAll();
+            return file;
+        }
+    }
+
+    /**
+     * Flushes the journal once it holds enough writes, otherwise makes sure a timed flush
+     * is pending so buffered writes never wait longer than the flush interval.
+     */
+    private synchronized void scheduleFlush() {
+        if (journal.size() >= Constants.JOURNAL_FLUSH_SIZE) {
+            postFlush();
+        } else if (!flushScheduled) {
+            flushScheduled = true;
+            writeHandler.postDelayed(flushRunnable, Constants.JOURNAL_FLUSH_INTERVAL);
+        }
+    }
 
-        return values;
+    /**
+     * Flushes the journal on the writer thread as soon as possible.
+     */
+    private synchronized void postFlush() {
+        writeHandler.removeCallbacks(flushRunnable);
+        flushScheduled = true;
+        writeHandler.post(flushRunnable);
     }
 
     /**
@@ -105,59 +317,221 @@ public class DatabaseAdapter {
      *      {@link com.clidwin.android.visualimprints.location.GeospatialPin} object
      */
     public GeospatialPin getMostRecentEntry() {
-        String sortOrder = DatabaseHelper.Keys.COLUMN_NAME_ARRIVAL_DATE + " DESC, " +
-                DatabaseHelper.Keys.COLUMN_NAME_ARRIVAL_TIME + " DESC";
+        GeospatialPin pendingPin = journal.getMostRecentInsert();
+        if (pendingPin != null) {
+            return pendingPin;
+        }
+
+        String sortOrder = DatabaseHelper.Keys.COLUMN_NAME_ARRIVAL_MILLIS + " DESC";
+
+        PinCollector collector = new PinCollector();
+        scanPins(null, null, sortOrder, "1", collector);
+        if (!collector.pins.isEmpty()) {
+            return collector.pins.get(0);
+        }
+
+        // Every remaining pin may have been sealed.
+        PinColumns sealed = loadSealedPins(null, null, Long.MIN_VALUE, Long.MAX_VALUE, "1", null);
+        return sealed.size() == 0 ? null : getSealedPin(sealed, 0);
+    }
+
+    @Override
+    public boolean loadMostRecentPin(PinColumns pins) {
+        GeospatialPin pin = getMostRecentEntry();
+        if (pin == null) {
+            return false;
+        }
+        addPin(pins, pin);
+        return true;
+    }
+
+    /**
+     * @return every day with recorded pins, newest first, in
+     *      {@link com.clidwin.android.visualimprints.Constants#DATABASE_DATE_FORMAT}
+     */
+    public ArrayList<String> getAllEntryDates() {
+        ArrayList<DaySummary> summaries = getDaySummaries();
+        ArrayList<String> recordedDates = new ArrayList<>(summaries.size());
+        for (DaySummary summary : summaries) {
+            recordedDates.add(summary.getDay());
+        }
+        return recordedDates;
+    }
+
+    /**
+     * Reads the day summary table, which holds one row per day instead of scanning every pin.
+     * Buffered pins that have not been flushed yet are counted as well.
+     *
+     * @return a summary of every day with recorded pins, newest first.
+     */
+    public ArrayList<DaySummary> getDaySummaries() {
+        String selection = DatabaseHelper.DaysKeys.COLUMN_NAME_PIN_COUNT + ">0";
+        String sortOrder = DatabaseHelper.DaysKeys.COLUMN_NAME_DAY + " DESC";
 
         Cursor c = database.query(
-                DatabaseHelper.Keys.TABLE_NAME,         // The table to query
-                DatabaseHelper.Keys.getAllColumns(),    // The columns to return
-                null,                                   // The columns for the WHERE clause
-                null,                                   // The values for the WHERE clause
+                DatabaseHelper.DaysKeys.TABLE_NAME,     // The table to query
+                null,                                   // The columns to return
+                selection,                              // The WHERE clause
+                null,                                   // The arguments for the WHERE clause
                 null,                                   // Row groupings
                 null,                                   // Row group filters
                 sortOrder                               // Sort order
         );
 
-        if (c.moveToFirst()) {
-            GeospatialPin pin = constructGeospatialPin(c);
+        ArrayList<DaySummary> summaries = new ArrayList<>(c.getCount());
+        try {
+            int dayIndex = c.getColumnIndexOrThrow(DatabaseHelper.DaysKeys.COLUMN_NAME_DAY);
+            int countIndex = c.getColumnIndexOrThrow(
+                    DatabaseHelper.DaysKeys.COLUMN_NAME_PIN_COUNT);
+            int firstIndex = c.getColumnIndexOrThrow(
+                    DatabaseHelper.DaysKeys.COLUMN_NAME_FIRST_MILLIS);
+            int lastIndex = c.getColumnIndexOrThrow(
+                    DatabaseHelper.DaysKeys.COLUMN_NAME_LAST_MILLIS);
+            int dwellIndex = c.getColumnIndexOrThrow(
+                    DatabaseHelper.DaysKeys.COLUMN_NAME_DWELL_MILLIS);
+            int minLatIndex = c.getColumnIndexOrThrow(DatabaseHelper.DaysKeys.COLUMN_NAME_MIN_LAT_E7);
+            int maxLatIndex = c.getColumnIndexOrThrow(DatabaseHelper.DaysKeys.COLUMN_NAME_MAX_LAT_E7);
+            int minLongIndex = c.getColumnIndexOrThrow(
+                    DatabaseHelper.DaysKeys.COLUMN_NAME_MIN_LONG_E7);
+            int maxLongIndex = c.getColumnIndexOrThrow(
+                    DatabaseHelper.DaysKeys.COLUMN_NAME_MAX_LONG_E7);
+            while (c.moveToNext()) {
+                summaries.add(new DaySummary(
+                        c.getString(dayIndex),
+                        c.getInt(countIndex),
+                        c.getLong(firstIndex),
+                        c.getLong(lastIndex),
+                        c.getLong(dwellIndex),
+                        c.getInt(minLatIndex),
+                        c.getInt(maxLatIndex),
+                        c.getInt(minLongIndex),
+                        c.getInt(maxLongIndex)));
+            }
+        } finally {
             c.close();
-            return pin;
         }
-        c.close();
-        return null;
+
+        // Buffered pins are newer than anything in the database, so new days go to the front.
+        int newDays = 0;
+        ArrayList<GeospatialPin> pendingPins =
+                journal.getInsertsInRange(Long.MIN_VALUE, Long.MAX_VALUE);
+        for (int i = pendingPins.size() - 1; i >= 0; i--) {
+            GeospatialPin pin = pendingPins.get(i);
+            long arrivalMillis = pin.getArrivalTime().getTime();
+            int latitude = pin.getLatitudeE7();
+            int longitude = pin.getLongitudeE7();
+            String arrivalDate = formatDay(pin.getArrivalTime());
+
+            DaySummary summary = null;
+            for (int j = 0; j < summaries.size() && summary == null; j++) {
+                if (summaries.get(j).getDay().equals(arrivalDate)) {
+                    summary = summaries.get(j);
+                }
+            }
+            if (summary == null) {
+                summaries.add(newDays++, new DaySummary(arrivalDate, 1, arrivalMillis,
+                        arrivalMillis, pin.getDuration(), latitude, latitude, longitude, longitude));
+            } else {
+                summary.include(arrivalMillis, pin.getDuration(), latitude, longitude);
+            }
+        }
+        return summaries;
     }
 
     /**
-     * @return all entries in the database as a list of
-     *      {@link com.clidwin.android.visualimprints.location.GeospatialPin} objects
+     * Reads the arrival times of the oldest and newest recorded pins from the day summaries.
+     *
+     * @return the first and last arrival time in milliseconds, or null if there are no pins.
      */
-    public ArrayList<String> getAllEntryDates() {
-        String sortOrder = DatabaseHelper.Keys.COLUMN_NAME_ARRIVAL_DATE + " DESC";
+    public long[] getCoveredRange() {
+        Cursor c = database.rawQuery("SELECT MIN(" +
+                DatabaseHelper.DaysKeys.COLUMN_NAME_FIRST_MILLIS + "), MAX(" +
+                DatabaseHelper.DaysKeys.COLUMN_NAME_LAST_MILLIS + ") FROM " +
+                DatabaseHelper.DaysKeys.TABLE_NAME +
+                " WHERE " + DatabaseHelper.DaysKeys.COLUMN_NAME_PIN_COUNT + ">0", null);
 
-        String [] returnColumns = {DatabaseHelper.Keys.COLUMN_NAME_ARRIVAL_DATE};
+        long[] range = null;
+        try {
+            if (c.moveToFirst() && !c.isNull(0)) {
+                range = new long[] {c.getLong(0), c.getLong(1)};
+            }
+        } finally {
+            c.close();
+        }
 
-        Cursor c = database.query(
-                true,                                   // Whether a value needs to be distinct
-                DatabaseHelper.Keys.TABLE_NAME,         // The table to query
-                returnColumns,                          // The columns to return
-                null,                                   // The columns for the WHERE clause
-                null,                                   // The values for the WHERE clause
-                DatabaseHelper.Keys.COLUMN_NAME_ARRIVAL_DATE,   // The column to be distinct
-                null,                                   // Row groupings
-                sortOrder,                                   // Sort order
-                null                                    // Limit
-        );
+        for (GeospatialPin pin : journal.getInsertsInRange(Long.MIN_VALUE, Long.MAX_VALUE)) {
+            long arrivalMillis = pin.getArrivalTime().getTime();
+            if (range == null) {
+                range = new long[] {arrivalMillis, arrivalMillis};
+            } else {
+                range[0] = Math.min(range[0], arrivalMillis);
+                range[1] = Math.max(range[1], arrivalMillis);
+            }
+        }
+        return range;
+    }
 
-        ArrayList<String> recordedDates = new ArrayList<>();
-        if (c.moveToFirst()) {
-            do {
-                String arrivalDate = c.getString(
-                        c.getColumnIndexOrThrow(DatabaseHelper.Keys.COLUMN_NAME_ARRIVAL_DATE));
-                recordedDates.add(arrivalDate);
-            } while (c.moveToNext());
+    /**
+     * Reads the day summaries on a background reader thread.
+     *
+     * @param callback Receives the summaries on the main thread.
+     */
+    public void loadDaySummariesAsync(final DaySummaryLoadCallback callback) {
+        readExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final ArrayList<DaySummary> summaries = getDaySummaries();
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.onDaySummariesLoaded(summaries);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Reads the time range covered by recorded pins on a background reader thread.
+     *
+     * @param callback Receives the range on the main thread.
+     */
+    public void loadCoveredRangeAsync(final CoveredRangeLoadCallback callback) {
+        readExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final long[] range = getCoveredRange();
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.onCoveredRangeLoaded(range);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Estimates how many pins arrived within a time range from the day summaries, without
+     * touching the pins table. Days that only partly overlap the range are counted in full, so
+     * the result is an upper bound suitable for sizing buffers.
+     *
+     * @param fromMillis The start of the range (inclusive).
+     * @param toMillis The end of the range (inclusive).
+     * @return the number of stored pins on days overlapping the range.
+     */
+    public int countPinsInRange(long fromMillis, long toMillis) {
+        Cursor c = database.rawQuery("SELECT IFNULL(SUM(" +
+                DatabaseHelper.DaysKeys.COLUMN_NAME_PIN_COUNT + "),0) FROM " +
+                DatabaseHelper.DaysKeys.TABLE_NAME + " WHERE " +
+                DatabaseHelper.DaysKeys.COLUMN_NAME_LAST_MILLIS + ">=? AND " +
+                DatabaseHelper.DaysKeys.COLUMN_NAME_FIRST_MILLIS + "<=?",
+                getRangeArgs(fromMillis, toMillis));
+        try {
+            return c.moveToFirst() ? c.getInt(0) : 0;
+        } finally {
+            c.close();
         }
-        c.close();
-        return recordedDates;
     }
 
     /**
@@ -165,12 +539,32 @@ public class DatabaseAdapter {
      *      {@link com.clidwin.android.visualimprints.location.GeospatialPin} objects
      */
     public ArrayList<GeospatialPin> getAllEntriesFromDates(String [] dates) {
-        String sortOrder = DatabaseHelper.Keys.COLUMN_NAME_ARRIVAL_DATE + " DESC, " +
-                DatabaseHelper.Keys.COLUMN_NAME_ARRIVAL_TIME + " DESC";
+        String sortOrder = DatabaseHelper.Keys.COLUMN_NAME_ARRIVAL_MILLIS + " DESC";
 
         return getAllEntriesFromDates(sortOrder, dates);
     }
 
+    /**
+     * Reads all entries with the given dates on a background reader thread.
+     *
+     * @param dates The days, formatted as in {@link Constants#DATABASE_DATE_FORMAT}.
+     * @param callback Receives the entries on the main thread, newest first.
+     */
+    public void loadEntriesFromDatesAsync(final String[] dates, final EntryLoadCallback callback) {
+        readExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final ArrayList<GeospatialPin> entries = getAllEntriesFromDates(dates);
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.onEntriesLoaded(entries);
+                    }
+                });
+            }
+        });
+    }
+
     /**
      * @return all entries in the database with the given date as a list of
      *      {@link com.clidwin.android.visualimprints.location.GeospatialPin} objects
@@ -184,73 +578,663 @@ public class DatabaseAdapter {
         }
         whereClause += ")";
 
+        PinCollector collector = new PinCollector();
+        List<String> dateList = Arrays.asList(dates);
+        for (GeospatialPin pin : journal.getInsertsInRange(Long.MIN_VALUE, Long.MAX_VALUE)) {
+            if (dateList.contains(formatDay(pin.getArrivalTime()))) {
+                collector.visitPin(pin);
+            }
+        }
+        String segmentSelection = whereClause.replace(
+                DatabaseHelper.Keys.COLUMN_NAME_ARRIVAL_DATE,
+                DatabaseHelper.SegmentKeys.COLUMN_NAME_DAY);
+        DatesFilter datesFilter = new DatesFilter(dates);
+        PinColumns sealed = loadSealedPins(segmentSelection, dates,
+                datesFilter.fromMillis, datesFilter.toMillis, null, datesFilter);
+        scanPins(whereClause, dates, sortOrder, null, sealed, collector);
+        return collector.pins;
+    }
+
+    /**
+     * Streams all entries that arrived within a time range to a visitor, newest first. Rows are
+     * decoded one at a time as the cursor advances, so memory use does not grow with the range.
+     *
+     * @param olderDay The start of the range (inclusive).
+     * @param newerDay The end of the range (inclusive).
+     * @param visitor Receives each {@link com.clidwin.android.visualimprints.location.GeospatialPin}.
+     */
+    public void forEachPin(Calendar olderDay, Calendar newerDay, PinVisitor visitor) {
+        forEachPin(olderDay.getTimeInMillis(), newerDay.getTimeInMillis(), visitor);
+    }
+
+    /**
+     * Streams all entries that arrived within a time range to a visitor, newest first, using
+     * the arrival time index.
+     *
+     * @param fromMillis The start of the range (inclusive).
+     * @param toMillis The end of the range (inclusive).
+     * @param visitor Receives each {@link com.clidwin.android.visualimprints.location.GeospatialPin}.
+     */
+    public void forEachPin(long fromMillis, long toMillis, PinVisitor visitor) {
+        // Buffered pins are newer than anything in the database.
+        for (GeospatialPin pin : journal.getInsertsInRange(fromMillis, toMillis)) {
+            visitor.visitPin(pin);
+        }
+        String[] rangeArgs = getRangeArgs(fromMillis, toMillis);
+        PinColumns sealed = loadSealedPins(SEGMENT_RANGE_SELECTION, rangeArgs,
+                fromMillis, toMillis, null, getRangeFilter(fromMillis, toMillis));
+        scanPins(ARRIVAL_RANGE_SELECTION, rangeArgs, ARRIVAL_DESCENDING, null, sealed, visitor);
+    }
+
+    /**
+     * Reads all entries that arrived within a time range into a set of pin columns, newest
+     * first. Values are copied straight from the cursor without creating a
+     * {@link com.clidwin.android.visualimprints.location.GeospatialPin} per row.
+     *
+     * @param olderDay The start of the range (inclusive).
+     * @param newerDay The end of the range (inclusive).
+     * @param pins The columns to append the pins to.
+     */
+    public void loadPinColumns(Calendar olderDay, Calendar newerDay, PinColumns pins) {
+        loadPinColumns(olderDay.getTimeInMillis(), newerDay.getTimeInMillis(), pins);
+    }
+
+    /**
+     * Reads all entries that arrived within a time range into a set of pin columns, newest
+     * first. Whole days are served from the day cache where possible; consecutive days that
+     * are not cached are read with a single query and cached.
+     *
+     * @param fromMillis The start of the range (inclusive).
+     * @param toMillis The end of the range (inclusive).
+     * @param pins The columns to append the pins to.
+     */
+    @Override
+    public void loadPinColumns(long fromMillis, long toMillis, PinColumns pins) {
+        loadPinColumns(fromMillis, toMillis, PinColumns.ALL_FIELDS, pins);
+    }
+
+    /**
+     * Reads the given fields of all entries that arrived within a time range into a set of pin
+     * columns, newest first. Only the columns backing those fields are queried and decoded;
+     * the other fields read as zero.
+     *
+     * @param fromMillis The start of the range (inclusive).
+     * @param toMillis The end of the range (inclusive).
+     * @param fields The fields to read (see {@link PinColumns#ALL_FIELDS}).
+     * @param pins The columns to append the pins to.
+     */
+    public void loadPinColumns(long fromMillis, long toMillis, int fields, PinColumns pins) {
+        long[] coveredRange = getCoveredRange();
+        if (coveredRange == null) {
+            return;
+        }
+        fromMillis = Math.max(fromMillis, coveredRange[0]);
+        toMillis = Math.min(toMillis, coveredRange[1]);
+        if (fromMillis > toMillis) {
+            return;
+        }
+
+        // Days are walked newest first; uncached days are collected until a cached day or the
+        // end of the range is reached, and then loaded together.
+        ArrayList<Long> uncachedDays = new ArrayList<>();
+        Calendar day = Calendar.getInstance();
+        day.setTimeInMillis(getStartOfDay(toMillis));
+        while (day.getTimeInMillis() + getDayLength(day) > fromMillis) {
+            long dayStart = day.getTimeInMillis();
+            PinColumns cached = dayCache.get(dayStart, fields);
+            if (cached == null) {
+                uncachedDays.add(dayStart);
+            } else {
+                loadDays(uncachedDays, fromMillis, toMillis, fields, pins);
+                copyPins(cached, fromMillis, toMillis, pins);
+            }
+            day.add(Calendar.DAY_OF_MONTH, -1);
+        }
+        loadDays(uncachedDays, fromMillis, toMillis, fields, pins);
+    }
+
+    /**
+     * Loads a run of consecutive uncached days with one query, caches each day and copies the
+     * pins within a time range. The run is cleared afterwards.
+     *
+     * @param dayStarts The starts of the days, newest first.
+     */
+    private void loadDays(ArrayList<Long> dayStarts, long fromMillis, long toMillis, int fields,
+                          PinColumns pins) {
+        if (dayStarts.isEmpty()) {
+            return;
+        }
+
+        Calendar day = Calendar.getInstance();
+        day.setTimeInMillis(dayStarts.get(0));
+        long runEnd = dayStarts.get(0) + getDayLength(day) - 1;
+        long runStart = dayStarts.get(dayStarts.size() - 1);
+
+        int generation = dayCache.getGeneration();
+        PinColumns loaded = new PinColumns();
+        readPinColumns(runStart, runEnd, fields, loaded);
+
+        int next = 0;
+        for (long dayStart : dayStarts) {
+            int end = next;
+            while (end < loaded.size() && loaded.getArrivalMillis(end) >= dayStart) {
+                end++;
+            }
+
+            PinColumns dayPins = new PinColumns(end - next);
+            for (int i = next; i < end; i++) {
+                dayPins.addE7(loaded.getArrivalMillis(i), loaded.getDuration(i),
+                        loaded.getLatitudeE7(i), loaded.getLongitudeE7(i));
+            }
+            dayCache.put(dayStart, dayPins, fields, generation);
+            copyPins(dayPins, fromMillis, toMillis, pins);
+            next = end;
+        }
+        dayStarts.clear();
+    }
+
+    /**
+     * Appends the pins of a day that arrived within a time range.
+     */
+    private static void copyPins(PinColumns dayPins, long fromMillis, long toMillis,
+                                 PinColumns pins) {
+        for (int i = 0; i < dayPins.size(); i++) {
+            long arrivalMillis = dayPins.getArrivalMillis(i);
+            if (arrivalMillis >= fromMillis && arrivalMillis <= toMillis) {
+                pins.addE7(arrivalMillis, dayPins.getDuration(i),
+                        dayPins.getLatitudeE7(i), dayPins.getLongitudeE7(i));
+            }
+        }
+    }
+
+    /**
+     * @return the start of the local day containing a time.
+     */
+    private static long getStartOfDay(long millis) {
+        Calendar day = Calendar.getInstance();
+        day.setTimeInMillis(millis);
+        day.set(Calendar.HOUR_OF_DAY, 0);
+        day.set(Calendar.MINUTE, 0);
+        day.set(Calendar.SECOND, 0);
+        day.set(Calendar.MILLISECOND, 0);
+        return day.getTimeInMillis();
+    }
+
+    /**
+     * @return the length in milliseconds of the local day starting at a calendar's time, which
+     *      differs from 24 hours on daylight saving changes.
+     */
+    private static long getDayLength(Calendar dayStart) {
+        Calendar nextDay = (Calendar) dayStart.clone();
+        nextDay.add(Calendar.DAY_OF_MONTH, 1);
+        return nextDay.getTimeInMillis() - dayStart.getTimeInMillis();
+    }
+
+    /**
+     * Reads all entries that arrived within a time range straight from the database and the
+     * write-behind journal, newest first.
+     */
+    private void readPinColumns(long fromMillis, long toMillis, int fields,
+                                final PinColumns pins) {
+        // Sized from the day summaries, since Cursor.getCount() would walk the whole result
+        // set before the first row is read.
+        pins.ensureCapacity(pins.size() + countPinsInRange(fromMillis, toMillis));
+        forEachRow(fromMillis, toMillis, PinRowReader.getProjection(fields), new PinRowVisitor() {
+            @Override
+            public void visitRow(PinRow row) {
+                pins.addE7(row.getArrivalMillis(), row.getDuration(),
+                        row.getLatitudeE7(), row.getLongitudeE7());
+            }
+        });
+    }
+
+    /**
+     * Streams all entries that arrived within a time range to a visitor through a single
+     * reused row, newest first. Unlike {@link #forEachPin(long, long, PinVisitor)}, no objects
+     * are created per pin, which makes this the cheaper choice for aggregating long ranges.
+     *
+     * @param fromMillis The start of the range (inclusive).
+     * @param toMillis The end of the range (inclusive).
+     * @param visitor Receives each pin.
+     */
+    public void forEachRow(long fromMillis, long toMillis, PinRowVisitor visitor) {
+        forEachRow(fromMillis, toMillis, PinRowReader.PIN_COLUMNS, visitor);
+    }
+
+    /**
+     * Streams the buffered, stored and sealed entries of a time range through a reused row,
+     * newest first. Buffered and sealed pins carry every field anyway.
+     *
+     * @param columns The pins table columns to query (see {@link PinRowReader#getProjection}).
+     */
+    private void forEachRow(long fromMillis, long toMillis, String[] columns,
+                            PinRowVisitor visitor) {
+        PinRow row = new PinRow();
+        // Buffered pins are newer than anything in the database.
+        for (GeospatialPin pin : journal.getInsertsInRange(fromMillis, toMillis)) {
+            row.set(pin);
+            visitor.visitRow(row);
+        }
+
+        String[] rangeArgs = getRangeArgs(fromMillis, toMillis);
+        PinColumns sealed = loadSealedPins(SEGMENT_RANGE_SELECTION, rangeArgs,
+                fromMillis, toMillis, null, getRangeFilter(fromMillis, toMillis));
+        int nextSealed = 0;
+
+        Cursor c = queryPins(columns, ARRIVAL_RANGE_SELECTION, rangeArgs, ARRIVAL_DESCENDING,
+                null);
+        try {
+            PinRowReader reader = new PinRowReader(c);
+            while (c.moveToNext()) {
+                long arrivalMillis = reader.readArrivalMillis(c);
+                while (nextSealed < sealed.size() &&
+                        sealed.getArrivalMillis(nextSealed) > arrivalMillis) {
+                    visitSealedRow(sealed, nextSealed++, row, visitor);
+                }
+
+                GeospatialPin update = journal.getUpdate(arrivalMillis);
+                if (update != null) {
+                    row.set(update);
+                } else {
+                    reader.readInto(c, row);
+                }
+                visitor.visitRow(row);
+            }
+        } finally {
+            c.close();
+        }
+        while (nextSealed < sealed.size()) {
+            visitSealedRow(sealed, nextSealed++, row, visitor);
+        }
+    }
+
+    /**
+     * Appends a pin to a set of pin columns.
+     */
+    private static void addPin(PinColumns pins, GeospatialPin pin) {
+        pins.addE7(pin.getArrivalTime().getTime(), pin.getDuration(),
+                pin.getLatitudeE7(), pin.getLongitudeE7(), pin.getLocation().getAccuracy());
+    }
+
+    /**
+     * Visits a sealed pin, or its buffered update if it has one.
+     */
+    private void visitSealedRow(PinColumns sealed, int index, PinRow row,
+                                PinRowVisitor visitor) {
+        GeospatialPin update = journal.getUpdate(sealed.getArrivalMillis(index));
+        if (update != null) {
+            row.set(update);
+        } else {
+            row.set(-1, sealed.getArrivalMillis(index), sealed.getDuration(index),
+                    sealed.getLatitudeE7(index), sealed.getLongitudeE7(index));
+        }
+        visitor.visitRow(row);
+    }
+
+    /**
+     * Reads all entries that arrived within a time range on a background reader thread, so a
+     * long range never stalls the UI. The loaded pins are delivered on the main thread.
+     *
+     * @param olderDay The start of the range (inclusive).
+     * @param newerDay The end of the range (inclusive).
+     * @param callback Receives the loaded pins.
+     */
+    public void loadPinColumnsAsync(Calendar olderDay, Calendar newerDay,
+                                    PinLoadCallback callback) {
+        loadPinColumnsAsync(olderDay.getTimeInMillis(), newerDay.getTimeInMillis(), callback);
+    }
+
+    /**
+     * Reads all entries that arrived within a time range on a background reader thread.
+     *
+     * @param fromMillis The start of the range (inclusive).
+     * @param toMillis The end of the range (inclusive).
+     * @param callback Receives the loaded pins on the main thread.
+     */
+    public void loadPinColumnsAsync(long fromMillis, long toMillis, PinLoadCallback callback) {
+        loadPinColumnsAsync(fromMillis, toMillis, PinColumns.ALL_FIELDS, callback);
+    }
+
+    /**
+     * Reads the given fields of all entries that arrived within a time range on a background
+     * reader thread (see {@link #loadPinColumns(long, long, int, PinColumns)}).
+     *
+     * @param fromMillis The start of the range (inclusive).
+     * @param toMillis The end of the range (inclusive).
+     * @param fields The fields to read (see {@link PinColumns#ALL_FIELDS}).
+     * @param callback Receives the loaded pins on the main thread.
+     */
+    @Override
+    public void loadPinColumnsAsync(final long fromMillis, final long toMillis, final int fields,
+                                    final PinLoadCallback callback) {
+        readExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final PinColumns pins = new PinColumns();
+                loadPinColumns(fromMillis, toMillis, fields, pins);
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.onPinsLoaded(pins);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Reads the hourly rollup rows covering a time range. Hours are whole, so the first and
+     * last hour include pins just outside the range when it does not start on an hour.
+     * Buffered pins that have not been flushed yet are counted as well.
+     *
+     * @param fromMillis The start of the range (inclusive).
+     * @param toMillis The end of the range (inclusive).
+     * @return the pin count and total dwell time of every hour with pins, oldest first.
+     */
+    public HourlyRollups getHourlyRollups(long fromMillis, long toMillis) {
+        String selection = DatabaseHelper.HourlyRollupKeys.COLUMN_NAME_EPOCH_HOUR +
+                " BETWEEN ? AND ?";
+        String[] selectionArgs = getRangeArgs(
+                PinWriter.getEpochHour(fromMillis), PinWriter.getEpochHour(toMillis));
+
+        // Pending pins are newer than anything flushed, so they belong after the stored hours.
+        ArrayList<GeospatialPin> pendingPins = journal.getInsertsInRange(fromMillis, toMillis);
+
         Cursor c = database.query(
-                DatabaseHelper.Keys.TABLE_NAME,         // The table to query
-                DatabaseHelper.Keys.getAllColumns(),    // The columns to return
-                whereClause,                            // The WHERE clause
-                dates,                                  // The arguments for the WHERE clause
-                null,                                   // Row groupings
-                null,                                   // Row group filters
-                sortOrder                               // Sort order
+                DatabaseHelper.HourlyRollupKeys.TABLE_NAME,     // The table to query
+                null,                                           // The columns to return
+                selection,                                      // The WHERE clause
+                selectionArgs,                                  // The arguments for the WHERE clause
+                null,                                           // Row groupings
+                null,                                           // Row group filters
+                DatabaseHelper.HourlyRollupKeys.COLUMN_NAME_EPOCH_HOUR + " ASC"   // Sort order
         );
 
-        ArrayList<GeospatialPin> geospatialPinList = new ArrayList<>();
-        if (c.moveToFirst()) {
-            do {
-                geospatialPinList.add(constructGeospatialPin(c));
-            } while (c.moveToNext());
+        HourlyRollups rollups = new HourlyRollups(c.getCount() + pendingPins.size());
+        try {
+            int hourIndex = c.getColumnIndexOrThrow(
+                    DatabaseHelper.HourlyRollupKeys.COLUMN_NAME_EPOCH_HOUR);
+            int countIndex = c.getColumnIndexOrThrow(
+                    DatabaseHelper.HourlyRollupKeys.COLUMN_NAME_PIN_COUNT);
+            int dwellIndex = c.getColumnIndexOrThrow(
+                    DatabaseHelper.HourlyRollupKeys.COLUMN_NAME_DWELL_MILLIS);
+            while (c.moveToNext()) {
+                if (c.getInt(countIndex) > 0) {
+                    rollups.add(c.getLong(hourIndex), c.getInt(countIndex), c.getLong(dwellIndex));
+                }
+            }
+        } finally {
+            c.close();
         }
 
-        c.close();
-        return geospatialPinList;
+        for (int i = pendingPins.size() - 1; i >= 0; i--) {
+            GeospatialPin pin = pendingPins.get(i);
+            rollups.add(PinWriter.getEpochHour(pin.getArrivalTime().getTime()), 1,
+                    pin.getDuration());
+        }
+        return rollups;
+    }
+
+    /**
+     * Reads the hourly rollup rows covering a time range on a background reader thread.
+     *
+     * @param olderDay The start of the range (inclusive).
+     * @param newerDay The end of the range (inclusive).
+     * @param callback Receives the rollups on the main thread.
+     */
+    public void loadHourlyRollupsAsync(Calendar olderDay, Calendar newerDay,
+                                       final RollupLoadCallback callback) {
+        final long fromMillis = olderDay.getTimeInMillis();
+        final long toMillis = newerDay.getTimeInMillis();
+
+        readExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final HourlyRollups rollups = getHourlyRollups(fromMillis, toMillis);
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.onRollupsLoaded(rollups);
+                    }
+                });
+            }
+        });
     }
 
     /**
-     * Retrieve all entries from the last 24 hours.
+     * Retrieve all entries that arrived within a time range using the arrival time index.
      *
+     * @param olderDay The start of the range (inclusive).
+     * @param newerDay The end of the range (inclusive).
      * @return all {@link com.clidwin.android.visualimprints.location.GeospatialPin}
      *      within the date and time range.
      */
     public ArrayList<GeospatialPin> getEntriesInDateRange(Calendar olderDay, Calendar newerDay) {
-        //TODO(clidwin): Incorporate timestamp into query
-        ArrayList<String> dates = new ArrayList<>();
-        dates.add(DateFormatter.format(newerDay.getTime()));
+        PinCollector collector = new PinCollector();
+        forEachPin(olderDay, newerDay, collector);
 
-        long numDays = TimeUnit.DAYS.convert(
-                newerDay.getTimeInMillis() - olderDay.getTimeInMillis(), // Difference in time ms
-                TimeUnit.MILLISECONDS
-        );
-        if (numDays > 0) {
-            dates.add(DateFormatter.format(olderDay.getTime()));
-            numDays--;
+        Log.d(TAG, "Database entries found for range " + olderDay.getTime().toString() + " to " + newerDay.getTime().toString() + ": "  + collector.pins.size());
+        return collector.pins;
+    }
+
+    /**
+     * Retrieve all entries located inside a bounding box that arrived within a time range.
+     * Candidates come from the R*Tree spatial index when it is available, so the cost of the
+     * query follows the number of pins in the box rather than the size of the history.
+     *
+     * @param minLatitude The southern edge of the box.
+     * @param minLongitude The western edge of the box.
+     * @param maxLatitude The northern edge of the box.
+     * @param maxLongitude The eastern edge of the box.
+     * @param fromMillis The start of the time range (inclusive).
+     * @param toMillis The end of the time range (inclusive).
+     * @return all {@link com.clidwin.android.visualimprints.location.GeospatialPin} inside the
+     *      box and time range, newest first.
+     */
+    public ArrayList<GeospatialPin> getEntriesInBoundingBox(
+            double minLatitude, double minLongitude, double maxLatitude, double maxLongitude,
+            final long fromMillis, final long toMillis) {
+        String sortOrder = DatabaseHelper.Keys.COLUMN_NAME_ARRIVAL_MILLIS + " DESC";
+
+        final int minLatitudeE7 = FixedPoint.toE7(minLatitude);
+        final int maxLatitudeE7 = FixedPoint.toE7(maxLatitude);
+        final int minLongitudeE7 = FixedPoint.toE7(minLongitude);
+        final int maxLongitudeE7 = FixedPoint.toE7(maxLongitude);
+
+        // The R*Tree stores 32-bit floats, so its matches are re-checked against the exact values.
+        String selection =
+                DatabaseHelper.Keys.COLUMN_NAME_LATITUDE_E7 + " BETWEEN ? AND ? AND " +
+                DatabaseHelper.Keys.COLUMN_NAME_LONGITUDE_E7 + " BETWEEN ? AND ? AND " +
+                DatabaseHelper.Keys.COLUMN_NAME_ARRIVAL_MILLIS + " BETWEEN ? AND ?";
+        String[] selectionArgs = {
+                String.valueOf(minLatitudeE7), String.valueOf(maxLatitudeE7),
+                String.valueOf(minLongitudeE7), String.valueOf(maxLongitudeE7),
+                String.valueOf(fromMillis), String.valueOf(toMillis)
+        };
+
+        if (hasSpatialIndex) {
+            selection += " AND " + DatabaseHelper.Keys._ID + " IN (SELECT " +
+                    DatabaseHelper.SpatialIndexKeys.COLUMN_NAME_ID + " FROM " +
+                    DatabaseHelper.SpatialIndexKeys.TABLE_NAME + " WHERE " +
+                    DatabaseHelper.SpatialIndexKeys.COLUMN_NAME_MAX_LAT + " >= ? AND " +
+                    DatabaseHelper.SpatialIndexKeys.COLUMN_NAME_MIN_LAT + " <= ? AND " +
+                    DatabaseHelper.SpatialIndexKeys.COLUMN_NAME_MAX_LONG + " >= ? AND " +
+                    DatabaseHelper.SpatialIndexKeys.COLUMN_NAME_MIN_LONG + " <= ?)";
+            selectionArgs = new String[] {
+                    selectionArgs[0], selectionArgs[1],
+                    selectionArgs[2], selectionArgs[3],
+                    selectionArgs[4], selectionArgs[5],
+                    String.valueOf(minLatitude), String.valueOf(maxLatitude),
+                    String.valueOf(minLongitude), String.valueOf(maxLongitude)
+            };
+        }
 
-            // Add all the days in between the oldest and newest times
-            Calendar tempCal = Calendar.getInstance();
-            tempCal.setTimeInMillis(olderDay.getTimeInMillis());
-            for (int i=0; i<numDays; i++) {
-                tempCal.add(Calendar.DAY_OF_YEAR, 1);
-                dates.add(DateFormatter.format(tempCal.getTime()));
+        PinCollector collector = new PinCollector();
+        for (GeospatialPin pin : journal.getInsertsInRange(fromMillis, toMillis)) {
+            int latitudeE7 = pin.getLatitudeE7();
+            int longitudeE7 = pin.getLongitudeE7();
+            if (latitudeE7 >= minLatitudeE7 && latitudeE7 <= maxLatitudeE7 &&
+                    longitudeE7 >= minLongitudeE7 && longitudeE7 <= maxLongitudeE7) {
+                collector.visitPin(pin);
             }
+        }
+
+        // Only segments of days whose bounds overlap the box are decoded.
+        String segmentSelection = SEGMENT_RANGE_SELECTION + " AND " +
+                DatabaseHelper.SegmentKeys.COLUMN_NAME_DAY + " IN (SELECT " +
+                DatabaseHelper.DaysKeys.COLUMN_NAME_DAY + " FROM " +
+                DatabaseHelper.DaysKeys.TABLE_NAME + " WHERE " +
+                DatabaseHelper.DaysKeys.COLUMN_NAME_MAX_LAT_E7 + ">=? AND " +
+                DatabaseHelper.DaysKeys.COLUMN_NAME_MIN_LAT_E7 + "<=? AND " +
+                DatabaseHelper.DaysKeys.COLUMN_NAME_MAX_LONG_E7 + ">=? AND " +
+                DatabaseHelper.DaysKeys.COLUMN_NAME_MIN_LONG_E7 + "<=?)";
+        String[] segmentArgs = {
+                String.valueOf(fromMillis), String.valueOf(toMillis),
+                String.valueOf(minLatitudeE7), String.valueOf(maxLatitudeE7),
+                String.valueOf(minLongitudeE7), String.valueOf(maxLongitudeE7)
+        };
+        PinColumns sealed = loadSealedPins(segmentSelection, segmentArgs, fromMillis, toMillis,
+                null, new PinFilter() {
+            @Override
+            public boolean accepts(PinColumns pins, int index) {
+                int latitudeE7 = pins.getLatitudeE7(index);
+                int longitudeE7 = pins.getLongitudeE7(index);
+                long arrivalMillis = pins.getArrivalMillis(index);
+                return latitudeE7 >= minLatitudeE7 && latitudeE7 <= maxLatitudeE7 &&
+                        longitudeE7 >= minLongitudeE7 && longitudeE7 <= maxLongitudeE7 &&
+                        arrivalMillis >= fromMillis && arrivalMillis <= toMillis;
+            }
+        });
+        scanPins(selection, selectionArgs, sortOrder, null, sealed, collector);
+        return collector.pins;
+    }
+
+    /**
+     * Retrieve all entries within a geohash cell, e.g. "c23nb" for the cell of that prefix.
+     *
+     * @param geohash The base 32 geohash naming the cell, from 1 to 12 characters.
+     * @return all {@link com.clidwin.android.visualimprints.location.GeospatialPin} in the cell,
+     *      newest first.
+     */
+    public ArrayList<GeospatialPin> getEntriesInCell(String geohash) {
+        PinCollector collector = new PinCollector();
+        forEachPinInCells(new long[] {Geohash.parseCell(geohash)},
+                geohash.length() * Geohash.BITS_PER_CHARACTER, collector);
+        return collector.pins;
+    }
+
+    /**
+     * Streams every entry within a geohash cell through a visitor, newest first. A cell is a
+     * contiguous range of the geohash index, so this is a single index range scan.
+     *
+     * @param cell The cell, as the leading bits of a geohash (see {@link Geohash#getCell}).
+     * @param bits The precision of the cell.
+     * @param visitor Receives each pin.
+     */
+    public void forEachPinInCell(long cell, int bits, PinVisitor visitor) {
+        forEachPinInCells(new long[] {cell}, bits, visitor);
+    }
 
-            Log.e(TAG, "Dates recorded: " + dates.size());
+    /**
+     * Streams every entry in the cell containing a location and the cells around it through a
+     * visitor, newest first. Anything closer to the location than the size of one cell is
+     * visited, which makes this a cheap first pass for proximity checks.
+     *
+     * @param latitudeE7 The latitude of the location in fixed-point units.
+     * @param longitudeE7 The longitude of the location in fixed-point units.
+     * @param bits The precision of the cells to search.
+     * @param visitor Receives each pin.
+     */
+    public void forEachPinNear(int latitudeE7, int longitudeE7, int bits, PinVisitor visitor) {
+        long cell = Geohash.getCell(Geohash.encode(latitudeE7, longitudeE7), bits);
+        forEachPinInCells(Geohash.getNeighbourhood(cell, bits), bits, visitor);
+    }
+
+    /**
+     * Streams every entry within any of a set of cells through a visitor, newest first.
+     */
+    private void forEachPinInCells(final long[] cells, final int bits, PinVisitor visitor) {
+        for (GeospatialPin pin : journal.getInsertsInRange(Long.MIN_VALUE, Long.MAX_VALUE)) {
+            long pinCell = Geohash.getCell(
+                    Geohash.encode(pin.getLatitudeE7(), pin.getLongitudeE7()), bits);
+            for (long cell : cells) {
+                if (cell == pinCell) {
+                    visitor.visitPin(pin);
+                    break;
+                }
+            }
         }
 
-        String [] allDates = new String[dates.size()];
-        allDates = dates.toArray(allDates);
+        StringBuilder selection = new StringBuilder();
+        String[] selectionArgs = new String[cells.length * 2];
+        for (int i = 0; i < cells.length; i++) {
+            if (i > 0) {
+                selection.append(" OR ");
+            }
+            selection.append(DatabaseHelper.Keys.COLUMN_NAME_GEOHASH).append(" BETWEEN ? AND ?");
+            selectionArgs[i * 2] = String.valueOf(Geohash.getMinHash(cells[i], bits));
+            selectionArgs[i * 2 + 1] = String.valueOf(Geohash.getMaxHash(cells[i], bits));
+        }
 
-        // Retrieve all dates recorded in the range
-        ArrayList<GeospatialPin> pinsInDateRange = new ArrayList<>();
-        for (GeospatialPin pin: getAllEntriesFromDates(allDates)) {
-            if (pin.getArrivalTime().after(olderDay.getTime()) &&
-                    pin.getArrivalTime().before(newerDay.getTime())) {
-                pinsInDateRange.add(pin);
+        // Only segments of days whose bounds overlap one of the cells are decoded.
+        StringBuilder dayBounds = new StringBuilder();
+        String[] dayArgs = new String[cells.length * 4];
+        for (int i = 0; i < cells.length; i++) {
+            if (i > 0) {
+                dayBounds.append(" OR ");
             }
+            dayBounds.append('(')
+                    .append(DatabaseHelper.DaysKeys.COLUMN_NAME_MAX_LAT_E7).append(">=? AND ")
+                    .append(DatabaseHelper.DaysKeys.COLUMN_NAME_MIN_LAT_E7).append("<=? AND ")
+                    .append(DatabaseHelper.DaysKeys.COLUMN_NAME_MAX_LONG_E7).append(">=? AND ")
+                    .append(DatabaseHelper.DaysKeys.COLUMN_NAME_MIN_LONG_E7).append("<=?)");
+            dayArgs[i * 4] = String.valueOf(Geohash.getMinLatitudeE7(cells[i], bits));
+            dayArgs[i * 4 + 1] = String.valueOf(Geohash.getMaxLatitudeE7(cells[i], bits));
+            dayArgs[i * 4 + 2] = String.valueOf(Geohash.getMinLongitudeE7(cells[i], bits));
+            dayArgs[i * 4 + 3] = String.valueOf(Geohash.getMaxLongitudeE7(cells[i], bits));
         }
-        Log.e(TAG, "Database entries found for range " + olderDay.getTime().toString() + " to " + newerDay.getTime().toString() + ": "  + pinsInDateRange.size());
 
-        return pinsInDateRange;
-    }
+        HashSet<String> days = new HashSet<>();
+        long firstMillis = Long.MAX_VALUE;
+        long lastMillis = Long.MIN_VALUE;
+        Cursor c = database.query(DatabaseHelper.DaysKeys.TABLE_NAME,
+                new String[] {
+                        DatabaseHelper.DaysKeys.COLUMN_NAME_DAY,
+                        DatabaseHelper.DaysKeys.COLUMN_NAME_FIRST_MILLIS,
+                        DatabaseHelper.DaysKeys.COLUMN_NAME_LAST_MILLIS
+                }, dayBounds.toString(), dayArgs, null, null, null);
+        try {
+            while (c.moveToNext()) {
+                days.add(c.getString(0));
+                firstMillis = Math.min(firstMillis, c.getLong(1));
+                lastMillis = Math.max(lastMillis, c.getLong(2));
+            }
+        } finally {
+            c.close();
+        }
 
+        PinColumns sealed = NO_SEALED_PINS;
+        if (!days.isEmpty()) {
+            String segmentSelection = DatabaseHelper.SegmentKeys.COLUMN_NAME_DAY + " IN (SELECT " +
+                    DatabaseHelper.DaysKeys.COLUMN_NAME_DAY + " FROM " +
+                    DatabaseHelper.DaysKeys.TABLE_NAME + " WHERE " + dayBounds + ")";
+            sealed = loadSealedPins(segmentSelection, dayArgs, firstMillis, lastMillis, null,
+                    days, new PinFilter() {
+                @Override
+                public boolean accepts(PinColumns pins, int index) {
+                    long pinCell = Geohash.getCell(Geohash.encode(
+                            pins.getLatitudeE7(index), pins.getLongitudeE7(index)), bits);
+                    for (long cell : cells) {
+                        if (cell == pinCell) {
+                            return true;
+                        }
+                    }
+                    return false;
+                }
+            });
+        }
+        scanPins(selection.toString(), selectionArgs, ARRIVAL_DESCENDING, null, sealed, visitor);
+    }
 
     /**
      * @return all entries in the database as a list of
@@ -258,125 +1242,352 @@ public class DatabaseAdapter {
      */
     @Deprecated
     public ArrayList<GeospatialPin> getAllEntries() {
-        String sortOrder = DatabaseHelper.Keys.COLUMN_NAME_ARRIVAL_DATE + " DESC, " +
-                DatabaseHelper.Keys.COLUMN_NAME_ARRIVAL_TIME + " DESC";
+        PinCollector collector = new PinCollector();
+        forEachPin(Long.MIN_VALUE, Long.MAX_VALUE, collector);
+        return collector.pins;
+    }
 
-        Cursor c = database.query(
-                DatabaseHelper.Keys.TABLE_NAME,         // The table to query
-                DatabaseHelper.Keys.getAllColumns(),    // The columns to return
-                null,                                   // The columns for the WHERE clause
-                null,                                   // The values for the WHERE clause
-                null,                                   // Row groupings
-                null,                                   // Row group filters
-                sortOrder                               // Sort order
-        );
+    /**
+     * Runs a query against the pins table and hands each row to a visitor as soon as it is
+     * decoded. Rows with a buffered update are replaced by the updated pin.
+     *
+     * @param selection The WHERE clause, or null for all rows.
+     * @param selectionArgs The arguments for the WHERE clause.
+     * @param sortOrder The ORDER BY clause.
+     * @param limit The LIMIT clause, or null for no limit.
+     * @param visitor Receives each pin.
+     */
+    private void scanPins(String selection, String[] selectionArgs, String sortOrder,
+                          String limit, PinVisitor visitor) {
+        scanPins(selection, selectionArgs, sortOrder, limit, NO_SEALED_PINS, visitor);
+    }
 
-        ArrayList<GeospatialPin> geospatialPinList = new ArrayList<>();
-        if (c.moveToFirst()) {
-            do {
-                geospatialPinList.add(constructGeospatialPin(c));
-            } while (c.moveToNext());
+    /**
+     * Runs a query against the pins table and hands each row to a visitor, together with a set
+     * of sealed pins. When rows are sorted newest first, sealed pins are visited in arrival
+     * order among them; otherwise they are visited after the rows.
+     *
+     * @param sealed Sealed pins matching the query, newest first (see {@link #loadSealedPins}).
+     */
+    private void scanPins(String selection, String[] selectionArgs, String sortOrder,
+                          String limit, PinColumns sealed, PinVisitor visitor) {
+        boolean mergeSealed = ARRIVAL_DESCENDING.equals(sortOrder);
+        int nextSealed = 0;
+
+        Cursor c = queryPins(selection, selectionArgs, sortOrder, limit);
+        try {
+            PinRowReader reader = new PinRowReader(c);
+            while (c.moveToNext()) {
+                GeospatialPin pin = reader.read(c);
+                long arrivalMillis = pin.getArrivalTime().getTime();
+                while (mergeSealed && nextSealed < sealed.size() &&
+                        sealed.getArrivalMillis(nextSealed) > arrivalMillis) {
+                    visitor.visitPin(getSealedPin(sealed, nextSealed++));
+                }
+
+                GeospatialPin update = journal.getUpdate(arrivalMillis);
+                if (update != null) {
+                    update.setId(pin.getId());
+                    pin = update;
+                }
+                visitor.visitPin(pin);
+            }
+        } finally {
+            c.close();
+        }
+        while (nextSealed < sealed.size()) {
+            visitor.visitPin(getSealedPin(sealed, nextSealed++));
         }
-        c.close();
-        return geospatialPinList;
     }
 
     /**
-     * Creates a {@link com.clidwin.android.visualimprints.location.GeospatialPin} object from database row
-     * components.
+     * Decodes the sealed segments matching a query on the segments table, together with the
+     * segments of partitioned months overlapping a time range. Partition files are only
+     * searched by time, so the filter must reject whatever else the selection excludes.
+     *
+     * @param selection The WHERE clause on the segments table, or null for all segments.
+     * @param selectionArgs The arguments for the WHERE clause.
+     * @param fromMillis The start of the range of partitioned months to search (inclusive).
+     * @param toMillis The end of the range of partitioned months to search (inclusive).
+     * @param limit The number of segments to decode, newest first, or null for no limit.
+     * @param filter Picks the pins to keep, or null to keep all of them.
+     * @return the kept pins, newest first.
+     */
+    private PinColumns loadSealedPins(String selection, String[] selectionArgs, long fromMillis,
+                                      long toMillis, String limit, PinFilter filter) {
+        return loadSealedPins(selection, selectionArgs, fromMillis, toMillis, limit, null,
+                filter);
+    }
+
+    /**
+     * Decodes the sealed days matching a query, as {@link #loadSealedPins(String, String[], long,
+     * long, String, PinFilter)} does, reading only the listed days from partitioned months.
      *
-     * @param c {@link android.database.Cursor} A database pointer pointing to a data row
-     * @return a constructed GeospatialPin
+     * @param days The days to read from partitioned months, or null for all of them.
      */
-    private GeospatialPin constructGeospatialPin(Cursor c) {
-        String arrivalDate = c.getString(
-                c.getColumnIndexOrThrow(DatabaseHelper.Keys.COLUMN_NAME_ARRIVAL_DATE));
-        String arrivalTime = c.getString(
-                c.getColumnIndexOrThrow(DatabaseHelper.Keys.COLUMN_NAME_ARRIVAL_TIME));
-        double latitude = c.getDouble(
-                c.getColumnIndexOrThrow(DatabaseHelper.Keys.COLUMN_NAME_LOCATION_LAT));
-        double longitude = c.getDouble(
-                c.getColumnIndexOrThrow(DatabaseHelper.Keys.COLUMN_NAME_LOCATION_LONG));
-        int duration = c.getInt(
-                c.getColumnIndexOrThrow(DatabaseHelper.Keys.COLUMN_NAME_DURATION));
-        String address = c.getString(
-                c.getColumnIndexOrThrow(DatabaseHelper.Keys.COLUMN_NAME_ADDRESS));
+    private PinColumns loadSealedPins(String selection, String[] selectionArgs, long fromMillis,
+                                      long toMillis, String limit, Set<String> days,
+                                      PinFilter filter) {
+        String[] columns = {
+                DatabaseHelper.SegmentKeys.COLUMN_NAME_FIRST_MILLIS,
+                DatabaseHelper.SegmentKeys.COLUMN_NAME_DATA
+        };
+        Cursor c = database.query(
+                DatabaseHelper.SegmentKeys.TABLE_NAME,  // The table to query
+                columns,                                // The columns to return
+                selection,                              // The WHERE clause
+                selectionArgs,                          // The arguments for the WHERE clause
+                null,                                   // Row groupings
+                null,                                   // Row group filters
+                DatabaseHelper.SegmentKeys.COLUMN_NAME_FIRST_MILLIS + " DESC",  // Sort order
+                limit                                   // Limit
+        );
 
+        ArrayList<MonthPartitions.Segment> segments = new ArrayList<>();
         try {
-            // Extract Date Information
-            SimpleDateFormat dateTimeFormatter =
-                    new SimpleDateFormat(Constants.DATABASE_DATE_TIME_FORMAT, Locale.getDefault());
-            Date arrivalDateTime = dateTimeFormatter.parse(arrivalDate + " " + arrivalTime);
+            while (c.moveToNext()) {
+                segments.add(new MonthPartitions.Segment(c.getLong(0), c.getBlob(1)));
+            }
+        } finally {
+            c.close();
+        }
+        MonthPartitions monthPartitions = partitions;
+        if (monthPartitions != null) {
+            monthPartitions.collectSegments(fromMillis, toMillis, limit, days, segments);
+        }
 
-            // Reconstruct location information
-            Location location = new Location("");
-            location.setLatitude(latitude);
-            location.setLongitude(longitude);
+        int count = limit == null ?
+                segments.size() : Math.min(segments.size(), Integer.parseInt(limit));
+        PinColumns sealed = new PinColumns();
+        PinColumns segment = new PinColumns();
+        for (int s = 0; s < count; s++) {
+            segment.clear();
+            PinSegmentCodec.decode(segments.get(s).data, segment);
 
-            return new GeospatialPin(location, arrivalDateTime, duration);
-            //TODO(clidwin): Create the address object and then uncomment the line below
-            //GeospatialPin pin = new GeospatialPin(location, arrivalDateTime, duration);
-            //pin.setAddress(pinAddress);
-            //c.close();
-            //return pin;
-        } catch (ParseException e) {
-            e.printStackTrace();
-            //c.close();
-            return null;
+            // Segments are stored oldest first, and days never overlap.
+            for (int i = segment.size() - 1; i >= 0; i--) {
+                if (filter == null || filter.accepts(segment, i)) {
+                    sealed.addE7(segment.getArrivalMillis(i), segment.getDuration(i),
+                            segment.getLatitudeE7(i), segment.getLongitudeE7(i),
+                            segment.getAccuracy(i));
+                }
+            }
         }
+        return sealed;
     }
 
     /**
-     * Rounds a value to eight decimal places of precision.
-     *
-     * @param value The number to round.
-     * @return The rounded value.
+     * @return a sealed pin as a {@link GeospatialPin}, or its buffered update if it has one.
      */
-    private double roundValue(double value) {
-        int precision = 100000000; // Eight decimal places
-        return (double) Math.round(value * precision) / precision;
+    private GeospatialPin getSealedPin(PinColumns sealed, int index) {
+        GeospatialPin update = journal.getUpdate(sealed.getArrivalMillis(index));
+        if (update != null) {
+            return update;
+        }
+        return createPin(sealed.getArrivalMillis(index), sealed.getDuration(index),
+                sealed.getLatitudeE7(index), sealed.getLongitudeE7(index),
+                sealed.getAccuracy(index));
     }
 
     /**
-     * Retrieve an entity from the database by its id.
+     * @return a filter keeping the pins that arrived within a time range.
+     */
+    private static PinFilter getRangeFilter(final long fromMillis, final long toMillis) {
+        return new PinFilter() {
+            @Override
+            public boolean accepts(PinColumns pins, int index) {
+                long arrivalMillis = pins.getArrivalMillis(index);
+                return arrivalMillis >= fromMillis && arrivalMillis <= toMillis;
+            }
+        };
+    }
+
+    /**
+     * Runs a query for the columns decoded into whole pins.
      *
-     * @param id The identification value of the entry.
-     * @return a row of the database as a {@link com.clidwin.android.visualimprints.location.GeospatialPin}
+     * @return a cursor over the matching rows, which the caller must close.
      */
-    public GeospatialPin getEntryById(int id) {
-        String sortOrder = DatabaseHelper.Keys.COLUMN_NAME_ARRIVAL_TIME + " DESC";
-        String selection = DatabaseHelper.Keys._ID + " LIKE ?";
-        String[] query = {String.valueOf(id)};
+    private Cursor queryPins(String selection, String[] selectionArgs, String sortOrder,
+                             String limit) {
+        return queryPins(PinRowReader.PIN_COLUMNS, selection, selectionArgs, sortOrder, limit);
+    }
 
-        Cursor c = database.query(
+    /**
+     * Runs a query against the pins table.
+     *
+     * @param columns The columns to return.
+     * @return a cursor over the matching rows, which the caller must close.
+     */
+    private Cursor queryPins(String[] columns, String selection, String[] selectionArgs,
+                             String sortOrder, String limit) {
+        return database.query(
                 DatabaseHelper.Keys.TABLE_NAME,         // The table to query
-                DatabaseHelper.Keys.getAllColumns(),    // The columns to return
-                selection,                // The columns for the WHERE clause
-                query,                                   // The values for the WHERE clause
+                columns,                                // The columns to return
+                selection,                              // The WHERE clause
+                selectionArgs,                          // The arguments for the WHERE clause
                 null,                                   // Row groupings
                 null,                                   // Row group filters
-                sortOrder                               // Sort order
+                sortOrder,                              // Sort order
+                limit                                   // Limit
         );
+    }
 
-        if (c.moveToFirst()) {
-            GeospatialPin pin = constructGeospatialPin(c);
-            c.close();
-            return pin;
-        }
-        c.close();
-        return null;
+    /**
+     * @return the arguments for a BETWEEN range selection.
+     */
+    private static String[] getRangeArgs(long fromMillis, long toMillis) {
+        return new String[] {String.valueOf(fromMillis), String.valueOf(toMillis)};
+    }
+
+    /**
+     * Retrieve an entity from the database by its id.
+     *
+     * @param id The row id of the entry (see {@link GeospatialPin#getId()}).
+     * @return a row of the database as a {@link com.clidwin.android.visualimprints.location.GeospatialPin}
+     */
+    public GeospatialPin getEntryById(long id) {
+        // Buffered pins have no row yet, so only pins read back from the database have ids.
+        String selection = DatabaseHelper.Keys._ID + "=?";
+        String[] query = {String.valueOf(id)};
+
+        PinCollector collector = new PinCollector();
+        scanPins(selection, query, null, "1", collector);
+        return collector.pins.isEmpty() ? null : collector.pins.get(0);
     }
 
     /**
-     * Modify an entry in the database.
+     * Modify an entry in the database. The change is buffered and written together with other
+     * pending changes; reads see it immediately.
      *
      * @param pin The entity with values to update in the database.
      */
     public void updateEntry(GeospatialPin pin) {
-        ContentValues values = generateContentValues(pin);
-        int id = pin.getArrivalTime().hashCode();
+        journal.addUpdate(pin);
+        dayCache.invalidate(getStartOfDay(pin.getArrivalTime().getTime()));
+        scheduleFlush();
+    }
+
+    /**
+     * Writes a pin recovered from outside the database, such as a checkpoint made before the
+     * process was killed. The stored pin is updated, or inserted if it never reached the
+     * database, e.g. because it was still buffered. Runs on the calling thread.
+     *
+     * @param pin The recovered pin.
+     */
+    public void restoreEntry(GeospatialPin pin) {
+        synchronized (writeLock) {
+            if (database == null) {
+                return;
+            }
+            // A buffered insert of the same pin is written first, so it is not duplicated.
+            flushPendingWrites();
+
+            long arrivalMillis = pin.getArrivalTime().getTime();
+            database.beginTransaction();
+            try {
+                // A pin missing from the pins table may be sealed; bring its day back.
+                if (!writer.update(pin) &&
+                        !(archiver.unsealDayOf(arrivalMillis) && writer.update(pin))) {
+                    writer.insert(pin);
+                }
+                database.setTransactionSuccessful();
+            } finally {
+                database.endTransaction();
+            }
+            dayCache.invalidate(getStartOfDay(arrivalMillis));
+        }
+    }
+
+    /**
+     * Modify a batch of entries, e.g. the rows selected in a list. The changes are buffered
+     * like {@link #updateEntry} and then flushed right away, all in a single transaction.
+     *
+     * @param pins The entities with values to update in the database.
+     */
+    public void updateEntries(Collection<GeospatialPin> pins) {
+        for (GeospatialPin pin : pins) {
+            journal.addUpdate(pin);
+            dayCache.invalidate(getStartOfDay(pin.getArrivalTime().getTime()));
+        }
+        postFlush();
+    }
+
+    /**
+     * Buffers a new pin like {@link #addNewEntry}.
+     */
+    @Override
+    public void append(long arrivalMillis, long duration, int latitudeE7, int longitudeE7,
+                       float accuracy) {
+        addNewEntry(createPin(arrivalMillis, duration, latitudeE7, longitudeE7, accuracy));
+    }
+
+    /**
+     * Buffers new values for a pin like {@link #updateEntry}.
+     */
+    @Override
+    public void update(long arrivalMillis, long duration, int latitudeE7, int longitudeE7,
+                       float accuracy) {
+        updateEntry(createPin(arrivalMillis, duration, latitudeE7, longitudeE7, accuracy));
+    }
+
+    /**
+     * Writes a recovered pin like {@link #restoreEntry}.
+     */
+    @Override
+    public void restore(long arrivalMillis, long duration, int latitudeE7, int longitudeE7,
+                        float accuracy) {
+        restoreEntry(createPin(arrivalMillis, duration, latitudeE7, longitudeE7, accuracy));
+    }
+
+    /**
+     * Writes out buffered pins like {@link #flushPendingWrites}.
+     */
+    @Override
+    public void flush() {
+        flushPendingWrites();
+    }
+
+    private static GeospatialPin createPin(long arrivalMillis, long duration, int latitudeE7,
+                                           int longitudeE7, float accuracy) {
+        GeospatialPin pin =
+                PinRowReader.createPin(arrivalMillis, duration, latitudeE7, longitudeE7);
+        pin.getLocation().setAccuracy(accuracy);
+        return pin;
+    }
+
+    /**
+     * @return a date in {@link Constants#DATABASE_DATE_FORMAT}.
+     */
+    private String formatDay(Date date) {
+        synchronized (DateFormatter) {
+            return DateFormatter.format(date);
+        }
+    }
+
+    /**
+     * @return the start of a day in {@link Constants#DATABASE_DATE_FORMAT}.
+     */
+    private Date parseDay(String day) throws ParseException {
+        synchronized (DateFormatter) {
+            return DateFormatter.parse(day);
+        }
+    }
 
-        database.update(DatabaseHelper.Keys.TABLE_NAME, values, "_id=" + id, null);
+    /**
+     * Buffers a new duration for the pin that arrived at a given time like {@link #updateEntry}.
+     */
+    @Override
+    public boolean updateDuration(long arrivalMillis, long duration) {
+        PinCollector collector = new PinCollector();
+        forEachPin(arrivalMillis, arrivalMillis, collector);
+        if (collector.pins.isEmpty()) {
+            return false;
+        }
+
+        GeospatialPin pin = collector.pins.get(0);
+        pin.setDuration(duration);
+        updateEntry(pin);
+        return true;
     }
 
     /**
@@ -385,8 +1596,174 @@ public class DatabaseAdapter {
      * @param pin The {@link com.clidwin.android.visualimprints.location.GeospatialPin} to remove.
      */
     public void deleteEntry(GeospatialPin pin) {
-        int id = pin.getArrivalTime().hashCode();
+        deleteEntries(Collections.singletonList(pin));
+    }
+
+    /**
+     * Remove a batch of rows, e.g. the rows selected in a list, in a single transaction.
+     *
+     * @param pins The {@link com.clidwin.android.visualimprints.location.GeospatialPin}s to
+     *      remove.
+     */
+    public void deleteEntries(Collection<GeospatialPin> pins) {
+        final long[] ids = new long[pins.size()];
+        final long[] arrivalMillis = new long[pins.size()];
+        int index = 0;
+        for (GeospatialPin pin : pins) {
+            ids[index] = pin.getId();
+            arrivalMillis[index] = pin.getArrivalTime().getTime();
+            journal.remove(pin);
+            dayCache.invalidate(getStartOfDay(arrivalMillis[index]));
+            index++;
+        }
+
+        writeHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (writeLock) {
+                    database.beginTransaction();
+                    try {
+                        for (int i = 0; i < ids.length; i++) {
+                            // The day is recounted from its rows, so all of them must be live.
+                            archiver.unsealDayOf(arrivalMillis[i]);
+                            writer.delete(ids[i], arrivalMillis[i]);
+                        }
+                        database.setTransactionSuccessful();
+                    } finally {
+                        database.endTransaction();
+                    }
+                    // The rows may have been read back in before they were deleted.
+                    for (long arrival : arrivalMillis) {
+                        dayCache.invalidate(getStartOfDay(arrival));
+                    }
+                }
+            }
+        });
+    }
 
-        database.delete(DatabaseHelper.Keys.TABLE_NAME, "_id=" + id, null);
+    /**
+     * Remove every row that arrived within a time range, e.g. a stretch of GPS noise, with a
+     * handful of set-based statements in a single transaction.
+     *
+     * @param fromMillis The start of the range (inclusive).
+     * @param toMillis The end of the range (inclusive).
+     */
+    public void deleteRange(long fromMillis, long toMillis) {
+        deleteMatching(fromMillis, toMillis,
+                Integer.MIN_VALUE, Integer.MAX_VALUE, Integer.MIN_VALUE, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Remove every row located inside a bounding box that arrived within a time range, in a
+     * single transaction.
+     *
+     * @param minLatitude The southern edge of the box.
+     * @param minLongitude The western edge of the box.
+     * @param maxLatitude The northern edge of the box.
+     * @param maxLongitude The eastern edge of the box.
+     * @param fromMillis The start of the time range (inclusive).
+     * @param toMillis The end of the time range (inclusive).
+     */
+    public void deleteWhere(double minLatitude, double minLongitude, double maxLatitude,
+                            double maxLongitude, long fromMillis, long toMillis) {
+        deleteMatching(fromMillis, toMillis,
+                FixedPoint.toE7(minLatitude), FixedPoint.toE7(maxLatitude),
+                FixedPoint.toE7(minLongitude), FixedPoint.toE7(maxLongitude));
+    }
+
+    /**
+     * Deletes the rows matching a time range and fixed-point box on the writer thread.
+     */
+    private void deleteMatching(final long fromMillis, final long toMillis,
+                                final int minLatitudeE7, final int maxLatitudeE7,
+                                final int minLongitudeE7, final int maxLongitudeE7) {
+        writeHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (writeLock) {
+                    // Buffered pins are written first, so that matching ones are deleted too.
+                    flushPendingWrites();
+
+                    int deleted;
+                    database.beginTransaction();
+                    try {
+                        archiver.unsealOverlapping(fromMillis, toMillis,
+                                minLatitudeE7, maxLatitudeE7, minLongitudeE7, maxLongitudeE7);
+                        deleted = writer.deleteMatching(fromMillis, toMillis,
+                                minLatitudeE7, maxLatitudeE7, minLongitudeE7, maxLongitudeE7);
+                        database.setTransactionSuccessful();
+                    } finally {
+                        database.endTransaction();
+                    }
+                    dayCache.invalidateAll();
+                    Log.d(TAG, deleted + " entries deleted.");
+                }
+            }
+        });
+    }
+
+    /**
+     * Picks pins out of a set of pin columns.
+     */
+    private interface PinFilter {
+        boolean accepts(PinColumns pins, int index);
+    }
+
+    /**
+     * Keeps the pins that arrived on any of a set of local days.
+     */
+    private class DatesFilter implements PinFilter {
+        final long[] dayStarts;
+        final long[] dayEnds;
+        long fromMillis = Long.MAX_VALUE;
+        long toMillis = Long.MIN_VALUE;
+
+        /**
+         * @param dates The days, formatted as in {@link Constants#DATABASE_DATE_FORMAT}.
+         *      Unreadable days match nothing.
+         */
+        DatesFilter(String[] dates) {
+            dayStarts = new long[dates.length];
+            dayEnds = new long[dates.length];
+            Calendar day = Calendar.getInstance();
+            for (int i = 0; i < dates.length; i++) {
+                try {
+                    day.setTime(parseDay(dates[i]));
+                } catch (ParseException e) {
+                    Log.e(TAG, "Unreadable date " + dates[i], e);
+                    dayStarts[i] = Long.MAX_VALUE;
+                    dayEnds[i] = Long.MIN_VALUE;
+                    continue;
+                }
+                dayStarts[i] = day.getTimeInMillis();
+                day.add(Calendar.DAY_OF_MONTH, 1);
+                dayEnds[i] = day.getTimeInMillis() - 1;
+                fromMillis = Math.min(fromMillis, dayStarts[i]);
+                toMillis = Math.max(toMillis, dayEnds[i]);
+            }
+        }
+
+        @Override
+        public boolean accepts(PinColumns pins, int index) {
+            long arrivalMillis = pins.getArrivalMillis(index);
+            for (int i = 0; i < dayStarts.length; i++) {
+                if (arrivalMillis >= dayStarts[i] && arrivalMillis <= dayEnds[i]) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Gathers visited pins into a list for the methods that still return one.
+     */
+    private static class PinCollector implements PinVisitor {
+        final ArrayList<GeospatialPin> pins = new ArrayList<>();
+
+        @Override
+        public void visitPin(GeospatialPin pin) {
+            pins.add(pin);
+        }
     }
 }
@@ -1,9 +1,24 @@
 package com.clidwin.android.visualimprints.storage;
 
 import android.content.Context;
+import android.database.Cursor;
+import android.database.SQLException;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
 import android.provider.BaseColumns;
+import android.util.Log;
+
+import com.clidwin.android.visualimprints.Constants;
+import com.clidwin.android.visualimprints.location.FixedPoint;
+import com.clidwin.android.visualimprints.location.Geohash;
+import com.clidwin.android.visualimprints.location.PinColumns;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
 
 /**
  * Class handling the creation, deletion, and upgrade of the database.
@@ -12,8 +27,10 @@ import android.provider.BaseColumns;
  * @version May 06, 2015
  */
 public class DatabaseHelper extends SQLiteOpenHelper {
-    private static final int DATABASE_VERSION = 5;
-    private static final String DATABASE_NAME = "GeospatialPins.db";
+    private static final String TAG = "vi-database-helper";
+
+    private static final int DATABASE_VERSION = 16;
+    static final String DATABASE_NAME = "GeospatialPins.db";
 
     private static final String REAL_TYPE = " REAL";
     private static final String NUMERIC_TYPE = " NUMERIC";
@@ -29,35 +46,572 @@ public class DatabaseHelper extends SQLiteOpenHelper {
                     Keys.COLUMN_NAME_ARRIVAL_TIME + TEXT_TYPE + COMMA_SEP +
                     Keys.COLUMN_NAME_ADDRESS + TEXT_TYPE + COMMA_SEP +
                     Keys.COLUMN_NAME_DURATION + INTEGER_TYPE + COMMA_SEP +
-                    Keys.COLUMN_NAME_LOCATION_LAT + REAL_TYPE + COMMA_SEP +
-                    Keys.COLUMN_NAME_LOCATION_LONG + REAL_TYPE +
+                    Keys.COLUMN_NAME_LATITUDE_E7 + INTEGER_TYPE + COMMA_SEP +
+                    Keys.COLUMN_NAME_LONGITUDE_E7 + INTEGER_TYPE + COMMA_SEP +
+                    Keys.COLUMN_NAME_ARRIVAL_MILLIS + INTEGER_TYPE + COMMA_SEP +
+                    Keys.COLUMN_NAME_END_MILLIS + INTEGER_TYPE + COMMA_SEP +
+                    Keys.COLUMN_NAME_GEOHASH + INTEGER_TYPE + COMMA_SEP +
+                    Keys.COLUMN_NAME_ACCURACY + REAL_TYPE +
+                    " )";
+
+    // Index backing time range queries; arrival times identify pins, so it is unique
+    private static final String ARRIVAL_INDEX_CREATE =
+            "CREATE UNIQUE INDEX IF NOT EXISTS " + Keys.INDEX_NAME_ARRIVAL + " ON " +
+                    Keys.TABLE_NAME + " (" + Keys.COLUMN_NAME_ARRIVAL_MILLIS + ")";
+
+    // Index backing proximity queries; every geohash cell is a contiguous range of it
+    private static final String GEOHASH_INDEX_CREATE =
+            "CREATE INDEX IF NOT EXISTS " + Keys.INDEX_NAME_GEOHASH + " ON " + Keys.TABLE_NAME +
+                    " (" + Keys.COLUMN_NAME_GEOHASH + ")";
+
+    // R*Tree spatial index kept alongside the pins table
+    private static final String SPATIAL_INDEX_CREATE =
+            "CREATE VIRTUAL TABLE IF NOT EXISTS " + SpatialIndexKeys.TABLE_NAME +
+                    " USING rtree(" +
+                    SpatialIndexKeys.COLUMN_NAME_ID + COMMA_SEP +
+                    SpatialIndexKeys.COLUMN_NAME_MIN_LAT + COMMA_SEP +
+                    SpatialIndexKeys.COLUMN_NAME_MAX_LAT + COMMA_SEP +
+                    SpatialIndexKeys.COLUMN_NAME_MIN_LONG + COMMA_SEP +
+                    SpatialIndexKeys.COLUMN_NAME_MAX_LONG + ")";
+
+    // Hourly rollup of pin counts and dwell time, kept in step with the pins table
+    private static final String HOURLY_ROLLUP_TABLE_CREATE =
+            "CREATE TABLE IF NOT EXISTS " + HourlyRollupKeys.TABLE_NAME + " (" +
+                    HourlyRollupKeys.COLUMN_NAME_EPOCH_HOUR + " INTEGER PRIMARY KEY," +
+                    HourlyRollupKeys.COLUMN_NAME_PIN_COUNT + INTEGER_TYPE + COMMA_SEP +
+                    HourlyRollupKeys.COLUMN_NAME_DWELL_MILLIS + INTEGER_TYPE +
+                    " )";
+
+    // One summary row per local day, kept in step with the pins table
+    private static final String DAYS_TABLE_CREATE =
+            "CREATE TABLE IF NOT EXISTS " + DaysKeys.TABLE_NAME + " (" +
+                    DaysKeys.COLUMN_NAME_DAY + " TEXT PRIMARY KEY," +
+                    DaysKeys.COLUMN_NAME_PIN_COUNT + INTEGER_TYPE + COMMA_SEP +
+                    DaysKeys.COLUMN_NAME_FIRST_MILLIS + INTEGER_TYPE + COMMA_SEP +
+                    DaysKeys.COLUMN_NAME_LAST_MILLIS + INTEGER_TYPE + COMMA_SEP +
+                    DaysKeys.COLUMN_NAME_DWELL_MILLIS + INTEGER_TYPE + COMMA_SEP +
+                    DaysKeys.COLUMN_NAME_MIN_LAT_E7 + INTEGER_TYPE + COMMA_SEP +
+                    DaysKeys.COLUMN_NAME_MAX_LAT_E7 + INTEGER_TYPE + COMMA_SEP +
+                    DaysKeys.COLUMN_NAME_MIN_LONG_E7 + INTEGER_TYPE + COMMA_SEP +
+                    DaysKeys.COLUMN_NAME_MAX_LONG_E7 + INTEGER_TYPE +
                     " )";
 
-    // Database deletion statement
+    // Compressed pins of sealed days, which no longer have rows in the pins table; month
+    // partition files hold a table of the same layout
+    static final String SEGMENTS_TABLE_CREATE =
+            "CREATE TABLE IF NOT EXISTS " + SegmentKeys.TABLE_NAME + " (" +
+                    SegmentKeys.COLUMN_NAME_DAY + " TEXT PRIMARY KEY," +
+                    SegmentKeys.COLUMN_NAME_FIRST_MILLIS + INTEGER_TYPE + COMMA_SEP +
+                    SegmentKeys.COLUMN_NAME_LAST_MILLIS + INTEGER_TYPE + COMMA_SEP +
+                    SegmentKeys.COLUMN_NAME_PIN_COUNT + INTEGER_TYPE + COMMA_SEP +
+                    SegmentKeys.COLUMN_NAME_DATA + " BLOB" +
+                    " )";
+
+    private static final String SEGMENTS_INDEX_CREATE =
+            "CREATE INDEX IF NOT EXISTS " + SegmentKeys.INDEX_NAME_RANGE + " ON " +
+                    SegmentKeys.TABLE_NAME + " (" + SegmentKeys.COLUMN_NAME_FIRST_MILLIS + ")";
+
+    // Months whose sealed days were moved out to their own partition files
+    private static final String PARTITIONS_TABLE_CREATE =
+            "CREATE TABLE IF NOT EXISTS " + PartitionKeys.TABLE_NAME + " (" +
+                    PartitionKeys.COLUMN_NAME_MONTH + " TEXT PRIMARY KEY," +
+                    PartitionKeys.COLUMN_NAME_FIRST_MILLIS + INTEGER_TYPE + COMMA_SEP +
+                    PartitionKeys.COLUMN_NAME_LAST_MILLIS + INTEGER_TYPE + COMMA_SEP +
+                    PartitionKeys.COLUMN_NAME_PIN_COUNT + INTEGER_TYPE +
+                    " )";
+
+    // Database deletion statements
     private static final String SQL_DELETE_ENTRIES =
             "DROP TABLE IF EXISTS " + Keys.TABLE_NAME;
+    private static final String SQL_DELETE_SPATIAL_INDEX =
+            "DROP TABLE IF EXISTS " + SpatialIndexKeys.TABLE_NAME;
+    private static final String SQL_DELETE_HOURLY_ROLLUP =
+            "DROP TABLE IF EXISTS " + HourlyRollupKeys.TABLE_NAME;
+    private static final String SQL_DELETE_DAYS =
+            "DROP TABLE IF EXISTS " + DaysKeys.TABLE_NAME;
+    private static final String SQL_DELETE_SEGMENTS =
+            "DROP TABLE IF EXISTS " + SegmentKeys.TABLE_NAME;
+    private static final String SQL_DELETE_PARTITIONS =
+            "DROP TABLE IF EXISTS " + PartitionKeys.TABLE_NAME;
 
     public DatabaseHelper(Context context) {
         super(context, DATABASE_NAME, null, DATABASE_VERSION);
+
+        // Lets readers use their own connections while the writer thread holds the database.
+        setWriteAheadLoggingEnabled(true);
     }
 
     @Override
     public void onCreate(SQLiteDatabase db) {
         db.execSQL(GEOSPATIAL_PINS_TABLE_CREATE);
+        db.execSQL(ARRIVAL_INDEX_CREATE);
+        db.execSQL(GEOHASH_INDEX_CREATE);
+        db.execSQL(HOURLY_ROLLUP_TABLE_CREATE);
+        db.execSQL(DAYS_TABLE_CREATE);
+        db.execSQL(SEGMENTS_TABLE_CREATE);
+        db.execSQL(SEGMENTS_INDEX_CREATE);
+        db.execSQL(PARTITIONS_TABLE_CREATE);
+        createSpatialIndex(db);
     }
 
     @Override
     public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
-        // This database is only a cache for online data, so its upgrade policy is
-        // to simply to discard the data and start over
-        //TODO(clidwin): Transfer (don't delete) data on upgrade.
-        db.execSQL(SQL_DELETE_ENTRIES);
-        onCreate(db);
+        // Versions before 5 predate the current pins layout and cannot be migrated.
+        if (oldVersion < 5) {
+            resetDatabase(db);
+            return;
+        }
+
+        if (oldVersion < 6) {
+            upgradeToVersion6(db);
+        }
+        if (oldVersion < 7) {
+            upgradeToVersion7(db);
+        }
+        if (oldVersion < 8) {
+            upgradeToVersion8(db);
+        }
+        if (oldVersion < 9) {
+            upgradeToVersion9(db);
+        }
+        if (oldVersion < 10) {
+            upgradeToVersion10(db);
+        }
+        if (oldVersion < 11) {
+            upgradeToVersion11(db);
+        }
+        if (oldVersion < 12) {
+            upgradeToVersion12(db);
+        }
+        if (oldVersion < 13) {
+            upgradeToVersion13(db);
+        }
+        if (oldVersion < 14) {
+            upgradeToVersion14(db);
+        }
+        if (oldVersion < 15) {
+            upgradeToVersion15(db);
+        }
+        if (oldVersion < 16) {
+            upgradeToVersion16(db);
+        }
     }
 
     @Override
     public void onDowngrade(SQLiteDatabase db, int oldVersion, int newVersion) {
-        onUpgrade(db, oldVersion, newVersion);
+        resetDatabase(db);
+    }
+
+    /**
+     * Discards all stored data and recreates the schema from scratch.
+     *
+     * @param db The database to reset.
+     */
+    private void resetDatabase(SQLiteDatabase db) {
+        db.execSQL(SQL_DELETE_ENTRIES);
+        db.execSQL(SQL_DELETE_HOURLY_ROLLUP);
+        db.execSQL(SQL_DELETE_DAYS);
+        db.execSQL(SQL_DELETE_SEGMENTS);
+        db.execSQL(SQL_DELETE_PARTITIONS);
+        try {
+            db.execSQL(SQL_DELETE_SPATIAL_INDEX);
+        } catch (SQLException e) {
+            Log.e(TAG, "Unable to drop spatial index", e);
+        }
+        onCreate(db);
+    }
+
+    /**
+     * Creates the R*Tree spatial index. Some SQLite builds are compiled without the R*Tree
+     * module, in which case spatial queries fall back to scanning the pins table.
+     *
+     * @param db The database to create the index in.
+     * @return true if the spatial index exists, else false.
+     */
+    private boolean createSpatialIndex(SQLiteDatabase db) {
+        try {
+            db.execSQL(SPATIAL_INDEX_CREATE);
+            return true;
+        } catch (SQLException e) {
+            Log.e(TAG, "R*Tree module unavailable, spatial index disabled", e);
+            return false;
+        }
+    }
+
+    /**
+     * Checks whether the R*Tree spatial index table exists in the database.
+     *
+     * @param db The database to check.
+     * @return true if the spatial index exists, else false.
+     */
+    public static boolean hasSpatialIndex(SQLiteDatabase db) {
+        Cursor c = db.rawQuery(
+                "SELECT 1 FROM sqlite_master WHERE type='table' AND name=?",
+                new String[] {SpatialIndexKeys.TABLE_NAME});
+        boolean exists = c.moveToFirst();
+        c.close();
+        return exists;
+    }
+
+    /**
+     * Checks whether a table has a column.
+     *
+     * @param db The database to check.
+     * @param table The name of the table.
+     * @param column The name of the column.
+     * @return true if the column exists, else false.
+     */
+    private static boolean hasColumn(SQLiteDatabase db, String table, String column) {
+        Cursor c = db.rawQuery("PRAGMA table_info(" + table + ")", null);
+        try {
+            int nameIndex = c.getColumnIndexOrThrow("name");
+            while (c.moveToNext()) {
+                if (column.equals(c.getString(nameIndex))) {
+                    return true;
+                }
+            }
+            return false;
+        } finally {
+            c.close();
+        }
+    }
+
+    /**
+     * Adds epoch millisecond arrival and end columns and fills them in from the text
+     * date and time columns of the existing rows.
+     *
+     * @param db The database being upgraded (already inside the upgrade transaction).
+     */
+    private void upgradeToVersion6(SQLiteDatabase db) {
+        db.execSQL("ALTER TABLE " + Keys.TABLE_NAME + " ADD COLUMN " +
+                Keys.COLUMN_NAME_ARRIVAL_MILLIS + INTEGER_TYPE);
+        db.execSQL("ALTER TABLE " + Keys.TABLE_NAME + " ADD COLUMN " +
+                Keys.COLUMN_NAME_END_MILLIS + INTEGER_TYPE);
+
+        SimpleDateFormat dateTimeFormatter =
+                new SimpleDateFormat(Constants.DATABASE_DATE_TIME_FORMAT, Locale.getDefault());
+        SQLiteStatement update = db.compileStatement(
+                "UPDATE " + Keys.TABLE_NAME + " SET " +
+                        Keys.COLUMN_NAME_ARRIVAL_MILLIS + "=?, " +
+                        Keys.COLUMN_NAME_END_MILLIS + "=? WHERE " + Keys._ID + "=?");
+
+        String[] columns = {
+                Keys._ID,
+                Keys.COLUMN_NAME_ARRIVAL_DATE,
+                Keys.COLUMN_NAME_ARRIVAL_TIME,
+                Keys.COLUMN_NAME_DURATION
+        };
+        Cursor c = db.query(Keys.TABLE_NAME, columns, null, null, null, null, null);
+        try {
+            while (c.moveToNext()) {
+                long arrivalMillis;
+                try {
+                    arrivalMillis = dateTimeFormatter.parse(
+                            c.getString(1) + " " + c.getString(2)).getTime();
+                } catch (ParseException e) {
+                    Log.e(TAG, "Unable to migrate row " + c.getLong(0), e);
+                    continue;
+                }
+
+                update.bindLong(1, arrivalMillis);
+                update.bindLong(2, arrivalMillis + c.getLong(3));
+                update.bindLong(3, c.getLong(0));
+                update.executeUpdateDelete();
+            }
+        } finally {
+            c.close();
+            update.close();
+        }
+
+        // Unparseable rows could never be read back into pins, so drop them with the old format.
+        db.delete(Keys.TABLE_NAME, Keys.COLUMN_NAME_ARRIVAL_MILLIS + " IS NULL", null);
+        db.execSQL(ARRIVAL_INDEX_CREATE);
+    }
+
+    /**
+     * Creates the spatial index and fills it with the location of every existing pin.
+     *
+     * @param db The database being upgraded (already inside the upgrade transaction).
+     */
+    private void upgradeToVersion7(SQLiteDatabase db) {
+        if (createSpatialIndex(db)) {
+            db.execSQL("INSERT INTO " + SpatialIndexKeys.TABLE_NAME + " SELECT " +
+                    Keys._ID + COMMA_SEP +
+                    Keys.LEGACY_COLUMN_NAME_LOCATION_LAT + COMMA_SEP +
+                    Keys.LEGACY_COLUMN_NAME_LOCATION_LAT + COMMA_SEP +
+                    Keys.LEGACY_COLUMN_NAME_LOCATION_LONG + COMMA_SEP +
+                    Keys.LEGACY_COLUMN_NAME_LOCATION_LONG +
+                    " FROM " + Keys.TABLE_NAME);
+        }
+    }
+
+    /**
+     * Creates the hourly rollup table and fills it from the existing pins.
+     *
+     * @param db The database being upgraded (already inside the upgrade transaction).
+     */
+    private void upgradeToVersion8(SQLiteDatabase db) {
+        db.execSQL(HOURLY_ROLLUP_TABLE_CREATE);
+        db.execSQL("INSERT INTO " + HourlyRollupKeys.TABLE_NAME + " SELECT " +
+                Keys.COLUMN_NAME_ARRIVAL_MILLIS + " / " + HourlyRollupKeys.HOUR_IN_MILLIS +
+                " AS hour, COUNT(*), SUM(" + Keys.COLUMN_NAME_DURATION + ")" +
+                " FROM " + Keys.TABLE_NAME + " GROUP BY hour");
+    }
+
+    /**
+     * Creates the day summary table and fills it from the existing pins.
+     *
+     * @param db The database being upgraded (already inside the upgrade transaction).
+     */
+    private void upgradeToVersion9(SQLiteDatabase db) {
+        db.execSQL(DAYS_TABLE_CREATE);
+        fillDaysTable(db, Keys.LEGACY_COLUMN_NAME_LOCATION_LAT,
+                Keys.LEGACY_COLUMN_NAME_LOCATION_LONG);
+    }
+
+    /**
+     * Replaces the REAL latitude and longitude columns with fixed-point INTEGER columns. SQLite
+     * cannot change a column's type in place, so the pins table is rebuilt under its own name
+     * and the day summaries, whose bounds are fixed-point as well, are recomputed.
+     *
+     * @param db The database being upgraded (already inside the upgrade transaction).
+     */
+    private void upgradeToVersion10(SQLiteDatabase db) {
+        String oldTable = Keys.TABLE_NAME + "_v9";
+        db.execSQL("ALTER TABLE " + Keys.TABLE_NAME + " RENAME TO " + oldTable);
+        db.execSQL(GEOSPATIAL_PINS_TABLE_CREATE);
+        String copiedColumns =
+                Keys._ID + COMMA_SEP +
+                Keys.COLUMN_NAME_ARRIVAL_DATE + COMMA_SEP +
+                Keys.COLUMN_NAME_ARRIVAL_TIME + COMMA_SEP +
+                Keys.COLUMN_NAME_ADDRESS + COMMA_SEP +
+                Keys.COLUMN_NAME_DURATION + COMMA_SEP;
+        // Columns added by later versions are left to their own upgrades.
+        db.execSQL("INSERT INTO " + Keys.TABLE_NAME + " (" + copiedColumns +
+                Keys.COLUMN_NAME_LATITUDE_E7 + COMMA_SEP +
+                Keys.COLUMN_NAME_LONGITUDE_E7 + COMMA_SEP +
+                Keys.COLUMN_NAME_ARRIVAL_MILLIS + COMMA_SEP +
+                Keys.COLUMN_NAME_END_MILLIS + ") SELECT " + copiedColumns +
+                "CAST(ROUND(" + Keys.LEGACY_COLUMN_NAME_LOCATION_LAT + "*" +
+                FixedPoint.SCALE + ") AS INTEGER)" + COMMA_SEP +
+                "CAST(ROUND(" + Keys.LEGACY_COLUMN_NAME_LOCATION_LONG + "*" +
+                FixedPoint.SCALE + ") AS INTEGER)" + COMMA_SEP +
+                Keys.COLUMN_NAME_ARRIVAL_MILLIS + COMMA_SEP +
+                Keys.COLUMN_NAME_END_MILLIS +
+                " FROM " + oldTable);
+        // Dropping the old table drops the arrival index that moved with it.
+        db.execSQL("DROP TABLE " + oldTable);
+        db.execSQL(ARRIVAL_INDEX_CREATE);
+
+        db.execSQL(SQL_DELETE_DAYS);
+        db.execSQL(DAYS_TABLE_CREATE);
+        fillDaysTable(db, Keys.COLUMN_NAME_LATITUDE_E7, Keys.COLUMN_NAME_LONGITUDE_E7);
+    }
+
+    /**
+     * Adds the geohash column, computes it for every existing pin and indexes it.
+     *
+     * @param db The database being upgraded (already inside the upgrade transaction).
+     */
+    private void upgradeToVersion11(SQLiteDatabase db) {
+        // A pins table rebuilt by an earlier step of this upgrade already has the column.
+        if (!hasColumn(db, Keys.TABLE_NAME, Keys.COLUMN_NAME_GEOHASH)) {
+            db.execSQL("ALTER TABLE " + Keys.TABLE_NAME + " ADD COLUMN " +
+                    Keys.COLUMN_NAME_GEOHASH + INTEGER_TYPE);
+        }
+
+        SQLiteStatement update = db.compileStatement(
+                "UPDATE " + Keys.TABLE_NAME + " SET " +
+                        Keys.COLUMN_NAME_GEOHASH + "=? WHERE " + Keys._ID + "=?");
+
+        String[] columns = {
+                Keys._ID,
+                Keys.COLUMN_NAME_LATITUDE_E7,
+                Keys.COLUMN_NAME_LONGITUDE_E7
+        };
+        Cursor c = db.query(Keys.TABLE_NAME, columns, null, null, null, null, null);
+        try {
+            while (c.moveToNext()) {
+                update.bindLong(1, Geohash.encode(c.getInt(1), c.getInt(2)));
+                update.bindLong(2, c.getLong(0));
+                update.executeUpdateDelete();
+            }
+        } finally {
+            c.close();
+            update.close();
+        }
+
+        db.execSQL(GEOHASH_INDEX_CREATE);
+    }
+
+    /**
+     * Creates the table for sealed days. Days are sealed by the archiver afterwards, so
+     * nothing is moved during the upgrade.
+     *
+     * @param db The database being upgraded (already inside the upgrade transaction).
+     */
+    private void upgradeToVersion12(SQLiteDatabase db) {
+        db.execSQL(SEGMENTS_TABLE_CREATE);
+        db.execSQL(SEGMENTS_INDEX_CREATE);
+    }
+
+    /**
+     * Makes the arrival index unique, so that new rows can take ids assigned by SQLite instead
+     * of ids derived from their arrival time. Existing rows keep their ids.
+     *
+     * @param db The database being upgraded (already inside the upgrade transaction).
+     */
+    private void upgradeToVersion13(SQLiteDatabase db) {
+        db.execSQL("DROP INDEX IF EXISTS " + Keys.INDEX_NAME_ARRIVAL);
+        // Ids used to be derived from arrival times, so a repeated arrival was already rejected
+        // as a duplicate id; this only guards the index against rows written by hand.
+        db.execSQL("DELETE FROM " + Keys.TABLE_NAME + " WHERE " +
+                Keys.COLUMN_NAME_ARRIVAL_MILLIS + " IS NOT NULL AND " + Keys._ID + " NOT IN (" +
+                "SELECT MIN(" + Keys._ID + ") FROM " + Keys.TABLE_NAME +
+                " GROUP BY " + Keys.COLUMN_NAME_ARRIVAL_MILLIS + ")");
+        if (hasSpatialIndex(db)) {
+            db.execSQL("DELETE FROM " + SpatialIndexKeys.TABLE_NAME + " WHERE " +
+                    SpatialIndexKeys.COLUMN_NAME_ID + " NOT IN (SELECT " + Keys._ID +
+                    " FROM " + Keys.TABLE_NAME + ")");
+        }
+        db.execSQL(ARRIVAL_INDEX_CREATE);
+    }
+
+    /**
+     * Creates the catalog of month partition files. Old months are moved out later by the
+     * regular archive passes, so nothing is moved during the upgrade.
+     *
+     * @param db The database being upgraded (already inside the upgrade transaction).
+     */
+    private void upgradeToVersion14(SQLiteDatabase db) {
+        db.execSQL(PARTITIONS_TABLE_CREATE);
+    }
+
+    /**
+     * Adds the accuracy column. Accuracies were never recorded before, so existing pins leave
+     * it empty.
+     *
+     * @param db The database being upgraded (already inside the upgrade transaction).
+     */
+    private void upgradeToVersion15(SQLiteDatabase db) {
+        // A pins table rebuilt by an earlier step of this upgrade already has the column.
+        if (!hasColumn(db, Keys.TABLE_NAME, Keys.COLUMN_NAME_ACCURACY)) {
+            db.execSQL("ALTER TABLE " + Keys.TABLE_NAME + " ADD COLUMN " +
+                    Keys.COLUMN_NAME_ACCURACY + REAL_TYPE);
+        }
+    }
+
+    /**
+     * Keys the hourly rollup by local hours instead of UTC hours, which split the hours of
+     * zones offset by half or quarter hours. The pins and sealed days kept in this database are
+     * counted again exactly. Months already moved to partition files are not opened here, so
+     * their hours keep their totals under the local hour each UTC hour starts in.
+     *
+     * @param db The database being upgraded (already inside the upgrade transaction).
+     */
+    private void upgradeToVersion16(SQLiteDatabase db) {
+        // Each value holds a pin count and a total dwell time.
+        TreeMap<Long, long[]> utcHours = new TreeMap<>();
+        TreeMap<Long, long[]> localHours = new TreeMap<>();
+
+        Cursor c = db.query(HourlyRollupKeys.TABLE_NAME, null, null, null, null, null, null);
+        try {
+            while (c.moveToNext()) {
+                addToHour(utcHours, c.getLong(0), c.getLong(1), c.getLong(2));
+            }
+        } finally {
+            c.close();
+        }
+
+        // Moves the pins that can still be read from their UTC hour to their local hour.
+        PinColumns pins = new PinColumns();
+        c = db.query(Keys.TABLE_NAME,
+                new String[] {Keys.COLUMN_NAME_ARRIVAL_MILLIS, Keys.COLUMN_NAME_DURATION},
+                Keys.COLUMN_NAME_ARRIVAL_MILLIS + " IS NOT NULL", null, null, null, null);
+        try {
+            while (c.moveToNext()) {
+                moveToLocalHour(utcHours, localHours, c.getLong(0), c.getLong(1));
+            }
+        } finally {
+            c.close();
+        }
+        c = db.query(SegmentKeys.TABLE_NAME, new String[] {SegmentKeys.COLUMN_NAME_DATA},
+                null, null, null, null, null);
+        try {
+            while (c.moveToNext()) {
+                pins.clear();
+                PinSegmentCodec.decode(c.getBlob(0), pins);
+                for (int i = 0; i < pins.size(); i++) {
+                    moveToLocalHour(utcHours, localHours,
+                            pins.getArrivalMillis(i), pins.getDuration(i));
+                }
+            }
+        } finally {
+            c.close();
+        }
+
+        // What is left belongs to partitioned months.
+        for (Map.Entry<Long, long[]> hour : utcHours.entrySet()) {
+            long[] totals = hour.getValue();
+            if (totals[0] > 0) {
+                addToHour(localHours,
+                        PinWriter.getEpochHour(hour.getKey() * HourlyRollupKeys.HOUR_IN_MILLIS),
+                        totals[0], totals[1]);
+            }
+        }
+
+        db.delete(HourlyRollupKeys.TABLE_NAME, null, null);
+        SQLiteStatement insert = db.compileStatement(
+                "INSERT INTO " + HourlyRollupKeys.TABLE_NAME + " VALUES (?,?,?)");
+        try {
+            for (Map.Entry<Long, long[]> hour : localHours.entrySet()) {
+                insert.bindLong(1, hour.getKey());
+                insert.bindLong(2, hour.getValue()[0]);
+                insert.bindLong(3, hour.getValue()[1]);
+                insert.executeInsert();
+            }
+        } finally {
+            insert.close();
+        }
+    }
+
+    private static void moveToLocalHour(TreeMap<Long, long[]> utcHours,
+                                        TreeMap<Long, long[]> localHours,
+                                        long arrivalMillis, long duration) {
+        addToHour(utcHours, arrivalMillis / HourlyRollupKeys.HOUR_IN_MILLIS, -1, -duration);
+        addToHour(localHours, PinWriter.getEpochHour(arrivalMillis), 1, duration);
+    }
+
+    private static void addToHour(TreeMap<Long, long[]> hours, long hour, long pinCount,
+                                  long dwellMillis) {
+        long[] totals = hours.get(hour);
+        if (totals == null) {
+            totals = new long[2];
+            hours.put(hour, totals);
+        }
+        totals[0] += pinCount;
+        totals[1] += dwellMillis;
+    }
+
+    /**
+     * Fills the day summary table from the existing pins.
+     *
+     * @param db The database being upgraded.
+     * @param latitudeColumn The pins column holding latitudes in this version of the schema.
+     * @param longitudeColumn The pins column holding longitudes in this version of the schema.
+     */
+    private void fillDaysTable(SQLiteDatabase db, String latitudeColumn, String longitudeColumn) {
+        db.execSQL("INSERT INTO " + DaysKeys.TABLE_NAME + " SELECT " +
+                Keys.COLUMN_NAME_ARRIVAL_DATE + COMMA_SEP +
+                "COUNT(*)" + COMMA_SEP +
+                "MIN(" + Keys.COLUMN_NAME_ARRIVAL_MILLIS + ")" + COMMA_SEP +
+                "MAX(" + Keys.COLUMN_NAME_ARRIVAL_MILLIS + ")" + COMMA_SEP +
+                "SUM(" + Keys.COLUMN_NAME_DURATION + ")" + COMMA_SEP +
+                "MIN(" + latitudeColumn + ")" + COMMA_SEP +
+                "MAX(" + latitudeColumn + ")" + COMMA_SEP +
+                "MIN(" + longitudeColumn + ")" + COMMA_SEP +
+                "MAX(" + longitudeColumn + ")" +
+                " FROM " + Keys.TABLE_NAME + " GROUP BY " + Keys.COLUMN_NAME_ARRIVAL_DATE);
     }
 
     /**
@@ -65,22 +619,35 @@ public class DatabaseHelper extends SQLiteOpenHelper {
      */
     public static class Keys implements BaseColumns {
         public static final String TABLE_NAME = "pins";
+        public static final String INDEX_NAME_ARRIVAL = "pins_arrival_index";
+        public static final String INDEX_NAME_GEOHASH = "pins_geohash_index";
         // Column names
         public static final String COLUMN_NAME_NULLABLE = null;
         public static final String COLUMN_NAME_ARRIVAL_DATE = "arrivalDate";
         public static final String COLUMN_NAME_ARRIVAL_TIME = "arrivalTime";
         public static final String COLUMN_NAME_ADDRESS = "address";
         public static final String COLUMN_NAME_DURATION = "duration";
-        public static final String COLUMN_NAME_LOCATION_LAT = "locationLat";
-        public static final String COLUMN_NAME_LOCATION_LONG = "locationLong";
+        public static final String COLUMN_NAME_LATITUDE_E7 = "latE7";
+        public static final String COLUMN_NAME_LONGITUDE_E7 = "longE7";
+        public static final String COLUMN_NAME_ARRIVAL_MILLIS = "arrivalMillis";
+        public static final String COLUMN_NAME_END_MILLIS = "endMillis";
+        public static final String COLUMN_NAME_GEOHASH = "geohash";
+        public static final String COLUMN_NAME_ACCURACY = "accuracy";
+        // Degree columns replaced by the fixed-point ones in version 10, used by migrations only
+        static final String LEGACY_COLUMN_NAME_LOCATION_LAT = "locationLat";
+        static final String LEGACY_COLUMN_NAME_LOCATION_LONG = "locationLong";
         private static String[] allColumns = {
                 Keys._ID,
                 Keys.COLUMN_NAME_ARRIVAL_DATE,
                 Keys.COLUMN_NAME_ADDRESS,
                 Keys.COLUMN_NAME_ARRIVAL_TIME,
                 Keys.COLUMN_NAME_DURATION,
-                Keys.COLUMN_NAME_LOCATION_LAT,
-                Keys.COLUMN_NAME_LOCATION_LONG
+                Keys.COLUMN_NAME_LATITUDE_E7,
+                Keys.COLUMN_NAME_LONGITUDE_E7,
+                Keys.COLUMN_NAME_ARRIVAL_MILLIS,
+                Keys.COLUMN_NAME_END_MILLIS,
+                Keys.COLUMN_NAME_GEOHASH,
+                Keys.COLUMN_NAME_ACCURACY
         };
 
         /**
@@ -90,4 +657,82 @@ public class DatabaseHelper extends SQLiteOpenHelper {
             return allColumns;
         }
     }
+
+    /**
+     * Contains table information for the R*Tree spatial index over pin locations. Each entry
+     * shares its id with the matching row of the pins table.
+     */
+    public static class SpatialIndexKeys {
+        public static final String TABLE_NAME = "pins_rtree";
+        // Column names
+        public static final String COLUMN_NAME_ID = "id";
+        public static final String COLUMN_NAME_MIN_LAT = "minLat";
+        public static final String COLUMN_NAME_MAX_LAT = "maxLat";
+        public static final String COLUMN_NAME_MIN_LONG = "minLong";
+        public static final String COLUMN_NAME_MAX_LONG = "maxLong";
+    }
+
+    /**
+     * Contains table information for the hourly rollup. Each row covers one hour of local time
+     * since the epoch and holds the number of pins arriving in that hour and their total
+     * duration.
+     */
+    public static class HourlyRollupKeys {
+        public static final String TABLE_NAME = "pin_rollup_hourly";
+        public static final long HOUR_IN_MILLIS = 60 * 60 * 1000;
+        // Column names
+        public static final String COLUMN_NAME_EPOCH_HOUR = "epochHour";
+        public static final String COLUMN_NAME_PIN_COUNT = "pinCount";
+        public static final String COLUMN_NAME_DWELL_MILLIS = "dwellMillis";
+    }
+
+    /**
+     * Contains table information for the day summaries. Each row covers one local day, keyed
+     * by the same date string as the pins' arrival date column. Bounds are fixed-point, like
+     * the pins' coordinates.
+     */
+    public static class DaysKeys {
+        public static final String TABLE_NAME = "days";
+        // Column names
+        public static final String COLUMN_NAME_DAY = "day";
+        public static final String COLUMN_NAME_PIN_COUNT = "pinCount";
+        public static final String COLUMN_NAME_FIRST_MILLIS = "firstMillis";
+        public static final String COLUMN_NAME_LAST_MILLIS = "lastMillis";
+        public static final String COLUMN_NAME_DWELL_MILLIS = "dwellMillis";
+        public static final String COLUMN_NAME_MIN_LAT_E7 = "minLatE7";
+        public static final String COLUMN_NAME_MAX_LAT_E7 = "maxLatE7";
+        public static final String COLUMN_NAME_MIN_LONG_E7 = "minLongE7";
+        public static final String COLUMN_NAME_MAX_LONG_E7 = "maxLongE7";
+    }
+
+    /**
+     * Contains table information for sealed days. Each row holds every pin of one local day,
+     * encoded by {@link PinSegmentCodec}, and the arrival times of its first and last pin.
+     * The day keeps its rows in the hourly rollup and day summary tables.
+     */
+    public static class SegmentKeys {
+        public static final String TABLE_NAME = "segments";
+        public static final String INDEX_NAME_RANGE = "segments_range_index";
+        // Column names
+        public static final String COLUMN_NAME_DAY = "day";
+        public static final String COLUMN_NAME_FIRST_MILLIS = "firstMillis";
+        public static final String COLUMN_NAME_LAST_MILLIS = "lastMillis";
+        public static final String COLUMN_NAME_PIN_COUNT = "pinCount";
+        public static final String COLUMN_NAME_DATA = "data";
+    }
+
+    /**
+     * Contains table information for the catalog of month partitions. Each row names a month
+     * whose sealed days live in their own database file rather than the segments table, and
+     * the arrival times of its first and last pin. The month keeps its rows in the hourly
+     * rollup and day summary tables.
+     */
+    public static class PartitionKeys {
+        public static final String TABLE_NAME = "partitions";
+        // Column names
+        public static final String COLUMN_NAME_MONTH = "month";
+        public static final String COLUMN_NAME_FIRST_MILLIS = "firstMillis";
+        public static final String COLUMN_NAME_LAST_MILLIS = "lastMillis";
+        public static final String COLUMN_NAME_PIN_COUNT = "pinCount";
+    }
 }
@@ -0,0 +1,104 @@
+package com.clidwin.android.visualimprints.storage;
+
+import com.clidwin.android.visualimprints.location.FixedPoint;
+
+/**
+ * A row of the day summary table: how many pins were recorded on a local day, when the first
+ * and last of them arrived, how long was spent at them and the area they cover.
+ *
+ * @author Christina Lidwin (clidwin)
+ * @version October 15, 2026
+ */
+public class DaySummary {
+    private final String day;
+    private int pinCount;
+    private long firstMillis;
+    private long lastMillis;
+    private long dwellMillis;
+    private int minLatitudeE7;
+    private int maxLatitudeE7;
+    private int minLongitudeE7;
+    private int maxLongitudeE7;
+
+    DaySummary(String day, int pinCount, long firstMillis, long lastMillis, long dwellMillis,
+               int minLatitudeE7, int maxLatitudeE7, int minLongitudeE7, int maxLongitudeE7) {
+        this.day = day;
+        this.pinCount = pinCount;
+        this.firstMillis = firstMillis;
+        this.lastMillis = lastMillis;
+        this.dwellMillis = dwellMillis;
+        this.minLatitudeE7 = minLatitudeE7;
+        this.maxLatitudeE7 = maxLatitudeE7;
+        this.minLongitudeE7 = minLongitudeE7;
+        this.maxLongitudeE7 = maxLongitudeE7;
+    }
+
+    /**
+     * Folds a pin that has not been written to the database yet into the summary.
+     */
+    void include(long arrivalMillis, long duration, int latitudeE7, int longitudeE7) {
+        pinCount++;
+        firstMillis = Math.min(firstMillis, arrivalMillis);
+        lastMillis = Math.max(lastMillis, arrivalMillis);
+        dwellMillis += duration;
+        minLatitudeE7 = Math.min(minLatitudeE7, latitudeE7);
+        maxLatitudeE7 = Math.max(maxLatitudeE7, latitudeE7);
+        minLongitudeE7 = Math.min(minLongitudeE7, longitudeE7);
+        maxLongitudeE7 = Math.max(maxLongitudeE7, longitudeE7);
+    }
+
+    /**
+     * @return the day in {@link com.clidwin.android.visualimprints.Constants#DATABASE_DATE_FORMAT}.
+     */
+    public String getDay() {
+        return day;
+    }
+
+    public int getPinCount() {
+        return pinCount;
+    }
+
+    public long getFirstMillis() {
+        return firstMillis;
+    }
+
+    public long getLastMillis() {
+        return lastMillis;
+    }
+
+    public long getDwellMillis() {
+        return dwellMillis;
+    }
+
+    public double getMinLatitude() {
+        return FixedPoint.toDegrees(minLatitudeE7);
+    }
+
+    public double getMaxLatitude() {
+        return FixedPoint.toDegrees(maxLatitudeE7);
+    }
+
+    public double getMinLongitude() {
+        return FixedPoint.toDegrees(minLongitudeE7);
+    }
+
+    public double getMaxLongitude() {
+        return FixedPoint.toDegrees(maxLongitudeE7);
+    }
+
+    public int getMinLatitudeE7() {
+        return minLatitudeE7;
+    }
+
+    public int getMaxLatitudeE7() {
+        return maxLatitudeE7;
+    }
+
+    public int getMinLongitudeE7() {
+        return minLongitudeE7;
+    }
+
+    public int getMaxLongitudeE7() {
+        return maxLongitudeE7;
+    }
+}
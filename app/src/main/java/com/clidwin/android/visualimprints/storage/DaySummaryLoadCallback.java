@@ -0,0 +1,18 @@
+package com.clidwin.android.visualimprints.storage;
+
+import java.util.ArrayList;
+
+/**
+ * Receives day summaries that were loaded from the database on a background thread.
+ *
+ * @author Christina Lidwin (clidwin)
+ * @version October 15, 2026
+ */
+public interface DaySummaryLoadCallback {
+    /**
+     * Called on the main thread once the summaries have been read.
+     *
+     * @param summaries A summary of every day with recorded pins, newest first.
+     */
+    void onDaySummariesLoaded(ArrayList<DaySummary> summaries);
+}
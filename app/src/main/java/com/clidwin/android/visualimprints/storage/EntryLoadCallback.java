@@ -0,0 +1,20 @@
+package com.clidwin.android.visualimprints.storage;
+
+import com.clidwin.android.visualimprints.location.GeospatialPin;
+
+import java.util.ArrayList;
+
+/**
+ * Receives entries that were loaded from the database on a background thread.
+ *
+ * @author Christina Lidwin (clidwin)
+ * @version October 15, 2026
+ */
+public interface EntryLoadCallback {
+    /**
+     * Called on the main thread once the entries have been read.
+     *
+     * @param entries The loaded entries, newest first.
+     */
+    void onEntriesLoaded(ArrayList<GeospatialPin> entries);
+}
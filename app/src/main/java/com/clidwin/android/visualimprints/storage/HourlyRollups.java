@@ -0,0 +1,85 @@
+package com.clidwin.android.visualimprints.storage;
+
+import java.util.Arrays;
+
+/**
+ * Rows of the hourly rollup table, held in parallel primitive arrays ordered by hour.
+ *
+ * @author Christina Lidwin (clidwin)
+ * @version October 15, 2026
+ */
+public class HourlyRollups {
+    private long[] epochHours;
+    private int[] pinCounts;
+    private long[] dwellMillis;
+    private int size;
+
+    public HourlyRollups(int capacity) {
+        capacity = Math.max(capacity, 1);
+        epochHours = new long[capacity];
+        pinCounts = new int[capacity];
+        dwellMillis = new long[capacity];
+    }
+
+    /**
+     * Adds pins to an hour. Hours must be added in ascending order; adding to the last hour
+     * again merges into it.
+     *
+     * @param epochHour The number of local hours since the epoch.
+     * @param pinCount The number of pins arriving in the hour.
+     * @param dwell The total duration in milliseconds of those pins.
+     */
+    void add(long epochHour, int pinCount, long dwell) {
+        if (size > 0 && epochHours[size - 1] == epochHour) {
+            pinCounts[size - 1] += pinCount;
+            dwellMillis[size - 1] += dwell;
+            return;
+        }
+
+        if (size == epochHours.length) {
+            int newCapacity = size * 2;
+            epochHours = Arrays.copyOf(epochHours, newCapacity);
+            pinCounts = Arrays.copyOf(pinCounts, newCapacity);
+            dwellMillis = Arrays.copyOf(dwellMillis, newCapacity);
+        }
+        epochHours[size] = epochHour;
+        pinCounts[size] = pinCount;
+        dwellMillis[size] = dwell;
+        size++;
+    }
+
+    /**
+     * @return the number of hours held.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the number of local hours since the epoch of the row at an index.
+     */
+    public long getEpochHour(int index) {
+        return epochHours[index];
+    }
+
+    /**
+     * @return the number of pins arriving in the hour at an index.
+     */
+    public int getPinCount(int index) {
+        return pinCounts[index];
+    }
+
+    /**
+     * @return the total time in milliseconds spent at pins arriving in the hour at an index.
+     */
+    public long getDwellMillis(int index) {
+        return dwellMillis[index];
+    }
+
+    /**
+     * @return the local hour of the day (0-23) of the row at an index.
+     */
+    public int getHourOfDay(int index) {
+        return (int) (((epochHours[index] % 24) + 24) % 24);
+    }
+}
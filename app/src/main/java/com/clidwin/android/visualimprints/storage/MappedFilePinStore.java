@@ -0,0 +1,259 @@
+package com.clidwin.android.visualimprints.storage;
+
+import com.clidwin.android.visualimprints.location.PinColumns;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A {@link PinStore} backed by an append-only file of fixed-size records, mapped into memory.
+ * Records are written in arrival order, so range reads are a binary search followed by a
+ * sequential walk through the mapping, and appends never move existing data.
+ * <p/>
+ * The file starts with a header holding a magic number, the format version and the number of
+ * records, followed by one 28-byte record per pin: the arrival time, the duration, the
+ * fixed-point latitude and longitude, and the accuracy.
+ *
+ * @author Christina Lidwin (clidwin)
+ * @version October 15, 2026
+ */
+public class MappedFilePinStore implements PinStore {
+    private static final int MAGIC = 0x56495053; // "VIPS"
+    private static final int FORMAT_VERSION = 1;
+
+    private static final int HEADER_SIZE = 16;
+    private static final int COUNT_OFFSET = 8;
+    private static final int RECORD_SIZE = 28;
+    private static final int DURATION_OFFSET = 8;
+    private static final int LATITUDE_OFFSET = 16;
+    private static final int LONGITUDE_OFFSET = 20;
+    private static final int ACCURACY_OFFSET = 24;
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private MappedByteBuffer buffer;
+    private int count;
+
+    /**
+     * Opens a store file, creating it if it does not exist.
+     *
+     * @param path The file to store pins in.
+     * @throws IOException if the file cannot be opened or is not a pin store.
+     */
+    public MappedFilePinStore(File path) throws IOException {
+        file = new RandomAccessFile(path, "rw");
+        channel = file.getChannel();
+
+        try {
+            long size = channel.size();
+            if (size == 0) {
+                map(INITIAL_CAPACITY);
+                buffer.putInt(0, MAGIC);
+                buffer.putInt(4, FORMAT_VERSION);
+                buffer.putInt(COUNT_OFFSET, 0);
+            } else {
+                if (size < HEADER_SIZE || size > Integer.MAX_VALUE) {
+                    throw new IOException("Not a pin store: " + path);
+                }
+                buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+                if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != FORMAT_VERSION) {
+                    throw new IOException("Not a pin store: " + path);
+                }
+                count = buffer.getInt(COUNT_OFFSET);
+                if (count < 0 || count > getCapacity()) {
+                    throw new IOException("Corrupt pin store, " + count + " records: " + path);
+                }
+            }
+        } catch (IOException e) {
+            file.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException if the pin arrived before the most recent stored pin.
+     * @throws IllegalStateException if the file cannot be grown.
+     */
+    @Override
+    public synchronized void append(long arrivalMillis, long duration, int latitudeE7,
+                                    int longitudeE7, float accuracy) {
+        if (count > 0 && arrivalMillis < getArrivalMillis(count - 1)) {
+            throw new IllegalArgumentException("Pins must be appended in arrival order");
+        }
+
+        int capacity = getCapacity();
+        if (count == capacity) {
+            try {
+                map(capacity * 2);
+            } catch (IOException e) {
+                throw new IllegalStateException("Could not grow the pin store", e);
+            }
+        }
+
+        int position = getPosition(count);
+        buffer.putLong(position, arrivalMillis);
+        buffer.putLong(position + DURATION_OFFSET, duration);
+        buffer.putInt(position + LATITUDE_OFFSET, latitudeE7);
+        buffer.putInt(position + LONGITUDE_OFFSET, longitudeE7);
+        buffer.putFloat(position + ACCURACY_OFFSET, accuracy);
+
+        // The count is written last, so a torn append is never read back.
+        count++;
+        buffer.putInt(COUNT_OFFSET, count);
+    }
+
+    @Override
+    public synchronized boolean updateDuration(long arrivalMillis, long duration) {
+        int index = indexOf(arrivalMillis);
+        if (index < 0) {
+            return false;
+        }
+        buffer.putLong(getPosition(index) + DURATION_OFFSET, duration);
+        return true;
+    }
+
+    @Override
+    public synchronized void update(long arrivalMillis, long duration, int latitudeE7,
+                                    int longitudeE7, float accuracy) {
+        int index = indexOf(arrivalMillis);
+        if (index < 0) {
+            return;
+        }
+        int position = getPosition(index);
+        buffer.putLong(position + DURATION_OFFSET, duration);
+        buffer.putInt(position + LATITUDE_OFFSET, latitudeE7);
+        buffer.putInt(position + LONGITUDE_OFFSET, longitudeE7);
+        buffer.putFloat(position + ACCURACY_OFFSET, accuracy);
+    }
+
+    /**
+     * @throws IllegalArgumentException if the pin is not stored and arrived before the most
+     *      recent stored pin.
+     */
+    @Override
+    public synchronized void restore(long arrivalMillis, long duration, int latitudeE7,
+                                     int longitudeE7, float accuracy) {
+        if (indexOf(arrivalMillis) >= 0) {
+            update(arrivalMillis, duration, latitudeE7, longitudeE7, accuracy);
+        } else {
+            append(arrivalMillis, duration, latitudeE7, longitudeE7, accuracy);
+        }
+        buffer.force();
+    }
+
+    @Override
+    public synchronized void loadPinColumns(long fromMillis, long toMillis, PinColumns pins) {
+        int index = lastIndexAtOrBefore(toMillis);
+        for (int i = index; i >= 0 && getArrivalMillis(i) >= fromMillis; i--) {
+            readInto(i, pins);
+        }
+    }
+
+    /**
+     * Reads the pins right away, on the calling thread; they are already in memory, or a page
+     * fault away from it.
+     */
+    @Override
+    public void loadPinColumnsAsync(long fromMillis, long toMillis, int fields,
+                                    PinLoadCallback callback) {
+        PinColumns pins = new PinColumns();
+        loadPinColumns(fromMillis, toMillis, pins);
+        callback.onPinsLoaded(pins);
+    }
+
+    @Override
+    public synchronized boolean loadMostRecentPin(PinColumns pins) {
+        if (count == 0) {
+            return false;
+        }
+        readInto(count - 1, pins);
+        return true;
+    }
+
+    /**
+     * Forces the mapping to disk.
+     */
+    @Override
+    public synchronized void flush() {
+        buffer.force();
+    }
+
+    /**
+     * Forces the mapping to disk and closes the file.
+     */
+    @Override
+    public synchronized void close() {
+        try {
+            buffer.force();
+            file.close();
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not close the pin store", e);
+        }
+    }
+
+    /**
+     * Maps the file with room for a number of records, growing it if needed.
+     */
+    private void map(int capacity) throws IOException {
+        if (buffer != null) {
+            buffer.force();
+        }
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0,
+                HEADER_SIZE + (long) capacity * RECORD_SIZE);
+    }
+
+    /**
+     * @return the number of records the current mapping has room for.
+     */
+    private int getCapacity() {
+        return (buffer.capacity() - HEADER_SIZE) / RECORD_SIZE;
+    }
+
+    private void readInto(int index, PinColumns pins) {
+        int position = getPosition(index);
+        pins.addE7(
+                buffer.getLong(position),
+                buffer.getLong(position + DURATION_OFFSET),
+                buffer.getInt(position + LATITUDE_OFFSET),
+                buffer.getInt(position + LONGITUDE_OFFSET),
+                buffer.getFloat(position + ACCURACY_OFFSET));
+    }
+
+    private long getArrivalMillis(int index) {
+        return buffer.getLong(getPosition(index));
+    }
+
+    private static int getPosition(int index) {
+        return HEADER_SIZE + index * RECORD_SIZE;
+    }
+
+    /**
+     * @return the index of the record of the pin that arrived at a time, or -1 if it is not
+     *      stored.
+     */
+    private int indexOf(long arrivalMillis) {
+        int index = lastIndexAtOrBefore(arrivalMillis);
+        return index >= 0 && getArrivalMillis(index) == arrivalMillis ? index : -1;
+    }
+
+    /**
+     * @return the index of the last record that arrived at or before a time, or -1 if none did.
+     */
+    private int lastIndexAtOrBefore(long arrivalMillis) {
+        int low = 0;
+        int high = count - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (getArrivalMillis(middle) <= arrivalMillis) {
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return high;
+    }
+}
@@ -0,0 +1,132 @@
+package com.clidwin.android.visualimprints.storage;
+
+import com.clidwin.android.visualimprints.location.PinColumns;
+
+/**
+ * A {@link PinStore} that keeps every pin in memory, oldest first. Nothing is persisted, which
+ * makes it a baseline for benchmarks and a stand-in for the database off the device.
+ *
+ * @author Christina Lidwin (clidwin)
+ * @version October 15, 2026
+ */
+public class MemoryPinStore implements PinStore {
+    private final PinColumns pins = new PinColumns();
+
+    /**
+     * @throws IllegalArgumentException if the pin arrived before the most recent stored pin.
+     */
+    @Override
+    public synchronized void append(long arrivalMillis, long duration, int latitudeE7,
+                                    int longitudeE7, float accuracy) {
+        if (pins.size() > 0 && arrivalMillis < pins.getArrivalMillis(pins.size() - 1)) {
+            throw new IllegalArgumentException("Pins must be appended in arrival order");
+        }
+        pins.addE7(arrivalMillis, duration, latitudeE7, longitudeE7, accuracy);
+    }
+
+    @Override
+    public synchronized boolean updateDuration(long arrivalMillis, long duration) {
+        int index = indexOf(arrivalMillis);
+        if (index < 0) {
+            return false;
+        }
+        pins.setDuration(index, duration);
+        return true;
+    }
+
+    @Override
+    public synchronized void update(long arrivalMillis, long duration, int latitudeE7,
+                                    int longitudeE7, float accuracy) {
+        int index = indexOf(arrivalMillis);
+        if (index >= 0) {
+            pins.setDuration(index, duration);
+            pins.setLocationE7(index, latitudeE7, longitudeE7);
+            pins.setAccuracy(index, accuracy);
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException if the pin is not stored and arrived before the most
+     *      recent stored pin.
+     */
+    @Override
+    public synchronized void restore(long arrivalMillis, long duration, int latitudeE7,
+                                     int longitudeE7, float accuracy) {
+        if (indexOf(arrivalMillis) >= 0) {
+            update(arrivalMillis, duration, latitudeE7, longitudeE7, accuracy);
+        } else {
+            append(arrivalMillis, duration, latitudeE7, longitudeE7, accuracy);
+        }
+    }
+
+    @Override
+    public synchronized void loadPinColumns(long fromMillis, long toMillis, PinColumns result) {
+        loadPinColumns(fromMillis, toMillis, result, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Reads the pins right away, on the calling thread.
+     */
+    @Override
+    public void loadPinColumnsAsync(long fromMillis, long toMillis, int fields,
+                                    PinLoadCallback callback) {
+        PinColumns result = new PinColumns();
+        loadPinColumns(fromMillis, toMillis, result);
+        callback.onPinsLoaded(result);
+    }
+
+    @Override
+    public synchronized boolean loadMostRecentPin(PinColumns result) {
+        if (pins.size() == 0) {
+            return false;
+        }
+        loadPinColumns(Long.MIN_VALUE, Long.MAX_VALUE, result, 1);
+        return true;
+    }
+
+    @Override
+    public void flush() {
+    }
+
+    @Override
+    public synchronized void close() {
+        pins.clear();
+    }
+
+    /**
+     * Copies up to a number of pins that arrived within a time range, newest first.
+     */
+    private void loadPinColumns(long fromMillis, long toMillis, PinColumns result, int limit) {
+        int index = lastIndexAtOrBefore(toMillis);
+        for (int i = index; i >= 0 && i > index - limit &&
+                pins.getArrivalMillis(i) >= fromMillis; i--) {
+            result.addE7(pins.getArrivalMillis(i), pins.getDuration(i),
+                    pins.getLatitudeE7(i), pins.getLongitudeE7(i), pins.getAccuracy(i));
+        }
+    }
+
+    /**
+     * @return the index of the pin that arrived at a time, or -1 if it is not stored.
+     */
+    private int indexOf(long arrivalMillis) {
+        int index = lastIndexAtOrBefore(arrivalMillis);
+        return index >= 0 && pins.getArrivalMillis(index) == arrivalMillis ? index : -1;
+    }
+
+    /**
+     * @return the index of the last pin that arrived at or before a time, or -1 if none did.
+     */
+    private int lastIndexAtOrBefore(long arrivalMillis) {
+        int low = 0;
+        int high = pins.size() - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (pins.getArrivalMillis(middle) <= arrivalMillis) {
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return high;
+    }
+}
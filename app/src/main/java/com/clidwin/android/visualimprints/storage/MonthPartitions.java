@@ -0,0 +1,552 @@
+package com.clidwin.android.visualimprints.storage;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.util.Log;
+
+import com.clidwin.android.visualimprints.location.PinColumns;
+
+import java.io.File;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Moves the sealed days of whole months out of the main database into one database file per
+ * month, so that the main file, its indexes and its maintenance stay the size of recent
+ * history. A catalog table in the main database lists the moved months and their time spans,
+ * and reads only open the files of months they overlap. Moved months keep their rows in the
+ * hourly rollup and day summaries.
+ * <p/>
+ * Partition files are opened as separate databases rather than attached, since attaching a
+ * database would turn off write-ahead logging for the main one. Changes must be made on the
+ * writer thread, while holding the write lock; segments may be read from any thread. Readers
+ * hold a reference to each file while they use it, so a file closed meanwhile stays open
+ * until the last of them is done.
+ *
+ * @author Christina Lidwin (clidwin)
+ * @version October 15, 2026
+ */
+class MonthPartitions {
+    private static final String TAG = "vi-month-partitions";
+    private static final String MONTH_FORMAT = "yyyy-MM";
+    private static final String FILE_PREFIX = "GeospatialPins-";
+    private static final String FILE_SUFFIX = ".db";
+
+    private final SQLiteDatabase database;
+    private final File directory;
+    private final HashMap<String, SQLiteDatabase> openFiles = new HashMap<>();
+    private final SimpleDateFormat monthFormatter =
+            new SimpleDateFormat(MONTH_FORMAT, Locale.getDefault());
+
+    // Lets reads skip the catalog entirely while no month has been moved out.
+    private volatile int partitionCount;
+
+    /**
+     * @param database The main database.
+     * @param directory The directory to keep partition files in.
+     */
+    MonthPartitions(SQLiteDatabase database, File directory) {
+        this.database = database;
+        this.directory = directory;
+        partitionCount = countPartitions();
+    }
+
+    /**
+     * A sealed day read from either the main database or a partition file.
+     */
+    static class Segment {
+        final long firstMillis;
+        final byte[] data;
+
+        Segment(long firstMillis, byte[] data) {
+            this.firstMillis = firstMillis;
+            this.data = data;
+        }
+    }
+
+    private static final Comparator<Segment> NEWEST_FIRST = new Comparator<Segment>() {
+        @Override
+        public int compare(Segment lhs, Segment rhs) {
+            return lhs.firstMillis > rhs.firstMillis ? -1 :
+                    (lhs.firstMillis == rhs.firstMillis ? 0 : 1);
+        }
+    };
+
+    /**
+     * Moves every month that ended before a cutoff and is fully sealed into its own file.
+     *
+     * @param cutoffMillis Months ending before this time are moved.
+     * @return the number of months moved.
+     */
+    int partitionMonthsBefore(long cutoffMillis) {
+        ArrayList<String> months = new ArrayList<>();
+        Cursor c = database.rawQuery("SELECT DISTINCT SUBSTR(" +
+                DatabaseHelper.SegmentKeys.COLUMN_NAME_DAY + ",1," + MONTH_FORMAT.length() +
+                ") FROM " + DatabaseHelper.SegmentKeys.TABLE_NAME, null);
+        try {
+            while (c.moveToNext()) {
+                months.add(c.getString(0));
+            }
+        } finally {
+            c.close();
+        }
+
+        int moved = 0;
+        for (String month : months) {
+            long[] span = getMonthSpan(month);
+            if (span != null && span[1] < cutoffMillis && !hasLivePins(span) &&
+                    partitionMonth(month)) {
+                moved++;
+            }
+        }
+        if (moved > 0) {
+            Log.d(TAG, "Moved " + moved + " months to partition files.");
+        }
+        return moved;
+    }
+
+    /**
+     * Moves the sealed days of a month into the month's file, merging with any days already
+     * there. The file is written completely before the main database lets go of the days.
+     *
+     * @param month The month, in "yyyy-MM" form.
+     * @return true if any days were moved, else false.
+     */
+    boolean partitionMonth(String month) {
+        String selection = DatabaseHelper.SegmentKeys.COLUMN_NAME_DAY + " LIKE ?";
+        String[] selectionArgs = {month + "-%"};
+        boolean listed = isPartitioned(month);
+
+        SQLiteDatabase file = openFile(month);
+        file.beginTransaction();
+        try {
+            // A file left over from a month that was restored since is stale.
+            if (!listed) {
+                file.delete(DatabaseHelper.SegmentKeys.TABLE_NAME, null, null);
+            }
+
+            Cursor c = database.query(DatabaseHelper.SegmentKeys.TABLE_NAME, null, selection,
+                    selectionArgs, null, null, null);
+            ContentValues values = new ContentValues();
+            try {
+                if (c.getCount() == 0) {
+                    return false;
+                }
+                while (c.moveToNext()) {
+                    values.clear();
+                    values.put(DatabaseHelper.SegmentKeys.COLUMN_NAME_DAY, c.getString(
+                            c.getColumnIndexOrThrow(DatabaseHelper.SegmentKeys.COLUMN_NAME_DAY)));
+                    values.put(DatabaseHelper.SegmentKeys.COLUMN_NAME_FIRST_MILLIS, c.getLong(
+                            c.getColumnIndexOrThrow(
+                                    DatabaseHelper.SegmentKeys.COLUMN_NAME_FIRST_MILLIS)));
+                    values.put(DatabaseHelper.SegmentKeys.COLUMN_NAME_LAST_MILLIS, c.getLong(
+                            c.getColumnIndexOrThrow(
+                                    DatabaseHelper.SegmentKeys.COLUMN_NAME_LAST_MILLIS)));
+                    values.put(DatabaseHelper.SegmentKeys.COLUMN_NAME_PIN_COUNT, c.getInt(
+                            c.getColumnIndexOrThrow(
+                                    DatabaseHelper.SegmentKeys.COLUMN_NAME_PIN_COUNT)));
+                    values.put(DatabaseHelper.SegmentKeys.COLUMN_NAME_DATA, c.getBlob(
+                            c.getColumnIndexOrThrow(DatabaseHelper.SegmentKeys.COLUMN_NAME_DATA)));
+                    file.insertWithOnConflict(DatabaseHelper.SegmentKeys.TABLE_NAME, null,
+                            values, SQLiteDatabase.CONFLICT_REPLACE);
+                }
+            } finally {
+                c.close();
+            }
+            file.setTransactionSuccessful();
+        } finally {
+            file.endTransaction();
+        }
+
+        ContentValues partition = summarize(file, month);
+        database.beginTransaction();
+        try {
+            database.insertWithOnConflict(DatabaseHelper.PartitionKeys.TABLE_NAME, null,
+                    partition, SQLiteDatabase.CONFLICT_REPLACE);
+            database.delete(DatabaseHelper.SegmentKeys.TABLE_NAME, selection, selectionArgs);
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+        }
+        partitionCount = countPartitions();
+        return true;
+    }
+
+    /**
+     * Moves the days of the month a pin arrives in back into the main database, if the month
+     * is partitioned, so that they can be unsealed.
+     *
+     * @param arrivalMillis The arrival time of a pin.
+     * @return true if a month was restored, else false.
+     */
+    boolean restoreMonthOf(long arrivalMillis) {
+        if (partitionCount == 0) {
+            return false;
+        }
+        String month = getMonthOf(arrivalMillis);
+        return isPartitioned(month) && restoreMonth(month);
+    }
+
+    /**
+     * @param millis A time in milliseconds since the epoch.
+     * @return the local month of the time, in "yyyy-MM" form as the month's days are keyed.
+     */
+    String getMonthOf(long millis) {
+        return monthFormatter.format(new Date(millis));
+    }
+
+    /**
+     * Moves the days of every partitioned month overlapping a time range back into the main
+     * database.
+     *
+     * @param fromMillis The start of the range (inclusive).
+     * @param toMillis The end of the range (inclusive).
+     * @return the number of months restored.
+     */
+    int restoreOverlapping(long fromMillis, long toMillis) {
+        if (partitionCount == 0) {
+            return 0;
+        }
+
+        int restored = 0;
+        for (String month : getOverlapping(fromMillis, toMillis)) {
+            if (restoreMonth(month)) {
+                restored++;
+            }
+        }
+        return restored;
+    }
+
+    /**
+     * Copies the days of a month back into the segments table and drops it from the catalog.
+     * Joins the caller's transaction; the file is left as it is, so that a rolled back restore
+     * loses nothing, and is cleared the next time the month is partitioned.
+     */
+    private boolean restoreMonth(String month) {
+        SQLiteDatabase file = openFile(month);
+        Cursor c = file.query(DatabaseHelper.SegmentKeys.TABLE_NAME, null, null, null,
+                null, null, null);
+        ContentValues values = new ContentValues();
+        try {
+            while (c.moveToNext()) {
+                values.clear();
+                for (int i = 0; i < c.getColumnCount(); i++) {
+                    if (c.getType(i) == Cursor.FIELD_TYPE_BLOB) {
+                        values.put(c.getColumnName(i), c.getBlob(i));
+                    } else {
+                        values.put(c.getColumnName(i), c.getString(i));
+                    }
+                }
+                database.insertWithOnConflict(DatabaseHelper.SegmentKeys.TABLE_NAME, null,
+                        values, SQLiteDatabase.CONFLICT_REPLACE);
+            }
+        } finally {
+            c.close();
+        }
+
+        // The count is left alone, since the caller's transaction may yet be rolled back; a
+        // count that is too high only costs a catalog query.
+        return database.delete(DatabaseHelper.PartitionKeys.TABLE_NAME,
+                DatabaseHelper.PartitionKeys.COLUMN_NAME_MONTH + "=?", new String[] {month}) > 0;
+    }
+
+    /**
+     * Detaches a partitioned month from the history: the month is dropped from the catalog,
+     * the hourly rollup and the day summaries, and its file is closed and handed to the caller
+     * to be exported or deleted.
+     *
+     * @param month The month, in "yyyy-MM" form.
+     * @return the month's file, or null if the month is not partitioned.
+     */
+    File detachMonth(String month) {
+        if (!isPartitioned(month)) {
+            return null;
+        }
+
+        PinColumns pins = new PinColumns();
+        ArrayList<String> days = new ArrayList<>();
+        SQLiteDatabase file = openFile(month);
+        Cursor c = file.query(DatabaseHelper.SegmentKeys.TABLE_NAME,
+                new String[] {
+                        DatabaseHelper.SegmentKeys.COLUMN_NAME_DAY,
+                        DatabaseHelper.SegmentKeys.COLUMN_NAME_DATA
+                }, null, null, null, null,
+                DatabaseHelper.SegmentKeys.COLUMN_NAME_FIRST_MILLIS + " ASC");
+        try {
+            while (c.moveToNext()) {
+                days.add(c.getString(0));
+                PinSegmentCodec.decode(c.getBlob(1), pins);
+            }
+        } finally {
+            c.close();
+        }
+
+        database.beginTransaction();
+        try {
+            removeFromRollup(pins);
+            // Only the days held by the file go; other days of the month may still be live.
+            for (String day : days) {
+                database.delete(DatabaseHelper.DaysKeys.TABLE_NAME,
+                        DatabaseHelper.DaysKeys.COLUMN_NAME_DAY + "=?", new String[] {day});
+            }
+            database.delete(DatabaseHelper.PartitionKeys.TABLE_NAME,
+                    DatabaseHelper.PartitionKeys.COLUMN_NAME_MONTH + "=?", new String[] {month});
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+        }
+        partitionCount = countPartitions();
+
+        // Readers still holding the file keep it open until they release it.
+        synchronized (openFiles) {
+            openFiles.remove(month);
+        }
+        file.close();
+        return getFile(month);
+    }
+
+    /**
+     * Adds the sealed days of partitioned months overlapping a time range to a list, ordered
+     * newest first together with the segments already in it.
+     *
+     * @param fromMillis The start of the range (inclusive).
+     * @param toMillis The end of the range (inclusive).
+     * @param limit The number of days to read from each month, newest first, or null.
+     * @param days The days to read, or null for every day in the range.
+     * @param segments The list to add to.
+     */
+    void collectSegments(long fromMillis, long toMillis, String limit, Set<String> days,
+                         ArrayList<Segment> segments) {
+        if (partitionCount == 0) {
+            return;
+        }
+
+        String[] columns = {
+                DatabaseHelper.SegmentKeys.COLUMN_NAME_FIRST_MILLIS,
+                DatabaseHelper.SegmentKeys.COLUMN_NAME_DATA,
+                DatabaseHelper.SegmentKeys.COLUMN_NAME_DAY
+        };
+        String[] rangeArgs = {String.valueOf(toMillis), String.valueOf(fromMillis)};
+        boolean added = false;
+        for (String month : getOverlapping(fromMillis, toMillis)) {
+            SQLiteDatabase file = acquireFile(month);
+            if (file == null) {
+                continue;
+            }
+            try {
+                Cursor c = file.query(DatabaseHelper.SegmentKeys.TABLE_NAME, columns,
+                        DatabaseHelper.SegmentKeys.COLUMN_NAME_FIRST_MILLIS + "<=? AND " +
+                                DatabaseHelper.SegmentKeys.COLUMN_NAME_LAST_MILLIS + ">=?",
+                        rangeArgs, null, null,
+                        DatabaseHelper.SegmentKeys.COLUMN_NAME_FIRST_MILLIS + " DESC", limit);
+                try {
+                    while (c.moveToNext()) {
+                        if (days != null && !days.contains(c.getString(2))) {
+                            continue;
+                        }
+                        segments.add(new Segment(c.getLong(0), c.getBlob(1)));
+                        added = true;
+                    }
+                } finally {
+                    c.close();
+                }
+            } finally {
+                file.releaseReference();
+            }
+        }
+        if (added) {
+            Collections.sort(segments, NEWEST_FIRST);
+        }
+    }
+
+    /**
+     * Closes every open partition file.
+     */
+    void close() {
+        synchronized (openFiles) {
+            for (SQLiteDatabase file : openFiles.values()) {
+                file.close();
+            }
+            openFiles.clear();
+        }
+    }
+
+    /**
+     * @return the months in the catalog whose pins span part of a time range.
+     */
+    private ArrayList<String> getOverlapping(long fromMillis, long toMillis) {
+        ArrayList<String> months = new ArrayList<>();
+        Cursor c = database.query(DatabaseHelper.PartitionKeys.TABLE_NAME,
+                new String[] {DatabaseHelper.PartitionKeys.COLUMN_NAME_MONTH},
+                DatabaseHelper.PartitionKeys.COLUMN_NAME_FIRST_MILLIS + "<=? AND " +
+                        DatabaseHelper.PartitionKeys.COLUMN_NAME_LAST_MILLIS + ">=?",
+                new String[] {String.valueOf(toMillis), String.valueOf(fromMillis)},
+                null, null, null);
+        try {
+            while (c.moveToNext()) {
+                months.add(c.getString(0));
+            }
+        } finally {
+            c.close();
+        }
+        return months;
+    }
+
+    private boolean isPartitioned(String month) {
+        Cursor c = database.query(DatabaseHelper.PartitionKeys.TABLE_NAME,
+                new String[] {DatabaseHelper.PartitionKeys.COLUMN_NAME_MONTH},
+                DatabaseHelper.PartitionKeys.COLUMN_NAME_MONTH + "=?", new String[] {month},
+                null, null, null);
+        try {
+            return c.moveToFirst();
+        } finally {
+            c.close();
+        }
+    }
+
+    private int countPartitions() {
+        Cursor c = database.rawQuery(
+                "SELECT COUNT(*) FROM " + DatabaseHelper.PartitionKeys.TABLE_NAME, null);
+        try {
+            return c.moveToFirst() ? c.getInt(0) : 0;
+        } finally {
+            c.close();
+        }
+    }
+
+    /**
+     * @return the catalog row describing the days held by a month's file.
+     */
+    private static ContentValues summarize(SQLiteDatabase file, String month) {
+        Cursor c = file.rawQuery("SELECT MIN(" +
+                DatabaseHelper.SegmentKeys.COLUMN_NAME_FIRST_MILLIS + "), MAX(" +
+                DatabaseHelper.SegmentKeys.COLUMN_NAME_LAST_MILLIS + "), SUM(" +
+                DatabaseHelper.SegmentKeys.COLUMN_NAME_PIN_COUNT + ") FROM " +
+                DatabaseHelper.SegmentKeys.TABLE_NAME, null);
+        ContentValues values = new ContentValues();
+        try {
+            c.moveToFirst();
+            values.put(DatabaseHelper.PartitionKeys.COLUMN_NAME_MONTH, month);
+            values.put(DatabaseHelper.PartitionKeys.COLUMN_NAME_FIRST_MILLIS, c.getLong(0));
+            values.put(DatabaseHelper.PartitionKeys.COLUMN_NAME_LAST_MILLIS, c.getLong(1));
+            values.put(DatabaseHelper.PartitionKeys.COLUMN_NAME_PIN_COUNT, c.getInt(2));
+        } finally {
+            c.close();
+        }
+        return values;
+    }
+
+    /**
+     * Takes pins out of the hourly rollup, one statement per hour.
+     *
+     * @param pins The pins to remove, oldest first.
+     */
+    private void removeFromRollup(PinColumns pins) {
+        SQLiteStatement subtract = database.compileStatement(
+                "UPDATE " + DatabaseHelper.HourlyRollupKeys.TABLE_NAME + " SET " +
+                        DatabaseHelper.HourlyRollupKeys.COLUMN_NAME_PIN_COUNT + "=" +
+                        DatabaseHelper.HourlyRollupKeys.COLUMN_NAME_PIN_COUNT + "-?," +
+                        DatabaseHelper.HourlyRollupKeys.COLUMN_NAME_DWELL_MILLIS + "=" +
+                        DatabaseHelper.HourlyRollupKeys.COLUMN_NAME_DWELL_MILLIS + "-?" +
+                        " WHERE " + DatabaseHelper.HourlyRollupKeys.COLUMN_NAME_EPOCH_HOUR + "=?");
+        try {
+            int i = 0;
+            while (i < pins.size()) {
+                long hour = PinWriter.getEpochHour(pins.getArrivalMillis(i));
+                int count = 0;
+                long dwellMillis = 0;
+                while (i < pins.size() &&
+                        PinWriter.getEpochHour(pins.getArrivalMillis(i)) == hour) {
+                    count++;
+                    dwellMillis += pins.getDuration(i);
+                    i++;
+                }
+                subtract.bindLong(1, count);
+                subtract.bindLong(2, dwellMillis);
+                subtract.bindLong(3, hour);
+                subtract.executeUpdateDelete();
+            }
+        } finally {
+            subtract.close();
+        }
+    }
+
+    /**
+     * @return whether the pins table still holds rows within a time span.
+     */
+    private boolean hasLivePins(long[] span) {
+        Cursor c = database.rawQuery("SELECT 1 FROM " + DatabaseHelper.Keys.TABLE_NAME +
+                " WHERE " + DatabaseHelper.Keys.COLUMN_NAME_ARRIVAL_MILLIS + " BETWEEN ? AND ?" +
+                " LIMIT 1", new String[] {String.valueOf(span[0]), String.valueOf(span[1])});
+        try {
+            return c.moveToFirst();
+        } finally {
+            c.close();
+        }
+    }
+
+    /**
+     * @return the first and last millisecond of a local month, or null if the month cannot be
+     *      read.
+     */
+    private long[] getMonthSpan(String month) {
+        Calendar start = Calendar.getInstance();
+        try {
+            start.setTime(monthFormatter.parse(month));
+        } catch (java.text.ParseException e) {
+            Log.e(TAG, "Unreadable month " + month, e);
+            return null;
+        }
+        Calendar end = (Calendar) start.clone();
+        end.add(Calendar.MONTH, 1);
+        return new long[] {start.getTimeInMillis(), end.getTimeInMillis() - 1};
+    }
+
+    /**
+     * @return the open database of a month's file, creating the file if needed.
+     */
+    private SQLiteDatabase openFile(String month) {
+        synchronized (openFiles) {
+            SQLiteDatabase file = openFiles.get(month);
+            if (file == null) {
+                file = SQLiteDatabase.openOrCreateDatabase(getFile(month), null);
+                file.execSQL(DatabaseHelper.SEGMENTS_TABLE_CREATE);
+                openFiles.put(month, file);
+            }
+            return file;
+        }
+    }
+
+    /**
+     * Opens a month's file for a reader and takes a reference to it, which the reader must
+     * release when done. Taken under the same lock that drops files from the open set, so a
+     * file is never handed out after it was closed.
+     *
+     * @return the month's file, or null if the month was detached meanwhile.
+     */
+    private SQLiteDatabase acquireFile(String month) {
+        synchronized (openFiles) {
+            // A month listed a moment ago may have been detached since, and its file handed
+            // over; it must not be opened again.
+            if (!openFiles.containsKey(month) && !isPartitioned(month)) {
+                return null;
+            }
+            SQLiteDatabase file = openFile(month);
+            file.acquireReference();
+            return file;
+        }
+    }
+
+    private File getFile(String month) {
+        return new File(directory, FILE_PREFIX + month + FILE_SUFFIX);
+    }
+}
@@ -0,0 +1,94 @@
+package com.clidwin.android.visualimprints.storage;
+
+import android.util.LruCache;
+
+import com.clidwin.android.visualimprints.location.PinColumns;
+
+/**
+ * Memory-bounded cache of the pins of whole local days, keyed by the start of the day.
+ * Visualizations showing the same range share the decoded days instead of each querying the
+ * database. Cached columns are never modified; readers copy out of them. Each day remembers
+ * the fields it was loaded with, and only serves readers asking for a subset of them.
+ * <p/>
+ * Every invalidation advances a generation, and loads started in an older generation are not
+ * cached, so a day read while it was being written cannot outlive the write.
+ *
+ * @author Christina Lidwin (clidwin)
+ * @version October 15, 2026
+ */
+class PinDayCache {
+    private static final int BYTES_PER_PIN = 24;
+    private static final int BYTES_PER_DAY = 64;
+
+    private final LruCache<Long, Day> days;
+    private int generation;
+
+    /**
+     * @param maxBytes The approximate amount of memory the cached pins may take.
+     */
+    PinDayCache(int maxBytes) {
+        days = new LruCache<Long, Day>(maxBytes) {
+            @Override
+            protected int sizeOf(Long dayStart, Day day) {
+                return BYTES_PER_DAY + day.pins.size() * BYTES_PER_PIN;
+            }
+        };
+    }
+
+    /**
+     * @return the current generation, to be passed to {@link #put} once a load completes.
+     */
+    synchronized int getGeneration() {
+        return generation;
+    }
+
+    /**
+     * @param fields The fields the caller needs (see {@link PinColumns#ALL_FIELDS}).
+     * @return the pins of a day, newest first, or null if the day is not cached with all of
+     *      the fields.
+     */
+    synchronized PinColumns get(long dayStart, int fields) {
+        Day day = days.get(dayStart);
+        return day == null || (day.fields & fields) != fields ? null : day.pins;
+    }
+
+    /**
+     * Caches the pins of a day, unless something was invalidated since the load began.
+     *
+     * @param dayStart The start of the day.
+     * @param pins The pins of the whole day, newest first.
+     * @param fields The fields the pins were loaded with.
+     * @param loadGeneration The generation read before the pins were loaded.
+     */
+    synchronized void put(long dayStart, PinColumns pins, int fields, int loadGeneration) {
+        if (loadGeneration == generation) {
+            days.put(dayStart, new Day(pins, fields));
+        }
+    }
+
+    /**
+     * Drops a day after its pins have changed.
+     */
+    synchronized void invalidate(long dayStart) {
+        generation++;
+        days.remove(dayStart);
+    }
+
+    /**
+     * Drops every day.
+     */
+    synchronized void invalidateAll() {
+        generation++;
+        days.evictAll();
+    }
+
+    private static class Day {
+        final PinColumns pins;
+        final int fields;
+
+        Day(PinColumns pins, int fields) {
+            this.pins = pins;
+            this.fields = fields;
+        }
+    }
+}
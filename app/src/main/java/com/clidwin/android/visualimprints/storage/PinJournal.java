@@ -0,0 +1,140 @@
+package com.clidwin.android.visualimprints.storage;
+
+import android.location.Location;
+
+import com.clidwin.android.visualimprints.location.GeospatialPin;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+
+/**
+ * Write-behind buffer for new pins and duration updates that have not been written to the
+ * database yet. Entries are keyed by arrival time, so repeated updates to the same pin
+ * collapse into a single row write when the journal is flushed.
+ *
+ * @author Christina Lidwin (clidwin)
+ * @version October 15, 2026
+ */
+class PinJournal {
+    private final LinkedHashMap<Long, GeospatialPin> pendingInserts;
+    private final LinkedHashMap<Long, GeospatialPin> pendingUpdates;
+
+    PinJournal() {
+        pendingInserts = new LinkedHashMap<>();
+        pendingUpdates = new LinkedHashMap<>();
+    }
+
+    /**
+     * Buffers a new pin.
+     *
+     * @param pin The pin to be inserted on the next flush.
+     */
+    synchronized void addInsert(GeospatialPin pin) {
+        pendingInserts.put(pin.getArrivalTime().getTime(), copyOf(pin));
+    }
+
+    /**
+     * Buffers a change to an existing pin. If the pin itself is still waiting to be inserted,
+     * the buffered insert is replaced instead.
+     *
+     * @param pin The pin with its updated values.
+     */
+    synchronized void addUpdate(GeospatialPin pin) {
+        long arrivalTime = pin.getArrivalTime().getTime();
+        if (pendingInserts.containsKey(arrivalTime)) {
+            pendingInserts.put(arrivalTime, copyOf(pin));
+        } else {
+            pendingUpdates.put(arrivalTime, copyOf(pin));
+        }
+    }
+
+    /**
+     * Drops any buffered writes for a pin that is being deleted.
+     *
+     * @param pin The pin being deleted.
+     */
+    synchronized void remove(GeospatialPin pin) {
+        long arrivalTime = pin.getArrivalTime().getTime();
+        pendingInserts.remove(arrivalTime);
+        pendingUpdates.remove(arrivalTime);
+    }
+
+    /**
+     * @return the number of row writes waiting to be flushed.
+     */
+    synchronized int size() {
+        return pendingInserts.size() + pendingUpdates.size();
+    }
+
+    /**
+     * Removes and returns all buffered inserts, oldest first.
+     */
+    synchronized ArrayList<GeospatialPin> drainInserts() {
+        ArrayList<GeospatialPin> inserts = new ArrayList<>(pendingInserts.values());
+        pendingInserts.clear();
+        return inserts;
+    }
+
+    /**
+     * Removes and returns all buffered updates, oldest first.
+     */
+    synchronized ArrayList<GeospatialPin> drainUpdates() {
+        ArrayList<GeospatialPin> updates = new ArrayList<>(pendingUpdates.values());
+        pendingUpdates.clear();
+        return updates;
+    }
+
+    /**
+     * @return the most recent buffered pin, or null if no new pins are buffered.
+     */
+    synchronized GeospatialPin getMostRecentInsert() {
+        GeospatialPin mostRecent = null;
+        for (GeospatialPin pin : pendingInserts.values()) {
+            if (mostRecent == null || pin.getArrivalTime().after(mostRecent.getArrivalTime())) {
+                mostRecent = pin;
+            }
+        }
+        return mostRecent == null ? null : copyOf(mostRecent);
+    }
+
+    /**
+     * @param arrivalMillis The arrival time of a pin read from the database.
+     * @return a copy of the buffered update for the pin, or null if it has none.
+     */
+    synchronized GeospatialPin getUpdate(long arrivalMillis) {
+        if (pendingUpdates.isEmpty()) {
+            return null;
+        }
+
+        GeospatialPin update = pendingUpdates.get(arrivalMillis);
+        return update == null ? null : copyOf(update);
+    }
+
+    /**
+     * @return copies of the buffered pins arriving within a range, newest first.
+     */
+    synchronized ArrayList<GeospatialPin> getInsertsInRange(long fromMillis, long toMillis) {
+        ArrayList<GeospatialPin> pins = new ArrayList<>();
+        for (GeospatialPin pin : pendingInserts.values()) {
+            long arrivalTime = pin.getArrivalTime().getTime();
+            if (arrivalTime >= fromMillis && arrivalTime <= toMillis) {
+                pins.add(0, copyOf(pin));
+            }
+        }
+        return pins;
+    }
+
+    /**
+     * Snapshots a pin so later changes by the caller do not leak into the journal.
+     */
+    private static GeospatialPin copyOf(GeospatialPin pin) {
+        GeospatialPin copy = new GeospatialPin(
+                new Location(pin.getLocation()),
+                new Date(pin.getArrivalTime().getTime()),
+                pin.getDuration());
+        copy.setAddress(pin.getAddress());
+        copy.setId(pin.getId());
+        return copy;
+    }
+}
@@ -0,0 +1,18 @@
+package com.clidwin.android.visualimprints.storage;
+
+import com.clidwin.android.visualimprints.location.PinColumns;
+
+/**
+ * Receives pins that were loaded from the database on a background thread.
+ *
+ * @author Christina Lidwin (clidwin)
+ * @version October 15, 2026
+ */
+public interface PinLoadCallback {
+    /**
+     * Called on the main thread once the pins have been read.
+     *
+     * @param pins The loaded pins, newest first.
+     */
+    void onPinsLoaded(PinColumns pins);
+}
@@ -0,0 +1,104 @@
+package com.clidwin.android.visualimprints.storage;
+
+import com.clidwin.android.visualimprints.location.FixedPoint;
+import com.clidwin.android.visualimprints.location.GeospatialPin;
+
+/**
+ * A reusable view of the pin currently being visited. Scans fill the same instance with the
+ * values of every row, so visiting a range allocates nothing per pin. Values are only valid
+ * during the visit; use {@link #toPin()} to keep a pin beyond it.
+ *
+ * @author Christina Lidwin (clidwin)
+ * @version October 15, 2026
+ */
+public final class PinRow {
+    private long id;
+    private long arrivalMillis;
+    private long duration;
+    private int latitudeE7;
+    private int longitudeE7;
+
+    PinRow() {
+    }
+
+    /**
+     * Points the row at a new pin.
+     *
+     * @param id The row id of the pin, or -1 if it has none.
+     */
+    void set(long id, long arrivalMillis, long duration, int latitudeE7, int longitudeE7) {
+        this.id = id;
+        this.arrivalMillis = arrivalMillis;
+        this.duration = duration;
+        this.latitudeE7 = latitudeE7;
+        this.longitudeE7 = longitudeE7;
+    }
+
+    /**
+     * Points the row at the values of a pin object, e.g. one buffered in the journal.
+     */
+    void set(GeospatialPin pin) {
+        set(pin.getId(), pin.getArrivalTime().getTime(), pin.getDuration(),
+                pin.getLatitudeE7(), pin.getLongitudeE7());
+    }
+
+    /**
+     * @return the database row id of the pin, or -1 if it has none (see
+     *      {@link GeospatialPin#getId()}).
+     */
+    public long getId() {
+        return id;
+    }
+
+    /**
+     * @return the arrival time of the pin, in milliseconds since the epoch.
+     */
+    public long getArrivalMillis() {
+        return arrivalMillis;
+    }
+
+    /**
+     * @return the amount of time in milliseconds spent at the pin.
+     */
+    public long getDuration() {
+        return duration;
+    }
+
+    /**
+     * @return the latitude of the pin.
+     */
+    public double getLatitude() {
+        return FixedPoint.toDegrees(latitudeE7);
+    }
+
+    /**
+     * @return the longitude of the pin.
+     */
+    public double getLongitude() {
+        return FixedPoint.toDegrees(longitudeE7);
+    }
+
+    /**
+     * @return the latitude of the pin, in fixed-point units.
+     */
+    public int getLatitudeE7() {
+        return latitudeE7;
+    }
+
+    /**
+     * @return the longitude of the pin, in fixed-point units.
+     */
+    public int getLongitudeE7() {
+        return longitudeE7;
+    }
+
+    /**
+     * @return a new {@link GeospatialPin} holding the current values, which may be kept.
+     */
+    public GeospatialPin toPin() {
+        GeospatialPin pin =
+                PinRowReader.createPin(arrivalMillis, duration, latitudeE7, longitudeE7);
+        pin.setId(id);
+        return pin;
+    }
+}
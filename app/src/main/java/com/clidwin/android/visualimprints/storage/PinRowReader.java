@@ -0,0 +1,145 @@
+package com.clidwin.android.visualimprints.storage;
+
+import android.database.Cursor;
+import android.location.Location;
+
+import com.clidwin.android.visualimprints.location.FixedPoint;
+import com.clidwin.android.visualimprints.location.GeospatialPin;
+import com.clidwin.android.visualimprints.location.PinColumns;
+
+import java.util.ArrayList;
+import java.util.Date;
+
+/**
+ * Decodes pins from the rows of a cursor. Column indexes are looked up once when the reader is
+ * created rather than once per row. Only the arrival time column is required; columns left out
+ * of the query's projection are read as zero.
+ *
+ * @author Christina Lidwin (clidwin)
+ * @version October 15, 2026
+ */
+class PinRowReader {
+    // The columns decoded into whole pins; text columns such as the address are never read
+    static final String[] PIN_COLUMNS = {
+            DatabaseHelper.Keys._ID,
+            DatabaseHelper.Keys.COLUMN_NAME_ARRIVAL_MILLIS,
+            DatabaseHelper.Keys.COLUMN_NAME_DURATION,
+            DatabaseHelper.Keys.COLUMN_NAME_LATITUDE_E7,
+            DatabaseHelper.Keys.COLUMN_NAME_LONGITUDE_E7,
+            DatabaseHelper.Keys.COLUMN_NAME_ACCURACY
+    };
+
+    private final int idIndex;
+    private final int arrivalMillisIndex;
+    private final int latitudeIndex;
+    private final int longitudeIndex;
+    private final int durationIndex;
+    private final int accuracyIndex;
+
+    PinRowReader(Cursor c) {
+        idIndex = c.getColumnIndex(DatabaseHelper.Keys._ID);
+        arrivalMillisIndex = c.getColumnIndexOrThrow(DatabaseHelper.Keys.COLUMN_NAME_ARRIVAL_MILLIS);
+        latitudeIndex = c.getColumnIndex(DatabaseHelper.Keys.COLUMN_NAME_LATITUDE_E7);
+        longitudeIndex = c.getColumnIndex(DatabaseHelper.Keys.COLUMN_NAME_LONGITUDE_E7);
+        durationIndex = c.getColumnIndex(DatabaseHelper.Keys.COLUMN_NAME_DURATION);
+        accuracyIndex = c.getColumnIndex(DatabaseHelper.Keys.COLUMN_NAME_ACCURACY);
+    }
+
+    /**
+     * @param fields The fields to read (see {@link PinColumns#ALL_FIELDS}).
+     * @return the columns to query for a set of fields. The arrival time is always included,
+     *      since pins are ordered and merged by it.
+     */
+    static String[] getProjection(int fields) {
+        ArrayList<String> columns = new ArrayList<>(4);
+        columns.add(DatabaseHelper.Keys.COLUMN_NAME_ARRIVAL_MILLIS);
+        if ((fields & PinColumns.FIELD_DURATION) != 0) {
+            columns.add(DatabaseHelper.Keys.COLUMN_NAME_DURATION);
+        }
+        if ((fields & PinColumns.FIELD_LOCATION) != 0) {
+            columns.add(DatabaseHelper.Keys.COLUMN_NAME_LATITUDE_E7);
+            columns.add(DatabaseHelper.Keys.COLUMN_NAME_LONGITUDE_E7);
+        }
+        return columns.toArray(new String[columns.size()]);
+    }
+
+    /**
+     * Creates a {@link com.clidwin.android.visualimprints.location.GeospatialPin} object from
+     * the row the cursor is pointing at.
+     *
+     * @param c {@link android.database.Cursor} A database pointer pointing to a data row
+     * @return a constructed GeospatialPin
+     */
+    GeospatialPin read(Cursor c) {
+        GeospatialPin pin = createPin(c.getLong(arrivalMillisIndex), readLong(c, durationIndex),
+                readInt(c, latitudeIndex), readInt(c, longitudeIndex));
+        if (idIndex != -1) {
+            pin.setId(c.getLong(idIndex));
+        }
+        if (accuracyIndex != -1 && !c.isNull(accuracyIndex)) {
+            pin.getLocation().setAccuracy(c.getFloat(accuracyIndex));
+        }
+        //TODO(clidwin): Read the address column once Address objects can be reconstructed.
+        return pin;
+    }
+
+    /**
+     * Creates a {@link com.clidwin.android.visualimprints.location.GeospatialPin} object from
+     * stored values, e.g. those of a sealed segment.
+     */
+    static GeospatialPin createPin(long arrivalMillis, long duration, int latitudeE7,
+                                   int longitudeE7) {
+        // Reconstruct location information
+        Location location = new Location("");
+        location.setLatitude(FixedPoint.toDegrees(latitudeE7));
+        location.setLongitude(FixedPoint.toDegrees(longitudeE7));
+
+        return new GeospatialPin(location, new Date(arrivalMillis), duration);
+    }
+
+    /**
+     * @return the arrival time of the row the cursor is pointing at.
+     */
+    long readArrivalMillis(Cursor c) {
+        return c.getLong(arrivalMillisIndex);
+    }
+
+    /**
+     * Appends the row the cursor is pointing at to a set of pin columns without creating any
+     * intermediate objects.
+     *
+     * @param c {@link android.database.Cursor} A database pointer pointing to a data row
+     * @param pins The columns to append to.
+     */
+    void readInto(Cursor c, PinColumns pins) {
+        pins.addE7(
+                c.getLong(arrivalMillisIndex),
+                readLong(c, durationIndex),
+                readInt(c, latitudeIndex),
+                readInt(c, longitudeIndex),
+                accuracyIndex == -1 || c.isNull(accuracyIndex) ? 0 : c.getFloat(accuracyIndex));
+    }
+
+    /**
+     * Points a reused row at the row the cursor is pointing at, without creating any objects.
+     *
+     * @param c {@link android.database.Cursor} A database pointer pointing to a data row
+     * @param row The row to overwrite.
+     */
+    void readInto(Cursor c, PinRow row) {
+        row.set(
+                idIndex == -1 ? -1 : c.getLong(idIndex),
+                c.getLong(arrivalMillisIndex),
+                readLong(c, durationIndex),
+                readInt(c, latitudeIndex),
+                readInt(c, longitudeIndex));
+    }
+
+    private static long readLong(Cursor c, int index) {
+        return index == -1 ? 0 : c.getLong(index);
+    }
+
+    private static int readInt(Cursor c, int index) {
+        return index == -1 ? 0 : c.getInt(index);
+    }
+}
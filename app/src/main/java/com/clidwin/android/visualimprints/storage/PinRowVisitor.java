@@ -0,0 +1,17 @@
+package com.clidwin.android.visualimprints.storage;
+
+/**
+ * Receives the pins of a range one at a time through a single reused {@link PinRow}, for
+ * callers that aggregate pins rather than keep them (compare {@link PinVisitor}).
+ *
+ * @author Christina Lidwin (clidwin)
+ * @version October 15, 2026
+ */
+public interface PinRowVisitor {
+    /**
+     * Called once for each pin in the range, newest first.
+     *
+     * @param row The current pin. It is overwritten by the next call, so it must not be kept.
+     */
+    void visitRow(PinRow row);
+}
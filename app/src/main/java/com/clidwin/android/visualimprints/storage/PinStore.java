@@ -0,0 +1,108 @@
+package com.clidwin.android.visualimprints.storage;
+
+import com.clidwin.android.visualimprints.location.PinColumns;
+
+/**
+ * The core operations of a pin storage engine: recording pins as they are made and reading
+ * them back by time. The location service and the visualizations only use these, so the
+ * engine can be swapped per deployment and benchmarked (see
+ * {@link com.clidwin.android.visualimprints.Constants#PIN_STORE}). The interface only uses
+ * plain Java types, so engines and algorithms written against it run on a plain JVM.
+ * <p/>
+ * Day summaries, rollups and spatial queries are only offered by the SQLite engine,
+ * {@link DatabaseAdapter}.
+ *
+ * @author Christina Lidwin (clidwin)
+ * @version October 15, 2026
+ */
+public interface PinStore {
+    /**
+     * Stores a new pin.
+     *
+     * @param arrivalMillis The arrival time of the pin in milliseconds since the epoch.
+     * @param duration The amount of time in milliseconds spent at the pin.
+     * @param latitudeE7 The latitude of the pin in fixed-point units.
+     * @param longitudeE7 The longitude of the pin in fixed-point units.
+     * @param accuracy The accuracy of the pin's location in meters, or 0 if it is not known.
+     */
+    void append(long arrivalMillis, long duration, int latitudeE7, int longitudeE7,
+                float accuracy);
+
+    /**
+     * Changes the amount of time spent at a stored pin.
+     *
+     * @param arrivalMillis The arrival time identifying the pin.
+     * @param duration The new duration in milliseconds.
+     * @return true if the pin was found, else false.
+     */
+    boolean updateDuration(long arrivalMillis, long duration);
+
+    /**
+     * Changes the duration and location of a stored pin, e.g. a stay whose centre moves as it
+     * goes on. A pin that is not stored is left out.
+     *
+     * @param arrivalMillis The arrival time identifying the pin.
+     * @param duration The new duration in milliseconds.
+     * @param latitudeE7 The new latitude in fixed-point units.
+     * @param longitudeE7 The new longitude in fixed-point units.
+     * @param accuracy The new accuracy in meters, or 0 if it is not known.
+     */
+    void update(long arrivalMillis, long duration, int latitudeE7, int longitudeE7,
+                float accuracy);
+
+    /**
+     * Writes a pin recovered from outside the store, such as a checkpoint made before the
+     * process was killed: the stored pin is updated, or the pin is stored if it never was. The
+     * pin is written by the time this returns.
+     *
+     * @param arrivalMillis The arrival time identifying the pin.
+     * @param duration The duration in milliseconds.
+     * @param latitudeE7 The latitude in fixed-point units.
+     * @param longitudeE7 The longitude in fixed-point units.
+     * @param accuracy The accuracy in meters, or 0 if it is not known.
+     */
+    void restore(long arrivalMillis, long duration, int latitudeE7, int longitudeE7,
+                 float accuracy);
+
+    /**
+     * Reads all pins that arrived within a time range, newest first.
+     *
+     * @param fromMillis The start of the range (inclusive).
+     * @param toMillis The end of the range (inclusive).
+     * @param pins The columns to append the pins to.
+     */
+    void loadPinColumns(long fromMillis, long toMillis, PinColumns pins);
+
+    /**
+     * Reads the given fields of all pins that arrived within a time range, without blocking the
+     * calling thread on a slow engine. Engines that read from memory may deliver the pins on
+     * the calling thread before returning.
+     *
+     * @param fromMillis The start of the range (inclusive).
+     * @param toMillis The end of the range (inclusive).
+     * @param fields The fields to read (see {@link PinColumns#ALL_FIELDS}); an engine may read
+     *      more.
+     * @param callback Receives the loaded pins, newest first, on the main thread when the read
+     *      was started from there.
+     */
+    void loadPinColumnsAsync(long fromMillis, long toMillis, int fields,
+                             PinLoadCallback callback);
+
+    /**
+     * Reads the most recently arrived pin.
+     *
+     * @param pins The columns to append the pin to.
+     * @return true if a pin was found, false if the store is empty.
+     */
+    boolean loadMostRecentPin(PinColumns pins);
+
+    /**
+     * Writes out anything buffered, so that it survives the process.
+     */
+    void flush();
+
+    /**
+     * Writes out anything buffered and releases the store.
+     */
+    void close();
+}
@@ -0,0 +1,19 @@
+package com.clidwin.android.visualimprints.storage;
+
+import com.clidwin.android.visualimprints.location.GeospatialPin;
+
+/**
+ * Receives pins one at a time as they are read from the database, so that callers can process
+ * a range without holding every pin in memory.
+ *
+ * @author Christina Lidwin (clidwin)
+ * @version October 15, 2026
+ */
+public interface PinVisitor {
+    /**
+     * Called once for each pin in the range, newest first.
+     *
+     * @param pin The pin read from the current row.
+     */
+    void visitPin(GeospatialPin pin);
+}
@@ -0,0 +1,726 @@
+package com.clidwin.android.visualimprints.storage;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteDoneException;
+import android.database.sqlite.SQLiteStatement;
+
+import com.clidwin.android.visualimprints.Constants;
+import com.clidwin.android.visualimprints.location.FixedPoint;
+import com.clidwin.android.visualimprints.location.Geohash;
+import com.clidwin.android.visualimprints.location.GeospatialPin;
+import com.clidwin.android.visualimprints.location.PinColumns;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * Writes pins through precompiled statements, binding primitive values directly instead of
+ * building a ContentValues map for every row. Each pin's geohash is computed as it is written,
+ * and the spatial index, the hourly rollup and the day summaries are updated alongside it.
+ * Rows take ids assigned by SQLite; a pin is identified by its arrival time, which is unique.
+ * Callers are responsible for wrapping writes in a transaction.
+ *
+ * @author Christina Lidwin (clidwin)
+ * @version October 15, 2026
+ */
+class PinWriter {
+    private static final long DAY_IN_MILLIS = 24 * 60 * 60 * 1000;
+    private static final String TIME_OF_DAY_FORMAT = "HH:mm:ss.SSS";
+
+    // Bulk deletes match pins by time range (?1, ?2) and fixed-point box (?3 to ?6).
+    private static final String MATCHING =
+            DatabaseHelper.Keys.COLUMN_NAME_ARRIVAL_MILLIS + " BETWEEN ?1 AND ?2 AND " +
+            DatabaseHelper.Keys.COLUMN_NAME_LATITUDE_E7 + " BETWEEN ?3 AND ?4 AND " +
+            DatabaseHelper.Keys.COLUMN_NAME_LONGITUDE_E7 + " BETWEEN ?5 AND ?6";
+
+    private final SQLiteDatabase database;
+    private final SQLiteStatement insertStatement;
+    private final SQLiteStatement updateStatement;
+    private final SQLiteStatement idLookupStatement;
+    private final SQLiteStatement idCheckStatement;
+    private final SQLiteStatement spatialIndexStatement;
+    private final SQLiteStatement deleteStatement;
+    private final SQLiteStatement deleteSpatialIndexStatement;
+    private final SQLiteStatement evictStatement;
+    private final SQLiteStatement evictSpatialIndexStatement;
+    private final SQLiteStatement rollupCreateStatement;
+    private final SQLiteStatement rollupAddStatement;
+    private final SQLiteStatement rollupDurationStatement;
+    private final SQLiteStatement rollupRemoveStatement;
+    private final SQLiteStatement rollupSubtractStatement;
+    private final SQLiteStatement deleteMatchingStatement;
+    private final SQLiteStatement deleteMatchingSpatialIndexStatement;
+    private final SQLiteStatement dayCreateStatement;
+    private final SQLiteStatement dayAddStatement;
+    private final SQLiteStatement dayUpdateStatement;
+    private final SQLiteStatement dayLookupStatement;
+    private final SQLiteStatement dayRecountStatement;
+    private final SQLiteStatement dayRemoveEmptyStatement;
+    private final SQLiteStatement dayRecountMatchingStatement;
+    private final SQLiteStatement dayRemoveAllEmptyStatement;
+
+    private final SimpleDateFormat dateFormatter =
+            new SimpleDateFormat(Constants.DATABASE_DATE_FORMAT, Locale.getDefault());
+    // The legacy time column starts with the time of day, which is written out digit by digit.
+    // The rest of it (the zone offset and weekday) is formatted once per day and offset.
+    private final SimpleDateFormat timeSuffixFormatter = new SimpleDateFormat(
+            Constants.DATABASE_TIME_FORMAT.substring(TIME_OF_DAY_FORMAT.length()),
+            Locale.getDefault());
+    private final StringBuilder timeBuilder = new StringBuilder();
+    private final Date scratchDate = new Date();
+
+    // Most pins in a batch share a day, so the formatted day is reused until it changes.
+    private String cachedDay;
+    private long cachedDayNumber;
+    private String cachedTimeSuffix;
+    private long cachedTimeSuffixDayNumber;
+    private int cachedTimeSuffixOffset;
+
+    PinWriter(SQLiteDatabase database, boolean hasSpatialIndex) {
+        this.database = database;
+        insertStatement = database.compileStatement(
+                "INSERT OR IGNORE INTO " + DatabaseHelper.Keys.TABLE_NAME + " (" +
+                        DatabaseHelper.Keys.COLUMN_NAME_ARRIVAL_DATE + "," +
+                        DatabaseHelper.Keys.COLUMN_NAME_ARRIVAL_TIME + "," +
+                        DatabaseHelper.Keys.COLUMN_NAME_ADDRESS + "," +
+                        DatabaseHelper.Keys.COLUMN_NAME_DURATION + "," +
+                        DatabaseHelper.Keys.COLUMN_NAME_LATITUDE_E7 + "," +
+                        DatabaseHelper.Keys.COLUMN_NAME_LONGITUDE_E7 + "," +
+                        DatabaseHelper.Keys.COLUMN_NAME_ARRIVAL_MILLIS + "," +
+                        DatabaseHelper.Keys.COLUMN_NAME_END_MILLIS + "," +
+                        DatabaseHelper.Keys.COLUMN_NAME_GEOHASH + "," +
+                        DatabaseHelper.Keys.COLUMN_NAME_ACCURACY +
+                        ") VALUES (?,?,'',?,?,?,?,?,?,?)");
+        updateStatement = database.compileStatement(
+                "UPDATE " + DatabaseHelper.Keys.TABLE_NAME + " SET " +
+                        DatabaseHelper.Keys.COLUMN_NAME_DURATION + "=?," +
+                        DatabaseHelper.Keys.COLUMN_NAME_LATITUDE_E7 + "=?," +
+                        DatabaseHelper.Keys.COLUMN_NAME_LONGITUDE_E7 + "=?," +
+                        DatabaseHelper.Keys.COLUMN_NAME_END_MILLIS + "=?," +
+                        DatabaseHelper.Keys.COLUMN_NAME_GEOHASH + "=?," +
+                        // A pin that no longer knows its accuracy keeps the stored one.
+                        DatabaseHelper.Keys.COLUMN_NAME_ACCURACY + "=COALESCE(?," +
+                        DatabaseHelper.Keys.COLUMN_NAME_ACCURACY + ")" +
+                        " WHERE " + DatabaseHelper.Keys._ID + "=?");
+        // Both are single lookups, in the unique arrival index and the primary key.
+        idLookupStatement = database.compileStatement(
+                "SELECT " + DatabaseHelper.Keys._ID + " FROM " + DatabaseHelper.Keys.TABLE_NAME +
+                        " WHERE " + DatabaseHelper.Keys.COLUMN_NAME_ARRIVAL_MILLIS + "=?");
+        idCheckStatement = database.compileStatement(
+                "SELECT COUNT(*) FROM " + DatabaseHelper.Keys.TABLE_NAME +
+                        " WHERE " + DatabaseHelper.Keys._ID + "=? AND " +
+                        DatabaseHelper.Keys.COLUMN_NAME_ARRIVAL_MILLIS + "=?");
+        spatialIndexStatement = hasSpatialIndex ?
+                database.compileStatement(
+                        "INSERT OR REPLACE INTO " + DatabaseHelper.SpatialIndexKeys.TABLE_NAME +
+                                " VALUES (?,?,?,?,?)") :
+                null;
+        deleteStatement = database.compileStatement(
+                "DELETE FROM " + DatabaseHelper.Keys.TABLE_NAME +
+                        " WHERE " + DatabaseHelper.Keys._ID + "=?");
+        deleteSpatialIndexStatement = hasSpatialIndex ?
+                database.compileStatement(
+                        "DELETE FROM " + DatabaseHelper.SpatialIndexKeys.TABLE_NAME +
+                                " WHERE " + DatabaseHelper.SpatialIndexKeys.COLUMN_NAME_ID + "=?") :
+                null;
+        String arrivalRange = DatabaseHelper.Keys.COLUMN_NAME_ARRIVAL_MILLIS + " BETWEEN ? AND ?";
+        evictStatement = database.compileStatement(
+                "DELETE FROM " + DatabaseHelper.Keys.TABLE_NAME + " WHERE " + arrivalRange);
+        evictSpatialIndexStatement = hasSpatialIndex ?
+                database.compileStatement(
+                        "DELETE FROM " + DatabaseHelper.SpatialIndexKeys.TABLE_NAME +
+                                " WHERE " + DatabaseHelper.SpatialIndexKeys.COLUMN_NAME_ID +
+                                " IN (SELECT " + DatabaseHelper.Keys._ID +
+                                " FROM " + DatabaseHelper.Keys.TABLE_NAME +
+                                " WHERE " + arrivalRange + ")") :
+                null;
+
+        String rollupTable = DatabaseHelper.HourlyRollupKeys.TABLE_NAME;
+        String epochHour = DatabaseHelper.HourlyRollupKeys.COLUMN_NAME_EPOCH_HOUR;
+        String pinCount = DatabaseHelper.HourlyRollupKeys.COLUMN_NAME_PIN_COUNT;
+        String dwellMillis = DatabaseHelper.HourlyRollupKeys.COLUMN_NAME_DWELL_MILLIS;
+        String storedDuration = "(SELECT " + DatabaseHelper.Keys.COLUMN_NAME_DURATION +
+                " FROM " + DatabaseHelper.Keys.TABLE_NAME +
+                " WHERE " + DatabaseHelper.Keys._ID + "=?)";
+        rollupCreateStatement = database.compileStatement(
+                "INSERT OR IGNORE INTO " + rollupTable + " VALUES (?,0,0)");
+        rollupAddStatement = database.compileStatement(
+                "UPDATE " + rollupTable + " SET " +
+                        pinCount + "=" + pinCount + "+1," +
+                        dwellMillis + "=" + dwellMillis + "+?" +
+                        " WHERE " + epochHour + "=?");
+        // Must run before the pin row changes, while it still holds the old duration.
+        rollupDurationStatement = database.compileStatement(
+                "UPDATE " + rollupTable + " SET " +
+                        dwellMillis + "=" + dwellMillis + "+?-IFNULL(" + storedDuration + ",?)" +
+                        " WHERE " + epochHour + "=?");
+        rollupRemoveStatement = database.compileStatement(
+                "UPDATE " + rollupTable + " SET " +
+                        pinCount + "=" + pinCount + "-1," +
+                        dwellMillis + "=" + dwellMillis + "-" + storedDuration +
+                        " WHERE " + epochHour + "=?");
+
+        rollupSubtractStatement = database.compileStatement(
+                "UPDATE " + rollupTable + " SET " +
+                        pinCount + "=" + pinCount + "-?," +
+                        dwellMillis + "=" + dwellMillis + "-?" +
+                        " WHERE " + epochHour + "=?");
+        deleteMatchingStatement = database.compileStatement(
+                "DELETE FROM " + DatabaseHelper.Keys.TABLE_NAME + " WHERE " + MATCHING);
+        deleteMatchingSpatialIndexStatement = hasSpatialIndex ?
+                database.compileStatement(
+                        "DELETE FROM " + DatabaseHelper.SpatialIndexKeys.TABLE_NAME +
+                                " WHERE " + DatabaseHelper.SpatialIndexKeys.COLUMN_NAME_ID +
+                                " IN (SELECT " + DatabaseHelper.Keys._ID +
+                                " FROM " + DatabaseHelper.Keys.TABLE_NAME +
+                                " WHERE " + MATCHING + ")") :
+                null;
+
+        String daysTable = DatabaseHelper.DaysKeys.TABLE_NAME;
+        String day = DatabaseHelper.DaysKeys.COLUMN_NAME_DAY;
+        String dayPinCount = DatabaseHelper.DaysKeys.COLUMN_NAME_PIN_COUNT;
+        String firstMillis = DatabaseHelper.DaysKeys.COLUMN_NAME_FIRST_MILLIS;
+        String lastMillis = DatabaseHelper.DaysKeys.COLUMN_NAME_LAST_MILLIS;
+        String dayDwellMillis = DatabaseHelper.DaysKeys.COLUMN_NAME_DWELL_MILLIS;
+        String minLat = DatabaseHelper.DaysKeys.COLUMN_NAME_MIN_LAT_E7;
+        String maxLat = DatabaseHelper.DaysKeys.COLUMN_NAME_MAX_LAT_E7;
+        String minLong = DatabaseHelper.DaysKeys.COLUMN_NAME_MIN_LONG_E7;
+        String maxLong = DatabaseHelper.DaysKeys.COLUMN_NAME_MAX_LONG_E7;
+        String extendBounds =
+                minLat + "=MIN(" + minLat + ",?)," +
+                maxLat + "=MAX(" + maxLat + ",?)," +
+                minLong + "=MIN(" + minLong + ",?)," +
+                maxLong + "=MAX(" + maxLong + ",?)";
+        dayCreateStatement = database.compileStatement(
+                "INSERT OR IGNORE INTO " + daysTable + " VALUES (?,0,?,?,0,?,?,?,?)");
+        dayAddStatement = database.compileStatement(
+                "UPDATE " + daysTable + " SET " +
+                        dayPinCount + "=" + dayPinCount + "+1," +
+                        firstMillis + "=MIN(" + firstMillis + ",?)," +
+                        lastMillis + "=MAX(" + lastMillis + ",?)," +
+                        dayDwellMillis + "=" + dayDwellMillis + "+?," +
+                        extendBounds +
+                        " WHERE " + day + "=?");
+        // Must run before the pin row changes, while it still holds the old duration.
+        dayUpdateStatement = database.compileStatement(
+                "UPDATE " + daysTable + " SET " +
+                        dayDwellMillis + "=" + dayDwellMillis +
+                        "+?-IFNULL(" + storedDuration + ",?)," +
+                        extendBounds +
+                        " WHERE " + day + "=?");
+        dayLookupStatement = database.compileStatement(
+                "SELECT " + DatabaseHelper.Keys.COLUMN_NAME_ARRIVAL_DATE +
+                        " FROM " + DatabaseHelper.Keys.TABLE_NAME +
+                        " WHERE " + DatabaseHelper.Keys._ID + "=?");
+        // The bounding box cannot be shrunk incrementally, so a day losing a pin is recomputed
+        // from the pins still within its old time span (an arrival index range scan).
+        String recountDay =
+                "UPDATE " + daysTable + " SET " +
+                        dayPinCount + "=" + summarizeDay("COUNT(*)") + "," +
+                        firstMillis + "=" + summarizeDay(
+                                "MIN(" + DatabaseHelper.Keys.COLUMN_NAME_ARRIVAL_MILLIS + ")") + "," +
+                        lastMillis + "=" + summarizeDay(
+                                "MAX(" + DatabaseHelper.Keys.COLUMN_NAME_ARRIVAL_MILLIS + ")") + "," +
+                        dayDwellMillis + "=" + summarizeDay(
+                                "IFNULL(SUM(" + DatabaseHelper.Keys.COLUMN_NAME_DURATION + "),0)") + "," +
+                        minLat + "=" + summarizeDay(
+                                "MIN(" + DatabaseHelper.Keys.COLUMN_NAME_LATITUDE_E7 + ")") + "," +
+                        maxLat + "=" + summarizeDay(
+                                "MAX(" + DatabaseHelper.Keys.COLUMN_NAME_LATITUDE_E7 + ")") + "," +
+                        minLong + "=" + summarizeDay(
+                                "MIN(" + DatabaseHelper.Keys.COLUMN_NAME_LONGITUDE_E7 + ")") + "," +
+                        maxLong + "=" + summarizeDay(
+                                "MAX(" + DatabaseHelper.Keys.COLUMN_NAME_LONGITUDE_E7 + ")");
+        dayRecountStatement = database.compileStatement(recountDay + " WHERE " + day + "=?");
+        dayRemoveEmptyStatement = database.compileStatement(
+                "DELETE FROM " + daysTable +
+                        " WHERE " + day + "=? AND " + dayPinCount + "=0");
+        // Days that could have lost pins to a bulk delete: those overlapping its range and box.
+        dayRecountMatchingStatement = database.compileStatement(recountDay +
+                " WHERE " + lastMillis + ">=?1 AND " + firstMillis + "<=?2 AND " +
+                maxLat + ">=?3 AND " + minLat + "<=?4 AND " +
+                maxLong + ">=?5 AND " + minLong + "<=?6");
+        dayRemoveAllEmptyStatement = database.compileStatement(
+                "DELETE FROM " + daysTable + " WHERE " + dayPinCount + "=0");
+    }
+
+    /**
+     * Inserts a pin and its spatial index entry, and gives the pin the id of its new row.
+     *
+     * @param pin The pin to write.
+     * @return true if the row was written, else false.
+     */
+    boolean insert(GeospatialPin pin) {
+        long id = insert(
+                pin.getArrivalTime().getTime(),
+                pin.getDuration(),
+                pin.getLatitudeE7(),
+                pin.getLongitudeE7(),
+                pin.getLocation().getAccuracy());
+        if (id == -1) {
+            return false;
+        }
+        pin.setId(id);
+        return true;
+    }
+
+    /**
+     * Inserts every pin held by a set of columns.
+     *
+     * @param pins The pins to write.
+     * @return the number of rows written.
+     */
+    int insertAll(PinColumns pins) {
+        int written = 0;
+        for (int i = 0; i < pins.size(); i++) {
+            if (insert(pins.getArrivalMillis(i), pins.getDuration(i),
+                    pins.getLatitudeE7(i), pins.getLongitudeE7(i), pins.getAccuracy(i)) != -1) {
+                written++;
+            }
+        }
+        return written;
+    }
+
+    /**
+     * Inserts a pin and its spatial index entry from primitive values.
+     *
+     * @param accuracy The accuracy of the pin's location in meters, or 0 if it is not known
+     *      (as in {@link android.location.Location#getAccuracy()}).
+     * @return the id of the new row, or -1 if a pin with the same arrival time already exists.
+     */
+    private long insert(long arrivalMillis, long duration, int latitudeE7, int longitudeE7,
+                        float accuracy) {
+        long id = restore(arrivalMillis, duration, latitudeE7, longitudeE7, accuracy);
+        if (id == -1) {
+            return -1;
+        }
+
+        long hour = getEpochHour(arrivalMillis);
+        rollupCreateStatement.bindLong(1, hour);
+        rollupCreateStatement.executeInsert();
+        rollupAddStatement.bindLong(1, duration);
+        rollupAddStatement.bindLong(2, hour);
+        rollupAddStatement.executeUpdateDelete();
+
+        String day = formatDay(arrivalMillis);
+        dayCreateStatement.bindString(1, day);
+        dayCreateStatement.bindLong(2, arrivalMillis);
+        dayCreateStatement.bindLong(3, arrivalMillis);
+        bindBounds(dayCreateStatement, 4, latitudeE7, longitudeE7);
+        dayCreateStatement.executeInsert();
+        dayAddStatement.bindLong(1, arrivalMillis);
+        dayAddStatement.bindLong(2, arrivalMillis);
+        dayAddStatement.bindLong(3, duration);
+        bindBounds(dayAddStatement, 4, latitudeE7, longitudeE7);
+        dayAddStatement.bindString(8, day);
+        dayAddStatement.executeUpdateDelete();
+        return id;
+    }
+
+    /**
+     * Writes the row and spatial index entry of a pin without counting it in the hourly rollup
+     * or day summaries, for pins that are already counted there, e.g. ones leaving a sealed
+     * segment.
+     *
+     * @param accuracy The accuracy of the pin's location in meters, or 0 if it is not known.
+     * @return the id of the new row, or -1 if a pin with the same arrival time already exists.
+     */
+    long restore(long arrivalMillis, long duration, int latitudeE7, int longitudeE7,
+                 float accuracy) {
+        insertStatement.bindString(1, formatDay(arrivalMillis));
+        insertStatement.bindString(2, formatTime(arrivalMillis));
+        insertStatement.bindLong(3, duration);
+        insertStatement.bindLong(4, latitudeE7);
+        insertStatement.bindLong(5, longitudeE7);
+        insertStatement.bindLong(6, arrivalMillis);
+        insertStatement.bindLong(7, arrivalMillis + duration);
+        insertStatement.bindLong(8, Geohash.encode(latitudeE7, longitudeE7));
+        bindAccuracy(insertStatement, 9, accuracy);
+        long id = insertStatement.executeInsert();
+        if (id == -1) {
+            return -1;
+        }
+
+        updateSpatialIndex(id, latitudeE7, longitudeE7);
+        return id;
+    }
+
+    /**
+     * Removes the rows and spatial index entries of all pins arriving within a time range,
+     * leaving them counted in the hourly rollup and day summaries, e.g. when they are moved
+     * into a sealed segment.
+     *
+     * @param fromMillis The start of the range (inclusive).
+     * @param toMillis The end of the range (inclusive).
+     * @return the number of rows removed.
+     */
+    int evict(long fromMillis, long toMillis) {
+        if (evictSpatialIndexStatement != null) {
+            evictSpatialIndexStatement.bindLong(1, fromMillis);
+            evictSpatialIndexStatement.bindLong(2, toMillis);
+            evictSpatialIndexStatement.executeUpdateDelete();
+        }
+
+        evictStatement.bindLong(1, fromMillis);
+        evictStatement.bindLong(2, toMillis);
+        return evictStatement.executeUpdateDelete();
+    }
+
+    /**
+     * Updates the duration and location of an existing pin.
+     *
+     * @param pin The pin with its updated values.
+     * @return true if a row was changed, else false.
+     */
+    boolean update(GeospatialPin pin) {
+        long arrivalMillis = pin.getArrivalTime().getTime();
+        long id = resolveId(pin.getId(), arrivalMillis);
+        if (id == -1) {
+            return false;
+        }
+        int latitudeE7 = pin.getLatitudeE7();
+        int longitudeE7 = pin.getLongitudeE7();
+
+        rollupDurationStatement.bindLong(1, pin.getDuration());
+        rollupDurationStatement.bindLong(2, id);
+        rollupDurationStatement.bindLong(3, pin.getDuration());
+        rollupDurationStatement.bindLong(4, getEpochHour(arrivalMillis));
+        rollupDurationStatement.executeUpdateDelete();
+
+        dayUpdateStatement.bindLong(1, pin.getDuration());
+        dayUpdateStatement.bindLong(2, id);
+        dayUpdateStatement.bindLong(3, pin.getDuration());
+        bindBounds(dayUpdateStatement, 4, latitudeE7, longitudeE7);
+        dayUpdateStatement.bindString(8, formatDay(arrivalMillis));
+        dayUpdateStatement.executeUpdateDelete();
+
+        updateStatement.bindLong(1, pin.getDuration());
+        updateStatement.bindLong(2, latitudeE7);
+        updateStatement.bindLong(3, longitudeE7);
+        updateStatement.bindLong(4, arrivalMillis + pin.getDuration());
+        updateStatement.bindLong(5, Geohash.encode(latitudeE7, longitudeE7));
+        bindAccuracy(updateStatement, 6, pin.getLocation().getAccuracy());
+        updateStatement.bindLong(7, id);
+        if (updateStatement.executeUpdateDelete() == 0) {
+            return false;
+        }
+
+        updateSpatialIndex(id, latitudeE7, longitudeE7);
+        pin.setId(id);
+        return true;
+    }
+
+    /**
+     * Deletes a pin, its spatial index entry and its share of the hourly rollup and day summary.
+     *
+     * @param id The id of the pin's row, or -1 if it is not known.
+     * @param arrivalMillis The arrival time of the pin.
+     * @return true if a row was deleted, else false.
+     */
+    boolean delete(long id, long arrivalMillis) {
+        id = resolveId(id, arrivalMillis);
+        if (id == -1) {
+            return false;
+        }
+
+        String day;
+        dayLookupStatement.bindLong(1, id);
+        try {
+            day = dayLookupStatement.simpleQueryForString();
+        } catch (SQLiteDoneException e) {
+            return false;
+        }
+
+        rollupRemoveStatement.bindLong(1, id);
+        rollupRemoveStatement.bindLong(2, getEpochHour(arrivalMillis));
+        rollupRemoveStatement.executeUpdateDelete();
+
+        deleteStatement.bindLong(1, id);
+        if (deleteStatement.executeUpdateDelete() == 0) {
+            return false;
+        }
+
+        if (deleteSpatialIndexStatement != null) {
+            deleteSpatialIndexStatement.bindLong(1, id);
+            deleteSpatialIndexStatement.executeUpdateDelete();
+        }
+
+        dayRecountStatement.bindString(1, day);
+        dayRecountStatement.executeUpdateDelete();
+        dayRemoveEmptyStatement.bindString(1, day);
+        dayRemoveEmptyStatement.executeUpdateDelete();
+        return true;
+    }
+
+    /**
+     * Deletes every pin arriving within a time range and lying within a box, together with
+     * their spatial index entries and their share of the hourly rollup and day summaries. Day
+     * summaries are recounted from the remaining rows, so any sealed day the range and box
+     * overlap must be restored first.
+     *
+     * @param fromMillis The start of the time range (inclusive).
+     * @param toMillis The end of the time range (inclusive).
+     * @return the number of rows deleted.
+     */
+    int deleteMatching(long fromMillis, long toMillis, int minLatitudeE7, int maxLatitudeE7,
+                       int minLongitudeE7, int maxLongitudeE7) {
+        subtractMatchingFromRollup(fromMillis, toMillis,
+                minLatitudeE7, maxLatitudeE7, minLongitudeE7, maxLongitudeE7);
+
+        if (deleteMatchingSpatialIndexStatement != null) {
+            bindMatching(deleteMatchingSpatialIndexStatement, fromMillis, toMillis,
+                    minLatitudeE7, maxLatitudeE7, minLongitudeE7, maxLongitudeE7);
+            deleteMatchingSpatialIndexStatement.executeUpdateDelete();
+        }
+
+        bindMatching(deleteMatchingStatement, fromMillis, toMillis,
+                minLatitudeE7, maxLatitudeE7, minLongitudeE7, maxLongitudeE7);
+        int deleted = deleteMatchingStatement.executeUpdateDelete();
+        if (deleted == 0) {
+            return 0;
+        }
+
+        bindMatching(dayRecountMatchingStatement, fromMillis, toMillis,
+                minLatitudeE7, maxLatitudeE7, minLongitudeE7, maxLongitudeE7);
+        dayRecountMatchingStatement.executeUpdateDelete();
+        dayRemoveAllEmptyStatement.executeUpdateDelete();
+        return deleted;
+    }
+
+    /**
+     * Releases the compiled statements.
+     */
+    void close() {
+        insertStatement.close();
+        updateStatement.close();
+        idLookupStatement.close();
+        idCheckStatement.close();
+        deleteStatement.close();
+        evictStatement.close();
+        if (spatialIndexStatement != null) {
+            spatialIndexStatement.close();
+            deleteSpatialIndexStatement.close();
+            evictSpatialIndexStatement.close();
+        }
+        rollupCreateStatement.close();
+        rollupAddStatement.close();
+        rollupDurationStatement.close();
+        rollupRemoveStatement.close();
+        rollupSubtractStatement.close();
+        deleteMatchingStatement.close();
+        if (deleteMatchingSpatialIndexStatement != null) {
+            deleteMatchingSpatialIndexStatement.close();
+        }
+        dayCreateStatement.close();
+        dayAddStatement.close();
+        dayUpdateStatement.close();
+        dayLookupStatement.close();
+        dayRecountStatement.close();
+        dayRemoveEmptyStatement.close();
+        dayRecountMatchingStatement.close();
+        dayRemoveAllEmptyStatement.close();
+    }
+
+    /**
+     * Binds a single point as both corners of a day's bounding box, starting at an index.
+     */
+    private static void bindBounds(SQLiteStatement statement, int index,
+                                   int latitudeE7, int longitudeE7) {
+        statement.bindLong(index, latitudeE7);
+        statement.bindLong(index + 1, latitudeE7);
+        statement.bindLong(index + 2, longitudeE7);
+        statement.bindLong(index + 3, longitudeE7);
+    }
+
+    /**
+     * Binds an accuracy in meters, leaving the column empty when it is not known.
+     */
+    private static void bindAccuracy(SQLiteStatement statement, int index, float accuracy) {
+        if (accuracy > 0) {
+            statement.bindDouble(index, accuracy);
+        } else {
+            statement.bindNull(index);
+        }
+    }
+
+    /**
+     * Binds the time range and box of a bulk delete.
+     */
+    private static void bindMatching(SQLiteStatement statement, long fromMillis, long toMillis,
+                                     int minLatitudeE7, int maxLatitudeE7,
+                                     int minLongitudeE7, int maxLongitudeE7) {
+        statement.bindLong(1, fromMillis);
+        statement.bindLong(2, toMillis);
+        statement.bindLong(3, minLatitudeE7);
+        statement.bindLong(4, maxLatitudeE7);
+        statement.bindLong(5, minLongitudeE7);
+        statement.bindLong(6, maxLongitudeE7);
+    }
+
+    /**
+     * @return a subquery aggregating the pins within a day row's current time span.
+     */
+    private static String summarizeDay(String aggregate) {
+        return "(SELECT " + aggregate + " FROM " + DatabaseHelper.Keys.TABLE_NAME +
+                " WHERE " + DatabaseHelper.Keys.COLUMN_NAME_ARRIVAL_MILLIS + " BETWEEN " +
+                DatabaseHelper.DaysKeys.TABLE_NAME + "." +
+                DatabaseHelper.DaysKeys.COLUMN_NAME_FIRST_MILLIS + " AND " +
+                DatabaseHelper.DaysKeys.TABLE_NAME + "." +
+                DatabaseHelper.DaysKeys.COLUMN_NAME_LAST_MILLIS + ")";
+    }
+
+    /**
+     * Inserts or replaces the spatial index entry for a pin.
+     */
+    private void updateSpatialIndex(long id, int latitudeE7, int longitudeE7) {
+        if (spatialIndexStatement == null) {
+            return;
+        }
+
+        // The R*Tree keeps degrees, so that bounding boxes can be queried without conversion.
+        double latitude = FixedPoint.toDegrees(latitudeE7);
+        double longitude = FixedPoint.toDegrees(longitudeE7);
+
+        spatialIndexStatement.bindLong(1, id);
+        spatialIndexStatement.bindDouble(2, latitude);
+        spatialIndexStatement.bindDouble(3, latitude);
+        spatialIndexStatement.bindDouble(4, longitude);
+        spatialIndexStatement.bindDouble(5, longitude);
+        spatialIndexStatement.executeInsert();
+    }
+
+    /**
+     * @return the database date string for a timestamp, reusing the previous one when the
+     *      timestamp falls on the same day.
+     */
+    private String formatDay(long arrivalMillis) {
+        // Days are counted in local time, so that the cache matches the formatted string.
+        long localMillis = arrivalMillis + dateFormatter.getTimeZone().getOffset(arrivalMillis);
+        long dayNumber = floorDiv(localMillis, DAY_IN_MILLIS);
+        if (cachedDay == null || dayNumber != cachedDayNumber) {
+            scratchDate.setTime(arrivalMillis);
+            cachedDay = dateFormatter.format(scratchDate);
+            cachedDayNumber = dayNumber;
+        }
+        return cachedDay;
+    }
+
+    /**
+     * @return the database time string for a timestamp, in
+     *      {@link Constants#DATABASE_TIME_FORMAT}, without running a date formatter per pin.
+     */
+    private String formatTime(long arrivalMillis) {
+        int offset = timeSuffixFormatter.getTimeZone().getOffset(arrivalMillis);
+        long localMillis = arrivalMillis + offset;
+        long dayNumber = floorDiv(localMillis, DAY_IN_MILLIS);
+        if (cachedTimeSuffix == null || dayNumber != cachedTimeSuffixDayNumber ||
+                offset != cachedTimeSuffixOffset) {
+            scratchDate.setTime(arrivalMillis);
+            cachedTimeSuffix = timeSuffixFormatter.format(scratchDate);
+            cachedTimeSuffixDayNumber = dayNumber;
+            cachedTimeSuffixOffset = offset;
+        }
+
+        long millisOfDay = localMillis - dayNumber * DAY_IN_MILLIS;
+        timeBuilder.setLength(0);
+        appendDigits(timeBuilder, millisOfDay / (60 * 60 * 1000), 2).append(':');
+        appendDigits(timeBuilder, millisOfDay / (60 * 1000) % 60, 2).append(':');
+        appendDigits(timeBuilder, millisOfDay / 1000 % 60, 2).append('.');
+        appendDigits(timeBuilder, millisOfDay % 1000, 3);
+        return timeBuilder.append(cachedTimeSuffix).toString();
+    }
+
+    /**
+     * Appends a non-negative number, padded with leading zeros to a number of digits.
+     */
+    private static StringBuilder appendDigits(StringBuilder builder, long value, int digits) {
+        for (long limit = 10; digits > 1; digits--, limit *= 10) {
+            if (value < limit) {
+                builder.append('0');
+            }
+        }
+        return builder.append(value);
+    }
+
+    /**
+     * Subtracts the pins a bulk delete is about to remove from the hourly rollup. Hours are
+     * counted in local time, which SQL cannot do, so the pins are read and grouped here.
+     */
+    private void subtractMatchingFromRollup(long fromMillis, long toMillis,
+                                            int minLatitudeE7, int maxLatitudeE7,
+                                            int minLongitudeE7, int maxLongitudeE7) {
+        String[] columns = {
+                DatabaseHelper.Keys.COLUMN_NAME_ARRIVAL_MILLIS,
+                DatabaseHelper.Keys.COLUMN_NAME_DURATION
+        };
+        String[] selectionArgs = {
+                String.valueOf(fromMillis), String.valueOf(toMillis),
+                String.valueOf(minLatitudeE7), String.valueOf(maxLatitudeE7),
+                String.valueOf(minLongitudeE7), String.valueOf(maxLongitudeE7)
+        };
+        Cursor c = database.query(DatabaseHelper.Keys.TABLE_NAME, columns, MATCHING,
+                selectionArgs, null, null, DatabaseHelper.Keys.COLUMN_NAME_ARRIVAL_MILLIS + " ASC");
+        try {
+            boolean more = c.moveToNext();
+            while (more) {
+                long hour = getEpochHour(c.getLong(0));
+                int count = 0;
+                long dwellMillis = 0;
+                while (more && getEpochHour(c.getLong(0)) == hour) {
+                    count++;
+                    dwellMillis += c.getLong(1);
+                    more = c.moveToNext();
+                }
+                rollupSubtractStatement.bindLong(1, count);
+                rollupSubtractStatement.bindLong(2, dwellMillis);
+                rollupSubtractStatement.bindLong(3, hour);
+                rollupSubtractStatement.executeUpdateDelete();
+            }
+        } finally {
+            c.close();
+        }
+    }
+
+    /**
+     * @return the hour a timestamp falls in, as stored in the hourly rollup. Hours are counted
+     *      in local time from the epoch, so that zones offset by half or quarter hours put each
+     *      pin in the hour of the day it arrived in.
+     */
+    static long getEpochHour(long millis) {
+        return floorDiv(millis + TimeZone.getDefault().getOffset(millis),
+                DatabaseHelper.HourlyRollupKeys.HOUR_IN_MILLIS);
+    }
+
+    /**
+     * Finds the row of a pin. A known id is only trusted while its row still holds the pin,
+     * since restoring a sealed day gives its pins new rows.
+     *
+     * @param id The id the pin was given when written or read, or -1 if it has none.
+     * @param arrivalMillis The arrival time of the pin.
+     * @return the id of the pin's row, or -1 if it is not stored.
+     */
+    private long resolveId(long id, long arrivalMillis) {
+        if (id != -1) {
+            idCheckStatement.bindLong(1, id);
+            idCheckStatement.bindLong(2, arrivalMillis);
+            if (idCheckStatement.simpleQueryForLong() > 0) {
+                return id;
+            }
+        }
+
+        idLookupStatement.bindLong(1, arrivalMillis);
+        try {
+            return idLookupStatement.simpleQueryForLong();
+        } catch (SQLiteDoneException e) {
+            return -1;
+        }
+    }
+
+    private static long floorDiv(long value, long divisor) {
+        long quotient = value / divisor;
+        return (value % divisor < 0) ? quotient - 1 : quotient;
+    }
+}
@@ -0,0 +1,16 @@
+package com.clidwin.android.visualimprints.storage;
+
+/**
+ * Receives hourly rollups that were loaded from the database on a background thread.
+ *
+ * @author Christina Lidwin (clidwin)
+ * @version October 15, 2026
+ */
+public interface RollupLoadCallback {
+    /**
+     * Called on the main thread once the rollups have been read.
+     *
+     * @param rollups The loaded rollups, oldest hour first.
+     */
+    void onRollupsLoaded(HourlyRollups rollups);
+}
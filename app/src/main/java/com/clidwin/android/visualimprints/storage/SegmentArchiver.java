@@ -0,0 +1,261 @@
+package com.clidwin.android.visualimprints.storage;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.util.Log;
+
+import com.clidwin.android.visualimprints.Constants;
+import com.clidwin.android.visualimprints.location.PinColumns;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Locale;
+
+/**
+ * Moves the pins of old days out of the pins table into compressed per-day segments, and back
+ * again when a sealed pin has to change. Sealed pins stay counted in the hourly rollup and
+ * day summaries. Must only be used on the writer thread, while holding the write lock.
+ *
+ * @author Christina Lidwin (clidwin)
+ * @version October 15, 2026
+ */
+class SegmentArchiver {
+    private static final String TAG = "vi-segment-archiver";
+
+    private final SQLiteDatabase database;
+    private final PinWriter writer;
+    private final MonthPartitions partitions;
+    private final SimpleDateFormat dateFormatter =
+            new SimpleDateFormat(Constants.DATABASE_DATE_FORMAT, Locale.getDefault());
+
+    /**
+     * @param partitions The month partitions, whose days are moved back into the segments
+     *      table before being unsealed.
+     */
+    SegmentArchiver(SQLiteDatabase database, PinWriter writer, MonthPartitions partitions) {
+        this.database = database;
+        this.writer = writer;
+        this.partitions = partitions;
+    }
+
+    /**
+     * Seals every day whose last pin arrived before a cutoff and that still has rows in the
+     * pins table. Each day is sealed in its own transaction, so readers are never blocked for
+     * long.
+     *
+     * @param cutoffMillis Days ending before this time are sealed.
+     * @return the number of days sealed.
+     */
+    int sealDaysBefore(long cutoffMillis) {
+        String days = DatabaseHelper.DaysKeys.TABLE_NAME;
+        Cursor c = database.rawQuery("SELECT " +
+                DatabaseHelper.DaysKeys.COLUMN_NAME_DAY + ", " +
+                DatabaseHelper.DaysKeys.COLUMN_NAME_FIRST_MILLIS + ", " +
+                DatabaseHelper.DaysKeys.COLUMN_NAME_LAST_MILLIS +
+                " FROM " + days + " WHERE " +
+                DatabaseHelper.DaysKeys.COLUMN_NAME_LAST_MILLIS + " < ? AND EXISTS (SELECT 1 FROM " +
+                DatabaseHelper.Keys.TABLE_NAME + " WHERE " +
+                DatabaseHelper.Keys.COLUMN_NAME_ARRIVAL_MILLIS + " BETWEEN " +
+                days + "." + DatabaseHelper.DaysKeys.COLUMN_NAME_FIRST_MILLIS + " AND " +
+                days + "." + DatabaseHelper.DaysKeys.COLUMN_NAME_LAST_MILLIS + ")",
+                new String[] {String.valueOf(cutoffMillis)});
+
+        ArrayList<String> sealable = new ArrayList<>();
+        ArrayList<long[]> spans = new ArrayList<>();
+        try {
+            while (c.moveToNext()) {
+                sealable.add(c.getString(0));
+                spans.add(new long[] {c.getLong(1), c.getLong(2)});
+            }
+        } finally {
+            c.close();
+        }
+
+        for (int i = 0; i < sealable.size(); i++) {
+            database.beginTransaction();
+            try {
+                sealDay(sealable.get(i), spans.get(i)[0], spans.get(i)[1]);
+                database.setTransactionSuccessful();
+            } finally {
+                database.endTransaction();
+            }
+        }
+
+        if (!sealable.isEmpty()) {
+            Log.d(TAG, "Sealed " + sealable.size() + " days.");
+        }
+        return sealable.size();
+    }
+
+    /**
+     * Restores the pins of the sealed day a pin arrives on, if that day is sealed, so that the
+     * day can be changed row by row.
+     *
+     * @param arrivalMillis The arrival time of a pin.
+     * @return true if a day was unsealed, else false.
+     */
+    boolean unsealDayOf(long arrivalMillis) {
+        partitions.restoreMonthOf(arrivalMillis);
+        String day = dateFormatter.format(new Date(arrivalMillis));
+        return unseal(DatabaseHelper.SegmentKeys.COLUMN_NAME_DAY + "=?", new String[] {day}) > 0;
+    }
+
+    /**
+     * Restores the pins of every sealed day whose pins span part of a time range, e.g. before
+     * writing pins that could duplicate or replace sealed ones.
+     *
+     * @param fromMillis The start of the range (inclusive).
+     * @param toMillis The end of the range (inclusive).
+     * @return the number of days unsealed.
+     */
+    int unsealOverlapping(long fromMillis, long toMillis) {
+        partitions.restoreOverlapping(fromMillis, toMillis);
+        return unseal(
+                DatabaseHelper.SegmentKeys.COLUMN_NAME_FIRST_MILLIS + " <= ? AND " +
+                        DatabaseHelper.SegmentKeys.COLUMN_NAME_LAST_MILLIS + " >= ?",
+                new String[] {String.valueOf(toMillis), String.valueOf(fromMillis)});
+    }
+
+    /**
+     * Restores the pins of every sealed day whose pins span part of a time range and whose
+     * bounds overlap a box, e.g. before deleting the pins within them.
+     *
+     * @param fromMillis The start of the range (inclusive).
+     * @param toMillis The end of the range (inclusive).
+     * @return the number of days unsealed.
+     */
+    int unsealOverlapping(long fromMillis, long toMillis, int minLatitudeE7, int maxLatitudeE7,
+                          int minLongitudeE7, int maxLongitudeE7) {
+        partitions.restoreOverlapping(fromMillis, toMillis);
+        return unseal(
+                DatabaseHelper.SegmentKeys.COLUMN_NAME_FIRST_MILLIS + " <= ? AND " +
+                        DatabaseHelper.SegmentKeys.COLUMN_NAME_LAST_MILLIS + " >= ? AND " +
+                        DatabaseHelper.SegmentKeys.COLUMN_NAME_DAY + " IN (SELECT " +
+                        DatabaseHelper.DaysKeys.COLUMN_NAME_DAY + " FROM " +
+                        DatabaseHelper.DaysKeys.TABLE_NAME + " WHERE " +
+                        DatabaseHelper.DaysKeys.COLUMN_NAME_MAX_LAT_E7 + " >= ? AND " +
+                        DatabaseHelper.DaysKeys.COLUMN_NAME_MIN_LAT_E7 + " <= ? AND " +
+                        DatabaseHelper.DaysKeys.COLUMN_NAME_MAX_LONG_E7 + " >= ? AND " +
+                        DatabaseHelper.DaysKeys.COLUMN_NAME_MIN_LONG_E7 + " <= ?)",
+                new String[] {
+                        String.valueOf(toMillis), String.valueOf(fromMillis),
+                        String.valueOf(minLatitudeE7), String.valueOf(maxLatitudeE7),
+                        String.valueOf(minLongitudeE7), String.valueOf(maxLongitudeE7)
+                });
+    }
+
+    /**
+     * Seals one day, merging in the pins of an existing segment for the day, if any.
+     */
+    private void sealDay(String day, long firstMillis, long lastMillis) {
+        PinColumns pins = new PinColumns();
+        Cursor segment = querySegments(
+                DatabaseHelper.SegmentKeys.COLUMN_NAME_DAY + "=?", new String[] {day});
+        try {
+            if (segment.moveToFirst()) {
+                PinSegmentCodec.decode(segment.getBlob(1), pins);
+            }
+        } finally {
+            segment.close();
+        }
+
+        Cursor c = database.query(
+                DatabaseHelper.Keys.TABLE_NAME,
+                PinRowReader.PIN_COLUMNS,
+                DatabaseHelper.Keys.COLUMN_NAME_ARRIVAL_MILLIS + " BETWEEN ? AND ?",
+                new String[] {String.valueOf(firstMillis), String.valueOf(lastMillis)},
+                null,
+                null,
+                DatabaseHelper.Keys.COLUMN_NAME_ARRIVAL_MILLIS + " ASC");
+        PinColumns livePins = new PinColumns(c.getCount());
+        try {
+            PinRowReader reader = new PinRowReader(c);
+            while (c.moveToNext()) {
+                reader.readInto(c, livePins);
+            }
+        } finally {
+            c.close();
+        }
+
+        PinColumns merged = merge(pins, livePins);
+        ContentValues values = new ContentValues();
+        values.put(DatabaseHelper.SegmentKeys.COLUMN_NAME_DAY, day);
+        values.put(DatabaseHelper.SegmentKeys.COLUMN_NAME_FIRST_MILLIS, merged.getArrivalMillis(0));
+        values.put(DatabaseHelper.SegmentKeys.COLUMN_NAME_LAST_MILLIS,
+                merged.getArrivalMillis(merged.size() - 1));
+        values.put(DatabaseHelper.SegmentKeys.COLUMN_NAME_PIN_COUNT, merged.size());
+        values.put(DatabaseHelper.SegmentKeys.COLUMN_NAME_DATA, PinSegmentCodec.encode(merged));
+        database.insertWithOnConflict(DatabaseHelper.SegmentKeys.TABLE_NAME, null, values,
+                SQLiteDatabase.CONFLICT_REPLACE);
+
+        writer.evict(firstMillis, lastMillis);
+    }
+
+    /**
+     * Moves the pins of the matching segments back into the pins table.
+     *
+     * @return the number of segments unsealed.
+     */
+    private int unseal(String selection, String[] selectionArgs) {
+        Cursor c = querySegments(selection, selectionArgs);
+        ArrayList<String> days = new ArrayList<>();
+        PinColumns pins = new PinColumns();
+        try {
+            while (c.moveToNext()) {
+                days.add(c.getString(0));
+                PinSegmentCodec.decode(c.getBlob(1), pins);
+            }
+        } finally {
+            c.close();
+        }
+
+        for (int i = 0; i < pins.size(); i++) {
+            writer.restore(pins.getArrivalMillis(i), pins.getDuration(i),
+                    pins.getLatitudeE7(i), pins.getLongitudeE7(i), pins.getAccuracy(i));
+        }
+        for (String day : days) {
+            database.delete(DatabaseHelper.SegmentKeys.TABLE_NAME,
+                    DatabaseHelper.SegmentKeys.COLUMN_NAME_DAY + "=?", new String[] {day});
+        }
+        return days.size();
+    }
+
+    private Cursor querySegments(String selection, String[] selectionArgs) {
+        String[] columns = {
+                DatabaseHelper.SegmentKeys.COLUMN_NAME_DAY,
+                DatabaseHelper.SegmentKeys.COLUMN_NAME_DATA
+        };
+        return database.query(DatabaseHelper.SegmentKeys.TABLE_NAME, columns, selection,
+                selectionArgs, null, null, null);
+    }
+
+    /**
+     * Merges two sets of pins that are each ordered oldest first. A live pin replaces a sealed
+     * pin arriving at the same time.
+     */
+    private static PinColumns merge(PinColumns sealed, PinColumns live) {
+        PinColumns merged = new PinColumns(sealed.size() + live.size());
+        int i = 0;
+        int j = 0;
+        while (i < sealed.size() || j < live.size()) {
+            boolean takeLive = i == sealed.size() || (j < live.size() &&
+                    live.getArrivalMillis(j) <= sealed.getArrivalMillis(i));
+            if (takeLive) {
+                if (i < sealed.size() && live.getArrivalMillis(j) == sealed.getArrivalMillis(i)) {
+                    i++;
+                }
+                merged.addE7(live.getArrivalMillis(j), live.getDuration(j),
+                        live.getLatitudeE7(j), live.getLongitudeE7(j), live.getAccuracy(j));
+                j++;
+            } else {
+                merged.addE7(sealed.getArrivalMillis(i), sealed.getDuration(i),
+                        sealed.getLatitudeE7(i), sealed.getLongitudeE7(i),
+                        sealed.getAccuracy(i));
+                i++;
+            }
+        }
+        return merged;
+    }
+}
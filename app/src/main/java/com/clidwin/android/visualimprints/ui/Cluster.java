@@ -1,15 +1,17 @@
 package com.clidwin.android.visualimprints.ui;
 
-import java.util.ArrayList;
+import java.util.Arrays;
 
 /**
- * Wrapper for a group of visual location data items (slices).
+ * Wrapper for a group of visual location data items, stored as positions within the
+ * {@link com.clidwin.android.visualimprints.location.PinColumns} being visualized.
  *
  * @author clidwin
  * @version July 27, 2015
  */
 public class Cluster {
-    private ArrayList<Slice> slices;
+    private int[] pinIndexes;
+    private int pinCount;
 
     private int startX;
     private int startY;
@@ -17,38 +19,42 @@ public class Cluster {
     private int height;
 
     public Cluster() {
-        slices = new ArrayList<>();
+        pinIndexes = new int[4];
     }
 
-    public Cluster(int startX, int startY, int width, int height, ArrayList<Slice> slices) {
+    public Cluster(int startX, int startY, int width, int height, int[] pinIndexes) {
         this.startX = startX;
         this.startY = startY;
         this.width = width;
         this.height = height;
 
-        this.slices = slices;
+        this.pinIndexes = pinIndexes;
+        this.pinCount = pinIndexes.length;
     }
 
     /**
-     * Add a slice to the tile.
-     * @param slice The slice to be added.
+     * Add a pin to the cluster.
+     * @param index The position of the pin within the visualized columns.
      */
-    public void addSlice(Slice slice) {
-        slices.add(slice);
+    public void addPin(int index) {
+        if (pinCount == pinIndexes.length) {
+            pinIndexes = Arrays.copyOf(pinIndexes, Math.max(4, pinCount * 2));
+        }
+        pinIndexes[pinCount++] = index;
     }
 
     /**
-     * @return all of the {@link Slice} items contained by this tile.
+     * @return the position of the i-th pin of this cluster within the visualized columns.
      */
-    public ArrayList<Slice> getSlices() { return slices; }
+    public int getPinIndex(int i) { return pinIndexes[i]; }
 
     /**
-     * @return the number of slices within this tile.
+     * @return the number of pins within this cluster.
      */
-    public int getSlicesCount() { return slices.size(); }
+    public int getPinCount() { return pinCount; }
 
     /**
-     * @return the first {@link Slice} in the list.
+     * @return the position of the first pin in the cluster.
      */
-    public Slice getFirstSlice() { return slices.get(0); }
+    public int getFirstPinIndex() { return pinIndexes[0]; }
 }
@@ -29,6 +29,8 @@ public class DateSelector extends LinearLayout {
     private Calendar calendar;
     private DateDialogListener mDateListener;
     private DateTimeDialogFragment.DateTimeDialogListener mOnDateSetListener;
+    private long minDate = -1;
+    private long maxDate = -1;
 
     public DateSelector(Context context) {
         super(context);
@@ -81,13 +83,20 @@ public class DateSelector extends LinearLayout {
             public void onClick(View v) {
                 //TODO(clidwin): Use material design with these components
 
-                new DatePickerDialog(
+                DatePickerDialog dialog = new DatePickerDialog(
                         getContext(),
                         mDateListener,
                         calendar.get(calendar.YEAR),
                         calendar.get(calendar.MONTH),
                         calendar.get(calendar.DAY_OF_MONTH)
-                ).show();
+                );
+                if (minDate >= 0) {
+                    dialog.getDatePicker().setMinDate(minDate);
+                }
+                if (maxDate >= 0) {
+                    dialog.getDatePicker().setMaxDate(maxDate);
+                }
+                dialog.show();
             }
         });
     }
@@ -102,6 +111,17 @@ public class DateSelector extends LinearLayout {
         dateText.setText(mSimpleDateFormat.format(date));
     }
 
+    /**
+     * Limits the dates offered by the picker, e.g. to the days that have recorded data.
+     *
+     * @param minDate The earliest selectable date in milliseconds, or -1 for no limit.
+     * @param maxDate The latest selectable date in milliseconds, or -1 for no limit.
+     */
+    public void setSelectableRange(long minDate, long maxDate) {
+        this.minDate = minDate;
+        this.maxDate = maxDate;
+    }
+
     /**
      * @return the selected {@link Date} associated with this object.
      */
@@ -10,8 +10,12 @@ import android.util.Log;
 import android.view.MotionEvent;
 
 import com.clidwin.android.visualimprints.R;
-import com.clidwin.android.visualimprints.location.GeospatialPin;
+import com.clidwin.android.visualimprints.activities.VisualizationsActivity;
+import com.clidwin.android.visualimprints.location.PinColumns;
+import com.clidwin.android.visualimprints.storage.HourlyRollups;
+import com.clidwin.android.visualimprints.storage.RollupLoadCallback;
 
+import java.util.Arrays;
 import java.util.Calendar;
 
 /**
@@ -29,6 +33,8 @@ public class BarChartVisualization extends ParentVisualization {
 
     private int [] barInfo;
     private int maxBarHeight;
+    private Calendar pinTime;
+    private int refreshGeneration;
 
     public BarChartVisualization(Context context, AttributeSet attributes) {
         super(context, attributes);
@@ -40,12 +46,17 @@ public class BarChartVisualization extends ParentVisualization {
         // Set up information holders
         barInfo = new int[24];
         maxBarHeight = 0;
+        pinTime = Calendar.getInstance();
     }
 
     @Override
-    public void processPin(GeospatialPin pin) {
-        Calendar pinTime = Calendar.getInstance();
-        pinTime.setTimeInMillis(pin.getArrivalTime().getTime());
+    protected int getRequiredFields() {
+        return PinColumns.FIELD_ARRIVAL;
+    }
+
+    @Override
+    public void processPin(PinColumns pins, int index) {
+        pinTime.setTimeInMillis(pins.getArrivalMillis(index));
 
         int hourOfTheDay = pinTime.get(Calendar.HOUR_OF_DAY);
         barInfo[hourOfTheDay] = barInfo[hourOfTheDay]+ 1;
@@ -54,6 +65,54 @@ public class BarChartVisualization extends ParentVisualization {
         }
     }
 
+    /**
+     * Builds the bars from the hourly rollup table instead of reading every pin in the range.
+     */
+    @Override
+    public void refreshLocations() {
+        VisualizationsActivity activity = (VisualizationsActivity) getContext();
+        if (activity == null) {
+            Log.e(TAG, "Database disconnected");
+            return;
+        }
+
+        final int generation = ++refreshGeneration;
+        activity.getDatabaseAdapter().loadHourlyRollupsAsync(
+                activity.getOldestTimestamp(), activity.getNewestTimestamp(),
+                new RollupLoadCallback() {
+                    @Override
+                    public void onRollupsLoaded(HourlyRollups rollups) {
+                        if (generation != refreshGeneration) {
+                            return;
+                        }
+                        processRollups(rollups);
+                        invalidate();
+                    }
+                });
+    }
+
+    /**
+     * Sums the pins of each rollup hour into the bar for its hour of the day.
+     *
+     * @param rollups The hourly rollups for the selected time range.
+     */
+    private void processRollups(HourlyRollups rollups) {
+        clearPins();
+        for (int i = 0; i < rollups.size(); i++) {
+            int hourOfTheDay = rollups.getHourOfDay(i);
+            barInfo[hourOfTheDay] = barInfo[hourOfTheDay] + rollups.getPinCount(i);
+            if (barInfo[hourOfTheDay] > maxBarHeight) {
+                maxBarHeight = barInfo[hourOfTheDay];
+            }
+        }
+    }
+
+    @Override
+    protected void clearPins() {
+        Arrays.fill(barInfo, 0);
+        maxBarHeight = 0;
+    }
+
     @Override
     public void onAttachedToWindow() {
         super.onAttachedToWindow();
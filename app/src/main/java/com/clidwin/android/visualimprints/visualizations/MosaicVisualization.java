@@ -5,9 +5,7 @@ import android.content.Context;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Paint;
-import android.graphics.PointF;
 import android.graphics.drawable.Drawable;
-import android.location.Location;
 import android.support.annotation.NonNull;
 import android.util.AttributeSet;
 import android.util.Log;
@@ -15,9 +13,7 @@ import android.view.MotionEvent;
 import android.widget.PopupWindow;
 
 import com.clidwin.android.visualimprints.R;
-import com.clidwin.android.visualimprints.location.GeospatialPin;
-
-import java.util.ArrayList;
+import com.clidwin.android.visualimprints.location.PinColumns;
 
 /**
  * Visualization for locational data based on a tile/grid structure.
@@ -32,8 +28,6 @@ public class MosaicVisualization extends ParentVisualization {
 
     private PopupWindow popUp;
 
-    private ArrayList<PointF> allPoints;
-
     private float minX;
     private float maxX;
     private float minY;
@@ -46,28 +40,32 @@ public class MosaicVisualization extends ParentVisualization {
         initializePaints();
         popUp = new PopupWindow();
 
-        allPoints = new ArrayList<>();
+        clearPins();
+    }
 
-        minX = 180;
-        maxX = 0;
-        minY = 360;
-        maxY = 0;
+    @Override
+    protected int getRequiredFields() {
+        return PinColumns.FIELD_ARRIVAL | PinColumns.FIELD_LOCATION;
     }
 
     @Override
-    protected void processPin(GeospatialPin pin) {
+    protected void processPin(PinColumns pins, int index) {
         //TODO(clidwin): Base off time rather than location
-        Location location = pin.getLocation();
-        PointF newPoint = new PointF(
-                90 + (float)location.getLatitude(),
-                180 + (float)location.getLongitude());
+        float x = 90 + (float) pins.getLatitude(index);
+        float y = 180 + (float) pins.getLongitude(index);
 
-        allPoints.add(newPoint);
+        if (x < minX) { minX = x; }
+        if (x > maxX) { maxX = x; }
+        if (y < minY) { minY = y; }
+        if (y > maxY) { maxY = y; }
+    }
 
-        if (newPoint.x < minX) { minX = newPoint.x; }
-        if (newPoint.x > maxX) { maxX = newPoint.x; }
-        if (newPoint.y < minY) { minY = newPoint.y; }
-        if (newPoint.y > maxY) { maxY = newPoint.y; }
+    @Override
+    protected void clearPins() {
+        minX = 180;
+        maxX = 0;
+        minY = 360;
+        maxY = 0;
     }
 
     /**
@@ -114,17 +112,18 @@ public class MosaicVisualization extends ParentVisualization {
         );
 
         /*ArrayList<PointF> voronoiPoints = new ArrayList<>();
-        for (int i = 0; i < allPoints.size(); i++) {
-            PointF point = allPoints.get(i);
+        for (int i = 0; i < visualizationPins.size(); i++) {
+            float x = 90 + (float) visualizationPins.getLatitude(i);
+            float y = 180 + (float) visualizationPins.getLongitude(i);
             canvas.drawCircle(
-                    ((point.x - minX) / xDivider) * width,
-                    ((point.y - minY) / yDivider) * height,
+                    ((x - minX) / xDivider) * width,
+                    ((y - minY) / yDivider) * height,
                     3.0f,
                     mFillPaint);
 
             voronoiPoints.add(new PointF(
-                    ((point.x - minX)/xDivider)*width,
-                    ((point.y - minY)/yDivider)*height
+                    ((x - minX)/xDivider)*width,
+                    ((y - minY)/yDivider)*height
             ));
         }*/
 
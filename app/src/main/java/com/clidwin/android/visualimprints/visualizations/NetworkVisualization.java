@@ -5,7 +5,6 @@ import android.content.Context;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Paint;
-import android.location.Location;
 import android.support.annotation.NonNull;
 import android.util.AttributeSet;
 import android.util.Log;
@@ -14,12 +13,13 @@ import android.widget.PopupWindow;
 
 import com.clidwin.android.visualimprints.R;
 import com.clidwin.android.visualimprints.activities.VisualizationsActivity;
-import com.clidwin.android.visualimprints.location.GeospatialPin;
+import com.clidwin.android.visualimprints.location.Geohash;
+import com.clidwin.android.visualimprints.location.PinColumns;
 import com.clidwin.android.visualimprints.ui.Cluster;
-import com.clidwin.android.visualimprints.ui.Slice;
 
 import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.HashMap;
 import java.util.Random;
 
 /**
@@ -31,11 +31,18 @@ import java.util.Random;
 public class NetworkVisualization extends ParentVisualization {
     private static final String TAG = "vi-network-vis";
 
+    // Clusters join pins within 30m; 30-bit cells are at least ~200m across below 80 degrees,
+    // so a pin's matches always lie in its own cell or one of its neighbours.
+    private static final int CLUSTER_CELL_BITS = 30;
+    private static final int CLUSTER_DISTANCE = 30;
+
     private Paint mFillPaint;
 
     private PopupWindow popUp;
 
     private ArrayList<Cluster> allPoints;
+    // Positions within allPoints of the clusters whose first pin lies in each geohash cell
+    private HashMap<Long, ArrayList<Integer>> clustersByCell;
 
     private RandomWithSeed randomNumberGenerator;
 
@@ -47,6 +54,7 @@ public class NetworkVisualization extends ParentVisualization {
         popUp = new PopupWindow();
 
         allPoints = new ArrayList<>();
+        clustersByCell = new HashMap<>();
 
         Calendar time = ((VisualizationsActivity) context).getOldestTimestamp();
         randomNumberGenerator = new RandomWithSeed(time.getTimeInMillis());
@@ -54,40 +62,80 @@ public class NetworkVisualization extends ParentVisualization {
     }
 
     @Override
-    protected void processPin(GeospatialPin pin) {
-        Slice newSlice = new Slice(pin);
+    protected int getRequiredFields() {
+        return PinColumns.FIELD_ARRIVAL | PinColumns.FIELD_LOCATION;
+    }
 
+    @Override
+    protected void processPin(PinColumns pins, int index) {
         //TODO(clidwin): Improve clustering methodology to include more points.
-        for (Cluster cluster: allPoints) {
-            Slice slice = cluster.getFirstSlice();
-            Location recordedLocation = slice.getPin().getLocation();
-            Location newLocation = pin.getLocation();
-            int threshhold = 30;
-            if (distanceBetweenLocations(recordedLocation, newLocation) < threshhold) {
-                cluster.addSlice(newSlice);
-                return;
+        long cell = Geohash.getCell(
+                Geohash.encode(pins.getLatitudeE7(index), pins.getLongitudeE7(index)),
+                CLUSTER_CELL_BITS);
+
+        // Only clusters starting in nearby cells can be close enough; of those, the pin joins
+        // the oldest one in range.
+        int closestCluster = -1;
+        for (long neighbour : Geohash.getNeighbourhood(cell, CLUSTER_CELL_BITS)) {
+            ArrayList<Integer> candidates = clustersByCell.get(neighbour);
+            if (candidates == null) {
+                continue;
+            }
+            for (int position : candidates) {
+                if (closestCluster != -1 && position > closestCluster) {
+                    break;
+                }
+                int recordedIndex = allPoints.get(position).getFirstPinIndex();
+                // Identical fixed-point coordinates are the same place without any trigonometry.
+                boolean samePoint =
+                        pins.getLatitudeE7(recordedIndex) == pins.getLatitudeE7(index) &&
+                        pins.getLongitudeE7(recordedIndex) == pins.getLongitudeE7(index);
+                if (samePoint ||
+                        distanceBetweenLocations(pins, recordedIndex, index) < CLUSTER_DISTANCE) {
+                    closestCluster = position;
+                    break;
+                }
             }
         }
 
+        if (closestCluster != -1) {
+            allPoints.get(closestCluster).addPin(index);
+            return;
+        }
+
         Cluster newCluster = new Cluster();
-        newCluster.addSlice(newSlice);
+        newCluster.addPin(index);
         allPoints.add(newCluster);
+
+        ArrayList<Integer> cellClusters = clustersByCell.get(cell);
+        if (cellClusters == null) {
+            cellClusters = new ArrayList<>();
+            clustersByCell.put(cell, cellClusters);
+        }
+        cellClusters.add(allPoints.size() - 1);
+    }
+
+    @Override
+    protected void clearPins() {
+        allPoints.clear();
+        clustersByCell.clear();
     }
 
     /**
      * Calculates the distance in meters between two geo coordinates.
      * http://www.movable-type.co.uk/scripts/latlong.html
      *
-     * @param fromLocation The first location of reference
-     * @param toLocation   The second location of reference
+     * @param pins      The pins being visualized
+     * @param fromIndex The position of the first location of reference
+     * @param toIndex   The position of the second location of reference
      * @return the distance between the locations (in meters)
      */
-    private double distanceBetweenLocations(Location fromLocation, Location toLocation) {
-        int locationAccuracy = 8; // Anything beyond this is noise in location data
-        double lat1 = roundValue(fromLocation.getLatitude(), locationAccuracy);
-        double lat2 = roundValue(toLocation.getLatitude(), locationAccuracy);
-        double long1 = roundValue(fromLocation.getLongitude(), locationAccuracy);
-        double long2 = roundValue(toLocation.getLongitude(), locationAccuracy);
+    private double distanceBetweenLocations(PinColumns pins, int fromIndex, int toIndex) {
+        // Pins already hold fixed-point coordinates, so there is no noise left to round away
+        double lat1 = pins.getLatitude(fromIndex);
+        double lat2 = pins.getLatitude(toIndex);
+        double long1 = pins.getLongitude(fromIndex);
+        double long2 = pins.getLongitude(toIndex);
 
         int earthRadius = 6371 * 1000; // m
         double dLat = Math.toRadians(lat2 - lat1);
@@ -100,18 +148,6 @@ public class NetworkVisualization extends ParentVisualization {
         return earthRadius * c;
     }
 
-    /**
-     * Source:
-     * //stackoverflow.com/questions/153724/how-to-round-a-number-to-n-decimal-places-in-java
-     *
-     * @param value The number to round.
-     * @return The value rounded to eight decimal places of precision.
-     */
-    private double roundValue(double value, int accuracy) {
-        double precision = Math.pow(10, accuracy); // Eight decimal places
-        return Math.round(value * precision) / precision;
-    }
-
     /**
      * Create components used for drawing the visualization.
      */
@@ -145,7 +181,7 @@ public class NetworkVisualization extends ParentVisualization {
                 startY = canvas.getHeight() - startY;
             }
 
-            for (Slice s: c.getSlices()) {
+            for (int i = 0; i < c.getPinCount(); i++) {
 
                 // (x1+(x2-x1)*r,y1+(y2-y1)*r)
                 float x1 = startX + 150*(float)randomNumberGenerator.nextValue() - 75;
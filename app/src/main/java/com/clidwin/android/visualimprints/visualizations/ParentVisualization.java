@@ -6,10 +6,9 @@ import android.util.Log;
 import android.view.View;
 
 import com.clidwin.android.visualimprints.activities.VisualizationsActivity;
-import com.clidwin.android.visualimprints.location.GeospatialPin;
-import com.clidwin.android.visualimprints.storage.DatabaseAdapter;
-
-import java.util.ArrayList;
+import com.clidwin.android.visualimprints.location.PinColumns;
+import com.clidwin.android.visualimprints.storage.PinLoadCallback;
+import com.clidwin.android.visualimprints.storage.PinStore;
 
 /**
  * Blueprint class for any visualization.
@@ -20,10 +19,16 @@ import java.util.ArrayList;
 public abstract class ParentVisualization extends View {
     private static final String TAG = "vi-parent-vis";
 
-    protected ArrayList<GeospatialPin> visualizationLocations;
+    protected PinColumns visualizationPins;
+    private int refreshGeneration;
+
+    // The newest pin delivered so far, below which only its duration and location can change.
+    private long watermarkMillis;
+    private int watermarkIndex = -1;
 
     public ParentVisualization(Context context, AttributeSet attributes) {
         super(context, attributes);
+        visualizationPins = new PinColumns();
 
         /*TypedArray array = context.getTheme().obtainStyledAttributes(
                 attributes,
@@ -43,7 +48,40 @@ public abstract class ParentVisualization extends View {
         refreshLocations();
     }
 
-    protected abstract void processPin(GeospatialPin pin);
+    /**
+     * Adds a single pin to the visualization.
+     *
+     * @param pins The pins being visualized.
+     * @param index The position of the pin to add within the columns.
+     */
+    protected abstract void processPin(PinColumns pins, int index);
+
+    /**
+     * Updates what was built from a pin after its duration changed. Pins only ever change
+     * while they are the most recent pin, by growing their duration; a pin whose location
+     * changed too is handled by processing every pin again.
+     *
+     * @param pins The pins being visualized.
+     * @param index The position of the updated pin within the columns.
+     */
+    protected void processUpdatedPin(PinColumns pins, int index) {
+    }
+
+    /**
+     * Declares the pin fields the visualization reads, so that only those columns are queried
+     * and decoded. Fields left out read as zero.
+     *
+     * @return a combination of the {@link PinColumns} field flags.
+     */
+    protected int getRequiredFields() {
+        return PinColumns.ALL_FIELDS;
+    }
+
+    /**
+     * Discards everything built from previously processed pins, before the pins are reloaded.
+     */
+    protected void clearPins() {
+    }
 
     /**
      * Overrides the fragment's onMeasure to fill the screen.
@@ -85,23 +123,130 @@ public abstract class ParentVisualization extends View {
 
     /**
      * Retrieves locations from the database matching the parameter timestamps from a
-     *      VisualizationActivity.
+     *      VisualizationActivity. The query runs in the background and the visualization is
+     *      redrawn once the pins arrive.
      */
     public void refreshLocations() {
         VisualizationsActivity activity = (VisualizationsActivity) getContext();
         if (activity != null) {
-            DatabaseAdapter dbAdapter = activity.getDatabaseAdapter();
-            visualizationLocations = dbAdapter.getEntriesInDateRange(
-                    activity.getOldestTimestamp(), activity.getNewestTimestamp());
-            //TODO(clidwin): let children know what time range & timestamps are being covered here.
-            Log.e(TAG, "Number of locations: " + visualizationLocations.size());
-            for(GeospatialPin pin: visualizationLocations) {
-                processPin(pin);
-                Log.d(TAG, pin.getArrivalTime().toString());
-            }
-            //TODO(clidwin): Error checking on subclasses for no data
+            PinStore pinStore = activity.getPinStore();
+            final int generation = ++refreshGeneration;
+            pinStore.loadPinColumnsAsync(
+                    activity.getOldestTimestamp().getTimeInMillis(),
+                    activity.getNewestTimestamp().getTimeInMillis(),
+                    getRequiredFields(),
+                    new PinLoadCallback() {
+                        @Override
+                        public void onPinsLoaded(PinColumns pins) {
+                            // A newer refresh has been started since this one.
+                            if (generation != refreshGeneration) {
+                                return;
+                            }
+                            showPins(pins);
+                        }
+                    });
         } else {
             Log.e(TAG, "Database disconnected");
         }
     }
+
+    /**
+     * Fetches only the pins that arrived or changed since the last load, from the newest pin
+     * already shown up to the end of the time range, and folds them into the visualization.
+     * Falls back to a full refresh when nothing has been loaded yet.
+     */
+    public void refreshNewLocations() {
+        VisualizationsActivity activity = (VisualizationsActivity) getContext();
+        if (activity == null) {
+            Log.e(TAG, "Database disconnected");
+            return;
+        }
+        if (watermarkIndex < 0) {
+            refreshLocations();
+            return;
+        }
+
+        final int generation = refreshGeneration;
+        final long watermark = watermarkMillis;
+        activity.getPinStore().loadPinColumnsAsync(
+                watermark, activity.getNewestTimestamp().getTimeInMillis(), getRequiredFields(),
+                new PinLoadCallback() {
+                    @Override
+                    public void onPinsLoaded(PinColumns pins) {
+                        // A full refresh or another delta has been applied since this started.
+                        if (generation != refreshGeneration || watermark != watermarkMillis) {
+                            return;
+                        }
+                        showNewPins(pins);
+                    }
+                });
+    }
+
+    /**
+     * Applies a delta to the visualized pins and redraws. The pins stay newest first, so new
+     * pins go in front of the pins already shown; since that moves every position handed to
+     * {@link #processPin}, all pins are processed again. A delta that only lengthens the
+     * watermark pin is applied in place.
+     *
+     * @param delta The pins arriving at or after the watermark, newest first.
+     */
+    private void showNewPins(PinColumns delta) {
+        int newPins = 0;
+        boolean moved = false;
+        for (int i = 0; i < delta.size(); i++) {
+            long arrivalMillis = delta.getArrivalMillis(i);
+            if (arrivalMillis > watermarkMillis) {
+                newPins++;
+            } else if (arrivalMillis == watermarkMillis) {
+                // Stay centroids keep moving as fixes arrive, so the location is copied too.
+                moved = delta.getLatitudeE7(i) != visualizationPins.getLatitudeE7(watermarkIndex) ||
+                        delta.getLongitudeE7(i) != visualizationPins.getLongitudeE7(watermarkIndex);
+                visualizationPins.setDuration(watermarkIndex, delta.getDuration(i));
+                visualizationPins.setLocationE7(watermarkIndex,
+                        delta.getLatitudeE7(i), delta.getLongitudeE7(i));
+                if (!moved && newPins == 0) {
+                    processUpdatedPin(visualizationPins, watermarkIndex);
+                }
+            }
+        }
+
+        if (newPins > 0) {
+            PinColumns pins = new PinColumns(newPins + visualizationPins.size());
+            for (int i = 0; i < delta.size(); i++) {
+                if (delta.getArrivalMillis(i) > watermarkMillis) {
+                    pins.addE7(delta.getArrivalMillis(i), delta.getDuration(i),
+                            delta.getLatitudeE7(i), delta.getLongitudeE7(i));
+                }
+            }
+            for (int i = 0; i < visualizationPins.size(); i++) {
+                pins.addE7(visualizationPins.getArrivalMillis(i), visualizationPins.getDuration(i),
+                        visualizationPins.getLatitudeE7(i), visualizationPins.getLongitudeE7(i));
+            }
+            showPins(pins);
+        } else if (moved) {
+            showPins(visualizationPins);
+        } else {
+            invalidate();
+        }
+        Log.d(TAG, "Number of new locations: " + newPins);
+    }
+
+    /**
+     * Replaces the visualized pins and redraws.
+     *
+     * @param pins The pins loaded for the current time range.
+     */
+    private void showPins(PinColumns pins) {
+        clearPins();
+        visualizationPins = pins;
+        watermarkIndex = pins.size() > 0 ? 0 : -1;
+        watermarkMillis = pins.size() > 0 ? pins.getArrivalMillis(0) : 0;
+        //TODO(clidwin): let children know what time range & timestamps are being covered here.
+        Log.d(TAG, "Number of locations: " + visualizationPins.size());
+        for (int i = 0; i < visualizationPins.size(); i++) {
+            processPin(visualizationPins, i);
+        }
+        //TODO(clidwin): Error checking on subclasses for no data
+        invalidate();
+    }
 }
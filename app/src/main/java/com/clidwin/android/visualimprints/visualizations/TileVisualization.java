@@ -5,8 +5,6 @@ import android.content.Context;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Paint;
-import android.graphics.RectF;
-import android.location.Location;
 import android.support.annotation.NonNull;
 import android.util.AttributeSet;
 import android.util.Log;
@@ -20,13 +18,13 @@ import android.widget.TextView;
 
 import com.clidwin.android.visualimprints.Constants;
 import com.clidwin.android.visualimprints.R;
-import com.clidwin.android.visualimprints.location.GeospatialPin;
+import com.clidwin.android.visualimprints.location.PinColumns;
 import com.clidwin.android.visualimprints.ui.GridCell;
-import com.clidwin.android.visualimprints.ui.Slice;
 
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
-import java.util.GregorianCalendar;
+import java.util.Arrays;
+import java.util.Calendar;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -44,7 +42,10 @@ public class TileVisualization extends ParentVisualization {
 
     private PopupWindow popUp;
 
-    private ArrayList<Slice> drawnRects;
+    // Left, top, right and bottom edges of each pin's slice, four values per pin.
+    private float[] sliceBounds;
+    private int placedSlices;
+    private Calendar arrivalTime;
     private ArrayList<GridCell> gridCells;
     private GridCell selectedCell;
 
@@ -53,16 +54,36 @@ public class TileVisualization extends ParentVisualization {
         super(context, attributes);
 
         initializePaints();
-        drawnRects = new ArrayList<>();
+        sliceBounds = new float[0];
+        arrivalTime = Calendar.getInstance();
 
         popUp = new PopupWindow();
     }
 
     @Override
-    protected void processPin(GeospatialPin pin) {
+    protected void processPin(PinColumns pins, int index) {
         //TODO(clidwin): Move some onDraw things in here
-        Slice slice = new Slice(pin);
-        drawnRects.add(slice);
+        if (sliceBounds.length < (index + 1) * 4) {
+            sliceBounds = Arrays.copyOf(sliceBounds, pins.size() * 4);
+        }
+    }
+
+    @Override
+    protected void processUpdatedPin(PinColumns pins, int index) {
+        // The slice's width follows the duration, so it is placed again on the next draw.
+        sliceBounds[index * 4] = Float.NaN;
+    }
+
+    @Override
+    protected void clearPins() {
+        placedSlices = 0;
+    }
+
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        // Slices are sized to the canvas, so they are all placed again on the next draw.
+        placedSlices = 0;
     }
 
     /**
@@ -100,17 +121,19 @@ public class TileVisualization extends ParentVisualization {
 
         boolean colorReverse = false;
 
-        for (Slice slice : drawnRects) {
+        for (int i = 0; i < visualizationPins.size(); i++) {
+            int bounds = i * 4;
+
             // Calculate placement
-            if (!slice.isRectangleSet()) {
-                GregorianCalendar arrivalTime = slice.getArrivalTime();
-                int hour = arrivalTime.get(GregorianCalendar.HOUR_OF_DAY);
-                long duration = slice.getDuration();
+            if (i >= placedSlices || Float.isNaN(sliceBounds[bounds])) {
+                arrivalTime.setTimeInMillis(visualizationPins.getArrivalMillis(i));
+                int hour = arrivalTime.get(Calendar.HOUR_OF_DAY);
+                long duration = visualizationPins.getDuration(i);
 
 
                 int displayRow = (hour)/4;
                 float leftSide = ((hour % 4) * 3600000 +
-                        arrivalTime.get(GregorianCalendar.MINUTE) * 60000) * secondIncrementWidth;
+                        arrivalTime.get(Calendar.MINUTE) * 60000) * secondIncrementWidth;
                 float rightSide = leftSide + duration * secondIncrementWidth;
 
                 if (displayRow % 2 != 0) { // If the row is odd, reverse trend  (0 is even in this case)
@@ -119,11 +142,10 @@ public class TileVisualization extends ParentVisualization {
                     leftSide = rightSide - duration * secondIncrementWidth;
                 }
 
-                slice.setRectangle(new RectF(
-                        leftSide,
-                        displayRow * hourCellHeight,
-                        rightSide,
-                        (displayRow + 1) * hourCellHeight));
+                sliceBounds[bounds] = leftSide;
+                sliceBounds[bounds + 1] = displayRow * hourCellHeight;
+                sliceBounds[bounds + 2] = rightSide;
+                sliceBounds[bounds + 3] = (displayRow + 1) * hourCellHeight;
             }
 
             // Select color.
@@ -133,9 +155,13 @@ public class TileVisualization extends ParentVisualization {
             }
 
             // Draw cell.
-            canvas.drawRect(slice.getRectangle(), mFillPaint);
+            canvas.drawRect(
+                    sliceBounds[bounds], sliceBounds[bounds + 1],
+                    sliceBounds[bounds + 2], sliceBounds[bounds + 3],
+                    mFillPaint);
             colorReverse = !colorReverse;
         }
+        placedSlices = visualizationPins.size();
 
         // Draw grid overlay.
         drawGrid(canvas, hourCellHeight, hourCellWidth);
@@ -249,8 +275,8 @@ public class TileVisualization extends ParentVisualization {
      * @param touchY the touch location's y coordinate
      */
     private void showLocationInfo(float touchX, float touchY) {
-        for(Slice slice : drawnRects){
-            if(slice.getRectangle().contains(touchX, touchY)) {
+        for (int i = 0; i < placedSlices; i++) {
+            if (sliceContains(i, touchX, touchY)) {
                 //TODO(clidwin): Create dynamic popup
                 LinearLayout popupLayout = new LinearLayout(getContext());
                 popupLayout.setOrientation(LinearLayout.VERTICAL);
@@ -267,26 +293,25 @@ public class TileVisualization extends ParentVisualization {
                         TypedValue.COMPLEX_UNIT_SP,
                         16);
                 arrivalTimeText.setText(
-                        timeFormat.format(slice.getPin().getArrivalTime().getTime()) + " record");
+                        timeFormat.format(visualizationPins.getArrivalMillis(i)) + " record");
                 popupLayout.addView(arrivalTimeText);
 
                 // Date description.
                 SimpleDateFormat dateFormat = new SimpleDateFormat(Constants.DISPLAY_DATE_FORMAT);
                 TextView arrivalDateText = new TextView(getContext());
                 arrivalDateText.setText(
-                        "Arrival Time: " + dateFormat.format(slice.getPin().getArrivalTime().getTime()));
+                        "Arrival Time: " + dateFormat.format(visualizationPins.getArrivalMillis(i)));
                 popupLayout.addView(arrivalDateText);
 
                 // Show duration.
                 TextView durationText = new TextView(getContext());
                 durationText.setText("Duration: "
-                        + getDurationTimeString(slice.getPin().getDuration()));
+                        + getDurationTimeString(visualizationPins.getDuration(i)));
                 popupLayout.addView(durationText);
 
-                Location location = slice.getPin().getLocation();
                 TextView locationText = new TextView(getContext());
-                locationText.setText("Location: ("
-                        + location.getLatitude() + ", " + location.getLongitude() + ")");
+                locationText.setText("Location: (" + visualizationPins.getLatitude(i) + ", "
+                        + visualizationPins.getLongitude(i) + ")");
                 popupLayout.addView(locationText);
 
                 popupLayout.setOnClickListener(new OnClickListener() {
@@ -306,6 +331,20 @@ public class TileVisualization extends ParentVisualization {
         }
     }
 
+    /**
+     * Checks whether a point falls within the slice drawn for a pin.
+     *
+     * @param index The position of the pin.
+     * @param x the point's x coordinate
+     * @param y the point's y coordinate
+     * @return true if the point is inside the slice, else false.
+     */
+    private boolean sliceContains(int index, float x, float y) {
+        int bounds = index * 4;
+        return x >= sliceBounds[bounds] && x < sliceBounds[bounds + 2] &&
+                y >= sliceBounds[bounds + 1] && y < sliceBounds[bounds + 3];
+    }
+
     /**
      * Calculates and returns a human-readable version of the location duration.
      *